@@ -0,0 +1,71 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cat.inspiracio.numbers.ComplexFunction;
+import cat.inspiracio.numbers.DomainColoring;
+import cat.inspiracio.parsing.SyntaxTree;
+
+/** JMH benchmark of the domain colouring of one tile, as the calculator
+ * renders it, for some functions, in each pass from coarse to fine.
+ * A frame is 16 ms, so this says how many tiles a core makes per frame. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ColoringJmh{
+
+	static final int TILE=128;
+	static final double PIXEL=1.0/80;
+
+	@Param({"z", "z^2", "exp(z)", "1/(z*z+1)", "sin(z)", "tan(z)", "ln(z)", "z^0.5"})
+	public String formula;
+
+	/** Side of a pixel of the pass, in screen pixels. */
+	@Param({"8", "4", "2", "1"})
+	public int step;
+
+	private ComplexFunction function;
+	private final int[] argb=new int[TILE*TILE];
+
+	@Setup public void setup()throws Exception{
+		function=SyntaxTree.parse(formula).compile();
+	}
+
+	@Benchmark public int[] tile()throws Exception{
+		int n=TILE/step;
+		DomainColoring.render(function, -0.8, 0.8, PIXEL*step, n, n, argb);
+		return argb;
+	}
+}
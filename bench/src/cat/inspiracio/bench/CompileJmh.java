@@ -0,0 +1,128 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cat.inspiracio.numbers.ComplexFunction;
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.MutableEC;
+import cat.inspiracio.numbers.PartialException;
+import cat.inspiracio.parsing.ClassCompiler;
+import cat.inspiracio.parsing.Program;
+import cat.inspiracio.parsing.SyntaxTree;
+
+/** JMH benchmarks of evaluating a formula on a grid of 10^6 points: by the
+ * tree, by the program point by point with EC and with MutableEC, by the
+ * program on the whole grid as EC and as primitive arrays, and by the
+ * class that ClassCompiler makes. ProgramTest and ClassCompilerTest check
+ * that they all give the same numbers. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class CompileJmh{
+
+	/** The grid is SIDE * SIDE points. */
+	static final int SIDE=1000;
+
+	@Param({"z", "z*z+1", "2*pi*i*z", "(z-1)/(z+1)", "exp(z)*sinz", "z^3-2z+5", "ln(z)+cos(z)/z", "(z-z)/(z-z)+1", "z!"})
+	public String formula;
+
+	private SyntaxTree tree;
+	private Program program;
+	private ComplexFunction compiled;
+
+	private final EC[] zs=new EC[SIDE*SIDE];
+	private final EC[] ws=new EC[SIDE*SIDE];
+	private final double[] re=new double[SIDE*SIDE], im=new double[SIDE*SIDE];
+	private final double[] outRe=new double[SIDE*SIDE], outIm=new double[SIDE*SIDE];
+	private final MutableEC z=new MutableEC(), w=new MutableEC();
+
+	@Setup public void setup()throws Exception{
+		tree=SyntaxTree.parse(formula);
+		program=tree.compile();
+		compiled=ClassCompiler.compile(program);
+		for(int y=0, i=0; y<SIDE; y++)
+			for(int x=0; x<SIDE; x++, i++){
+				re[i]=-2 + 4.0*x/(SIDE-1);
+				im[i]=-2 + 4.0*y/(SIDE-1);
+				zs[i]=EC.mkCartesian(re[i], im[i]);
+			}
+	}
+
+	@Benchmark public double tree()throws Exception{
+		double sum=0;
+		for(EC c : zs)
+			try{
+				sum+=tree.evaluate(c).re();
+			}catch(PartialException e){
+				sum++;
+			}
+		return sum;
+	}
+
+	@Benchmark public double program()throws Exception{
+		double sum=0;
+		for(EC c : zs)
+			try{
+				sum+=program.evaluate(c).re();
+			}catch(PartialException e){
+				sum++;
+			}
+		return sum;
+	}
+
+	@Benchmark public double mutable()throws Exception{
+		double sum=0;
+		for(int i=0; i<re.length; i++){
+			program.evaluate(z.set(re[i], im[i]), w);
+			sum+= w.isUndefined() ? 1 : w.re();
+		}
+		return sum;
+	}
+
+	@Benchmark public EC[] grid()throws Exception{
+		program.evaluate(zs, ws);
+		return ws;
+	}
+
+	@Benchmark public double[] arrays()throws Exception{
+		program.evaluate(re, im, outRe, outIm, re.length);
+		return outRe;
+	}
+
+	@Benchmark public double[] compiled()throws Exception{
+		compiled.evaluate(re, im, outRe, outIm, re.length);
+		return outRe;
+	}
+}
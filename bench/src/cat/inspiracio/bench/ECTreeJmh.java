@@ -0,0 +1,108 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.ECTree;
+
+/** JMH benchmarks of what the plane does with an ECTree of 100000 numbers:
+ * building it, drawing a view, with clusters 16 pixels wide in a view 800
+ * pixels wide, and finding the number at a tap. ECTreeTest checks the
+ * queries against a scan of all numbers. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class ECTreeJmh{
+
+	static final int N=100000;
+
+	/** Width of the view: the plane at 80 pixels per unit is about 10 units wide. */
+	@Param({"10", "100", "10000"})
+	public double width;
+
+	private final List<EC> list=new ArrayList<EC>(N);
+	private final ECTree tree=new ECTree();
+
+	/** Taps, a ring: a power of 2. */
+	private final double[] taps=new double[2*1024];
+	private int i;
+
+	private final ECTree.Visitor visitor=new ECTree.Visitor(){
+		@Override public void number(EC c){count++;}
+		@Override public void cluster(double re, double im, int n){count+=n;}
+	};
+	private int count;
+
+	@Setup public void setup(){
+		Random random=new Random(1);
+		for(int k=0; k<N; k++){
+			//Some spread out, and some in clusters.
+			double re, im;
+			if(k%3==0){
+				re=random.nextGaussian()*1000;
+				im=random.nextGaussian()*1000;
+			}else{
+				re=Math.floor(random.nextGaussian()*10) + random.nextGaussian()*1e-3;
+				im=Math.floor(random.nextGaussian()*10) + random.nextGaussian()*1e-3;
+			}
+			list.add(EC.mkCartesian(re, im));
+		}
+		tree.addAll(list);
+		for(int k=0; k<taps.length; k++)
+			taps[k]=random.nextGaussian()*width/4;
+	}
+
+	@Benchmark public ECTree add(){
+		ECTree t=new ECTree();
+		for(EC c : list)
+			t.add(c);
+		return t;
+	}
+
+	@Benchmark public int view(){
+		count=0;
+		double w=width/2;
+		tree.visit(-w, -w, w, w, 16*width/800, visitor);
+		return count;
+	}
+
+	@Benchmark public EC nearest(){
+		i=(i+2) & (taps.length-1);
+		return tree.nearest(taps[i], taps[i+1], 24*width/800);
+	}
+}
@@ -0,0 +1,74 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cat.inspiracio.numbers.AdaptiveSampler;
+import cat.inspiracio.numbers.Circle;
+import cat.inspiracio.numbers.ComplexFunction;
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.Piclet;
+import cat.inspiracio.numbers.Polyline;
+import cat.inspiracio.parsing.SyntaxTree;
+
+/** JMH benchmarks of the image of a circle under functions, with the fixed
+ * samples of the circle and with AdaptiveSampler at 100 pixels per unit.
+ * AdaptiveSamplerTest checks how close the images are. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class SamplerJmh{
+
+	static final double SCALE=100;
+
+	@Param({"z", "exp(z)", "1/(z-0.5)", "ln(z)", "tan(z)"})
+	public String formula;
+
+	private final Piclet circle=new Circle(EC.ZERO, 1.5);
+	private ComplexFunction function;
+	private AdaptiveSampler sampler;
+
+	@Setup public void setup()throws Exception{
+		function=SyntaxTree.parse(formula).compile();
+		sampler=new AdaptiveSampler(function, SCALE);
+	}
+
+	@Benchmark public Polyline fixed()throws Exception{
+		return circle.getSamples().map(function);
+	}
+
+	@Benchmark public Polyline adaptive()throws Exception{
+		return sampler.sample(circle);
+	}
+}
@@ -0,0 +1,90 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cat.inspiracio.numbers.ComplexFunction;
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.Rectangle;
+import cat.inspiracio.numbers.Tabulator;
+import cat.inspiracio.parsing.ClassCompiler;
+import cat.inspiracio.parsing.SyntaxTree;
+
+/** JMH benchmarks of Tabulator on some threads, on a grid of 1000x1000,
+ * against one call of the function for the whole grid on this thread.
+ * TabulatorTest checks that it gives the numbers of a serial loop. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class TabulatorJmh{
+
+	static final int SIDE=1000;
+
+	@Param({"z*z+1", "exp(z)*sinz", "ln(z)+cos(z)/z"})
+	public String formula;
+
+	@Param({"1", "2", "4"})
+	public int threads;
+
+	private final Rectangle region=new Rectangle(EC.ZERO, EC.mkCartesian(2, 2));
+	private ComplexFunction function;
+	private Tabulator tabulator;
+
+	private final double[] re=new double[SIDE*SIDE], im=new double[SIDE*SIDE];
+
+	@Setup public void setup()throws Exception{
+		function=ClassCompiler.compile(SyntaxTree.parse(formula).compile());
+		tabulator=new Tabulator(threads);
+		for(int r=0, i=0; r<SIDE; r++)
+			for(int c=0; c<SIDE; c++, i++){
+				re[i]=2.0*c/(SIDE-1);
+				im[i]=2 - 2.0*r/(SIDE-1);
+			}
+	}
+
+	@TearDown public void tearDown(){
+		tabulator.shutdown();
+	}
+
+	@Benchmark public double[][] tabulate()throws Exception{
+		return tabulator.tabulate(function, region, SIDE, SIDE);
+	}
+
+	@Benchmark public double[] serial()throws Exception{
+		double[] outRe=new double[SIDE*SIDE], outIm=new double[SIDE*SIDE];
+		function.evaluate(re, im, outRe, outIm, re.length);
+		return outRe;
+	}
+}
@@ -0,0 +1,129 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.PartialException;
+
+/** JMH benchmarks of the closed forms of the circular and hyperbolic
+ * functions against the old forms by the complex exponential.
+ * TrigTest checks the accuracy of the closed forms. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class TrigJmh{
+
+	@Param({"sin", "cos", "tan", "sinh", "cosh", "tanh"})
+	public String function;
+
+	/** A ring of points: a power of 2. */
+	private final EC[] zs=new EC[1024];
+	private int i;
+
+	@Setup public void setup(){
+		Random random=new Random(1);
+		for(int k=0; k<zs.length; k++)
+			zs[k]=EC.mkCartesian((random.nextDouble()*2 - 1)*4, (random.nextDouble()*2 - 1)*4);
+	}
+
+	private EC z(){return zs[i=(i+1) & (zs.length-1)];}
+
+	@Benchmark public EC old(){return old(function, z());}
+
+	@Benchmark public EC closed(){return closed(function, z());}
+
+	/** The closed forms, as EC has them now.
+	 * @return null if undefined */
+	private static EC closed(String f, EC z){
+		try{
+			if(f.equals("sin")) return z.sin();
+			if(f.equals("cos")) return z.cos();
+			if(f.equals("tan")) return z.tan();
+			if(f.equals("sinh")) return z.sinh();
+			if(f.equals("cosh")) return z.cosh();
+			return z.tanh();
+		}catch(PartialException e){
+			return null;
+		}
+	}
+
+	//The old forms -----------------------------------------------------------
+
+	private static final EC HALF=EC.mkReal(0.5D);
+	private static final EC NEGHALFI=EC.mkCartesian(0.0D, -0.5D);
+
+	/** The forms by the complex exponential, as EC had them before.
+	 * @return null if undefined */
+	private static EC old(String f, EC z){
+		try{
+			if(f.equals("sin")) return oldSin(z);
+			if(f.equals("cos")) return oldCos(z);
+			if(f.equals("tan")) return oldSin(z).divide(oldCos(z));
+			if(f.equals("sinh")) return oldSinh(z);
+			if(f.equals("cosh")) return oldCosh(z);
+			return oldSinh(z).divide(oldCosh(z));
+		}catch(PartialException e){
+			return null;
+		}
+	}
+
+	private static EC oldSin(EC z)throws PartialException{
+		EC w=z.multiply(EC.I);
+		try{
+			return NEGHALFI.multiply(w.exp().subtract(w.negate().exp()));
+		}catch(PartialException e){
+			return EC.ZERO;
+		}
+	}
+
+	private static EC oldCos(EC z)throws PartialException{
+		EC w=z.multiply(EC.I);
+		return HALF.multiply(w.exp().add(w.negate().exp()));
+	}
+
+	private static EC oldSinh(EC z)throws PartialException{
+		try{
+			return HALF.multiply(z.exp().subtract(z.negate().exp()));
+		}catch(PartialException e){
+			return EC.ZERO;
+		}
+	}
+
+	private static EC oldCosh(EC z)throws PartialException{
+		return HALF.multiply(z.exp().add(z.negate().exp()));
+	}
+}
+
@@ -0,0 +1,118 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of EC, Borrow and Piclet.
+ * <p>
+ * Every operation takes its operands from a ring of random numbers, so
+ * that the JIT cannot fold them. It is in the package of the numbers,
+ * to reach Borrow and Piclet.sample(). */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class NumbersJmh{
+
+	/** How many operands in the ring: a power of 2. */
+	private static final int N=1024;
+
+	//State -----------------------------------------------------------------
+
+	private final EC[] zs=new EC[N];
+	private final EC[] ws=new EC[N];
+	private int i;
+
+	@Setup public void setup(){
+		Random random=new Random(1);
+		for(int k=0; k<N; k++){
+			zs[k]=EC.mkCartesian(random.nextGaussian()*2, random.nextGaussian()*2);
+			ws[k]=EC.mkCartesian(random.nextGaussian()*2, random.nextGaussian()*2);
+		}
+	}
+
+	private EC z(){return zs[i=(i+1) & (N-1)];}
+	private EC w(){return ws[i];}
+
+	//Arithmetic ------------------------------------------------------------
+
+	@Benchmark public EC add()throws PartialException{return z().add(w());}
+	@Benchmark public EC subtract()throws PartialException{return z().subtract(w());}
+	@Benchmark public EC multiply()throws PartialException{return z().multiply(w());}
+	@Benchmark public EC divide()throws PartialException{return z().divide(w());}
+	@Benchmark public EC power()throws PartialException{return z().power(w());}
+	@Benchmark public EC reciprocal(){return z().reciprocal();}
+	@Benchmark public EC sqrt(){return z().sqrt();}
+	@Benchmark public double mod(){return z().mod();}
+	@Benchmark public EC argument(){return z().argument();}
+
+	//Transcendental functions ----------------------------------------------
+
+	@Benchmark public EC exp(){return z().exp();}
+	@Benchmark public EC ln()throws PartialException{return z().ln();}
+	@Benchmark public EC sin()throws PartialException{return z().sin();}
+	@Benchmark public EC cos()throws PartialException{return z().cos();}
+	@Benchmark public EC tan()throws PartialException{return z().tan();}
+	@Benchmark public EC sinh()throws PartialException{return z().sinh();}
+	@Benchmark public EC cosh()throws PartialException{return z().cosh();}
+	@Benchmark public EC tanh()throws PartialException{return z().tanh();}
+
+	//Borrow ----------------------------------------------------------------
+
+	@Benchmark public double hypot(){
+		EC z=z();
+		return Borrow.hypot(z.re(), z.im());
+	}
+
+	@Benchmark public double[] div(){
+		EC z=z(), w=w();
+		return Borrow.div(z.re(), z.im(), w.re(), w.im());
+	}
+
+	//Piclet ----------------------------------------------------------------
+
+	@Benchmark public Polyline sampleCircle(){
+		Circle c=new Circle(z(), 1.5);
+		return c.getSamples();
+	}
+
+	@Benchmark public Polyline sampleLine(){
+		Line l=new Line(z(), w());
+		return l.getSamples();
+	}
+
+	@Benchmark public Polyline sampleRectangle(){
+		Rectangle r=new Rectangle(z(), w());
+		return r.getSamples();
+	}
+}
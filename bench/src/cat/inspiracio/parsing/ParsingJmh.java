@@ -0,0 +1,231 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.text.ParseException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cat.inspiracio.numbers.ComplexFunction;
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.MutableEC;
+import cat.inspiracio.numbers.PartialException;
+
+/** JMH benchmarks of parsing and evaluating expressions.
+ * <p>
+ * Parses expressions of some sizes and shapes, with the one-pass parser
+ * and with the recursive parser of the tests, and types into a long
+ * expression with and without IncrementalParser. Evaluates typical
+ * formulas at one point by the tree, by the program, with EC and with
+ * MutableEC, and by the class that ClassCompiler makes.
+ * ParserTest and IncrementalParserTest check that the parsers agree. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+//The recursive parser recurses as deep as the expressions are long.
+@Fork(value=1, jvmArgsAppend="-Xss256m")
+public class ParsingJmh{
+
+	/** An expression of about size characters, of some shape. */
+	@State(Scope.Benchmark)
+	public static class Input{
+
+		@Param({"10", "100", "1000", "10000"})
+		public int size;
+
+		/** Bracketed terms, long sums, differences, products and
+		 * juxtapositions, and deeply nested brackets. */
+		@Param({"terms", "sum", "difference", "product", "juxtaposition", "nested"})
+		public String shape;
+
+		String expression;
+
+		@Setup public void setup(){
+			String term;
+			if(shape.equals("terms"))
+				term="(sinz+2*z^3-1)*";//14 tokens
+			else if(shape.equals("sum"))
+				term="z+1+";
+			else if(shape.equals("difference"))
+				term="z-1-";
+			else if(shape.equals("product"))
+				term="z*2/";
+			else if(shape.equals("juxtaposition"))
+				term="2piz";
+			else{
+				//Like (((z+1)*z-1)*z+1)...
+				StringBuilder b=new StringBuilder();
+				int depth=size/6;
+				for(int i=0; i<depth; i++)
+					b.append('(');
+				b.append('z');
+				for(int i=0; i<depth; i++)
+					b.append(i%2==0 ? "+1)*z" : "-1)*z");
+				expression=b.toString();
+				return;
+			}
+			StringBuilder b=new StringBuilder();
+			while(b.length() < size)
+				b.append(term);
+			b.append('z');
+			expression=b.toString();
+		}
+	}
+
+	/** A long product of bracketed terms, with a bracketed term to type
+	 * into the middle of it, a key at a time, as the display does. */
+	@State(Scope.Thread)
+	public static class Typing{
+
+		static final String TYPED="+2*z^3-1*sinz";
+
+		String text;
+		int at;
+		IncrementalParser parser;
+
+		@Setup public void setup()throws ParseException{
+			StringBuilder half=new StringBuilder();
+			for(int i=0; i<500; i++)
+				half.append("(sinz+2*z^3-1)*");
+			at=half.length() + 2;
+			text=half + "(z)*" + half + "z";
+		}
+
+		/** A parser with the text parsed, for every typing. */
+		@Setup(Level.Invocation) public void parser()throws ParseException{
+			parser=new IncrementalParser();
+			parser.setText(text);
+			parser.getTree();
+		}
+	}
+
+	/** A typical formula, compiled, and points to evaluate it at. */
+	@State(Scope.Thread)
+	public static class Formula{
+
+		@Param({"z*z+1", "(z-1)/(z+1)", "exp(z)*sinz", "z^3-2z+5", "ln(z)+cos(z)/z"})
+		public String formula;
+
+		SyntaxTree tree;
+		Program program;
+		ComplexFunction compiled;
+
+		/** A ring of points: a power of 2. */
+		final EC[] zs=new EC[1024];
+		final double[] re=new double[1], im=new double[1];
+		final MutableEC z=new MutableEC();
+		final MutableEC w=new MutableEC();
+		int i;
+
+		@Setup public void setup()throws ParseException{
+			tree=SyntaxTree.parse(formula);
+			program=tree.compile();
+			compiled=ClassCompiler.compile(program);
+			Random random=new Random(1);
+			for(int k=0; k<zs.length; k++)
+				zs[k]=EC.mkCartesian(random.nextDouble()*4 - 2, random.nextDouble()*4 - 2);
+		}
+
+		EC next(){return zs[i=(i+1) & (zs.length-1)];}
+	}
+
+	//Parsing ---------------------------------------------------------------
+
+	@Benchmark public SyntaxTree parse(Input input)throws ParseException{
+		return SyntaxTree.parse(input.expression);
+	}
+
+	@Benchmark public SyntaxTree parseRecursive(Input input)throws ParseException{
+		return RecursiveParser.parse(input.expression);
+	}
+
+	/** Types the term, and parses the whole text after every key.
+	 * Some keys leave a text that does not parse. */
+	@Benchmark public int typeFull(Typing typing){
+		StringBuilder b=new StringBuilder(typing.text);
+		int parsed=0;
+		for(int k=0; k<Typing.TYPED.length(); k++){
+			b.insert(typing.at+k, Typing.TYPED.charAt(k));
+			try{
+				SyntaxTree.parse(b.toString());
+				parsed++;
+			}catch(ParseException e){}
+		}
+		return parsed;
+	}
+
+	/** Types the term into IncrementalParser, and parses after every key. */
+	@Benchmark public int typeIncremental(Typing typing){
+		IncrementalParser parser=typing.parser;
+		int parsed=0;
+		for(int k=0; k<Typing.TYPED.length(); k++){
+			parser.replace(typing.at+k, typing.at+k, Typing.TYPED.substring(k, k+1));
+			try{
+				parser.getTree();
+				parsed++;
+			}catch(ParseException e){}
+		}
+		return parsed;
+	}
+
+	//Evaluating ------------------------------------------------------------
+
+	@Benchmark public EC evaluateTree(Formula f)throws Exception{
+		try{
+			return f.tree.evaluate(f.next());
+		}catch(PartialException e){
+			return null;
+		}
+	}
+
+	@Benchmark public EC evaluateProgram(Formula f)throws Exception{
+		try{
+			return f.program.evaluate(f.next());
+		}catch(PartialException e){
+			return null;
+		}
+	}
+
+	@Benchmark public double evaluateMutable(Formula f)throws Exception{
+		EC z=f.next();
+		f.program.evaluate(f.z.set(z.re(), z.im()), f.w);
+		return f.w.re();
+	}
+
+	@Benchmark public double evaluateClass(Formula f)throws Exception{
+		EC z=f.next();
+		f.re[0]=z.re();
+		f.im[0]=z.im();
+		f.compiled.evaluate(f.re, f.im, f.re, f.im, 1);
+		return f.re[0];
+	}
+}
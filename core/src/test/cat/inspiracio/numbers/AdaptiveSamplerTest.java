@@ -0,0 +1,106 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cat.inspiracio.parsing.SyntaxTree;
+
+/** The image that AdaptiveSampler makes must be close to a dense
+ * reference curve, inside a view of +-VIEW at SCALE pixels per unit,
+ * and closer than the fixed samples of the piclet where they are far. */
+public class AdaptiveSamplerTest{
+
+	static final double SCALE=100;
+	static final double VIEW=5;
+	static final int REFERENCE=1<<14;
+
+	/** Greatest distance allowed, in pixels. */
+	static final double MAX_ERROR=1;
+
+	static final String[] FORMULAS={"z", "z^2", "exp(z)", "1/z", "1/(z-0.5)", "ln(z)", "tan(z)", "z^0.5", "1/(z*z+1)"};
+
+	@Test public void sample()throws Exception{
+		Piclet[] piclets={
+				new Line(EC.mkCartesian(-2, -1), EC.mkCartesian(2, 1)),
+				new Circle(EC.ZERO, 1.5),
+				new Circle(EC.mkCartesian(0.5, 0), 0.25)};
+		for(Piclet piclet : piclets)
+			for(String f : FORMULAS){
+				String at=f + " on " + piclet.getClass().getSimpleName() + " " + piclet.at(0);
+				Counter function=new Counter(SyntaxTree.parse(f).compile());
+				Polyline reference=reference(piclet, function);
+				Polyline fixed=piclet.getSamples().map(function);
+				function.count=0;
+				Polyline adaptive=new AdaptiveSampler(function, SCALE).sample(piclet);
+				double error=error(reference, adaptive);
+				assertTrue(at + ": " + error + " px", error<=MAX_ERROR);
+				assertTrue(at + ": " + function.count + " evaluations", function.count<=AdaptiveSampler.POINTS);
+				assertTrue(at + ": worse than fixed", error<=Math.max(MAX_ERROR/2, error(reference, fixed)));
+			}
+	}
+
+	/** The image of REFERENCE+1 points evenly along the piclet. */
+	private static Polyline reference(Piclet piclet, ComplexFunction f)throws BugException{
+		Polyline p=new Polyline(REFERENCE+1);
+		for(int i=0; i<=REFERENCE; i++)
+			p.add(piclet.at((double)i/REFERENCE));
+		return p.map(f);
+	}
+
+	/** Greatest distance in pixels of a point of the reference inside the view to the image. */
+	private static double error(Polyline reference, Polyline image){
+		double max=0;
+		for(int i=0; i<reference.size(); i++){
+			double x=reference.re(i), y=reference.im(i);
+			if(!reference.isFinite(i) || VIEW<Math.abs(x) || VIEW<Math.abs(y))
+				continue;
+			double min=Double.POSITIVE_INFINITY;
+			for(int j=0; j<image.size(); j++){
+				if(!image.isFinite(j))
+					continue;
+				min=Math.min(min, Math.hypot(image.re(j)-x, image.im(j)-y));
+				if(j+1<image.size() && image.isFinite(j+1))
+					min=Math.min(min, segment(x, y, image.re(j), image.im(j), image.re(j+1), image.im(j+1)));
+			}
+			max=Math.max(max, min);
+		}
+		return max*SCALE;
+	}
+
+	/** Distance from (x,y) to the segment from a to b. */
+	private static double segment(double x, double y, double ax, double ay, double bx, double by){
+		double dx=bx-ax, dy=by-ay;
+		double l=dx*dx + dy*dy;
+		double u= l==0 ? 0 : Math.max(0, Math.min(1, ((x-ax)*dx + (y-ay)*dy) / l));
+		return Math.hypot(ax + u*dx - x, ay + u*dy - y);
+	}
+
+	/** Counts the points it evaluates. */
+	private static final class Counter implements ComplexFunction{
+		private final ComplexFunction f;
+		int count;
+		Counter(ComplexFunction f){this.f=f;}
+		@Override public void evaluate(double[] re, double[] im, double[] outRe, double[] outIm, int n)throws BugException{
+			count+=n;
+			f.evaluate(re, im, outRe, outIm, n);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** The queries of ECTree must find what a scan of all numbers finds. */
+public class ECTreeTest{
+
+	private final Random random=new Random(1);
+
+	/** What was added, with repetitions. */
+	private final List<EC> list=new ArrayList<EC>();
+
+	private final ECTree tree=new ECTree();
+
+	@Before public void setup(){
+		for(int i=0; i<20000; i++){
+			//Some spread out, some in clusters, and some repeated.
+			double re, im;
+			if(i%3==0){
+				re=random.nextGaussian()*1000;
+				im=random.nextGaussian()*1000;
+			}else{
+				re=Math.floor(random.nextGaussian()*10) + random.nextGaussian()*1e-3;
+				im=Math.floor(random.nextGaussian()*10) + random.nextGaussian()*1e-3;
+			}
+			list.add(i%1000==0 ? EC.ZERO : EC.mkCartesian(re, im));
+		}
+		list.add(EC.INFINITY);
+		for(EC c : list)
+			tree.add(c);
+	}
+
+	@Test public void set(){
+		List<EC> distinct=new ArrayList<EC>(tree);
+		assertEquals(list.size() - 19, tree.size());
+		assertEquals(tree.size(), distinct.size());
+		for(EC c : list)
+			assertTrue(tree.contains(c));
+		assertTrue(tree.contains(EC.INFINITY));
+		assertFalse(tree.contains(EC.mkCartesian(0.5, 0.5)));
+		assertFalse(tree.add(list.get(5)));
+	}
+
+	/** Numbers beyond MAX are apart, even where the root covers them. */
+	@Test public void big(){
+		ECTree tree=new ECTree();
+		tree.add(EC.mkCartesian(-ECTree.MAX, -ECTree.MAX));
+		tree.add(EC.mkCartesian(ECTree.MAX, ECTree.MAX));
+		EC inside=EC.mkCartesian(1.5*ECTree.MAX, 0);
+		EC outside=EC.mkCartesian(1e20, 1e20);
+		assertTrue(tree.add(inside));
+		assertTrue(tree.add(outside));
+		assertFalse(tree.add(inside));
+		assertFalse(tree.add(outside));
+		assertEquals(4, tree.size());
+		assertTrue(tree.contains(inside));
+		assertTrue(tree.contains(outside));
+	}
+
+	@Test public void visit(){
+		final int[] counts=new int[2];
+		ECTree.Visitor visitor=new ECTree.Visitor(){
+			@Override public void number(EC c){counts[0]++;}
+			@Override public void cluster(double re, double im, int count){counts[0]+=count; counts[1]++;}
+		};
+		for(double width : new double[]{1, 10, 100, 10000}){
+			int brute=0;
+			for(EC c : tree)
+				if(c.isFinite() && Math.abs(c.re())<=width/2 && Math.abs(c.im())<=width/2)
+					brute++;
+			for(double cluster : new double[]{0, width/50}){
+				counts[0]=counts[1]=0;
+				tree.visit(-width/2, -width/2, width/2, width/2, cluster, visitor);
+				assertEquals("width " + width + " cluster " + cluster, brute, counts[0]);
+				if(cluster==0)
+					assertEquals(0, counts[1]);
+			}
+		}
+	}
+
+	@Test public void nearest(){
+		for(int r=0; r<1000; r++){
+			double re=random.nextGaussian()*20, im=random.nextGaussian()*20, max=random.nextDouble();
+			EC best=null;
+			double d=max;
+			for(EC c : tree)
+				if(c.isFinite() && Math.hypot(c.re()-re, c.im()-im)<=d){
+					d=Math.hypot(c.re()-re, c.im()-im);
+					best=c;
+				}
+			EC found=tree.nearest(re, im, max);
+			if(best==null)
+				assertNull(found);
+			else{
+				assertNotNull(found);
+				assertEquals(d, Math.hypot(found.re()-re, found.im()-im), 0);
+			}
+		}
+	}
+
+	@Test public void clear(){
+		tree.clear();
+		assertEquals(0, tree.size());
+		assertFalse(tree.contains(list.get(1)));
+		assertNull(tree.nearest(0, 0, 1e9));
+	}
+}
@@ -0,0 +1,73 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import cat.inspiracio.parsing.ClassCompiler;
+import cat.inspiracio.parsing.SyntaxTree;
+
+/** Tabulator, on any number of threads, must give exactly the numbers of
+ * a serial loop over SyntaxTree.evaluate. */
+public class TabulatorTest{
+
+	static final String[] FORMULAS={"z", "z*z+1", "(z-1)/(z+1)", "exp(z)*sinz", "ln(z)+cos(z)/z", "(z-z)/(z-z)+1", "z!"};
+
+	static final int SIDE=101;
+
+	@Test public void tabulate()throws Exception{
+		Rectangle region=new Rectangle(EC.ZERO, EC.mkCartesian(2, 2));
+		for(String f : FORMULAS){
+			SyntaxTree tree=SyntaxTree.parse(f);
+			ComplexFunction function=ClassCompiler.compile(tree.compile());
+			double[][] serial=loop(tree, region);
+			for(int threads=1; threads<=4; threads*=2){
+				Tabulator tabulator=new Tabulator(threads);
+				try{
+					double[][] w=tabulator.tabulate(function, region, SIDE, SIDE);
+					for(int i=0; i<serial[0].length; i++){
+						String at=f + " on " + threads + " threads at " + i;
+						assertEquals(at, Double.doubleToLongBits(serial[0][i]), Double.doubleToLongBits(w[0][i]));
+						assertEquals(at, Double.doubleToLongBits(serial[1][i]), Double.doubleToLongBits(w[1][i]));
+					}
+				}finally{
+					tabulator.shutdown();
+				}
+			}
+		}
+	}
+
+	/** One point after the other, row by row from the top. */
+	private static double[][] loop(SyntaxTree tree, Rectangle region)throws Exception{
+		double left=region.left(), top=region.top();
+		double dx=(region.right()-left)/(SIDE-1), dy=(top-region.bottom())/(SIDE-1);
+		double[] re=new double[SIDE*SIDE], im=new double[SIDE*SIDE];
+		for(int r=0, i=0; r<SIDE; r++)
+			for(int c=0; c<SIDE; c++, i++)
+				try{
+					EC w=tree.evaluate(EC.mkCartesian(left + c*dx, top - r*dy));
+					re[i]=w.re();
+					im[i]=w.im();
+				}catch(PartialException e){
+					re[i]=im[i]=Double.NaN;
+				}
+		return new double[][]{re, im};
+	}
+}
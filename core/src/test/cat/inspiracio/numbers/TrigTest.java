@@ -0,0 +1,201 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** The closed forms of sin, cos, tan, sinh, cosh and tanh in EC must be
+ * close to a reference in 60 digits, also where the imaginary part (the
+ * real part for the hyperbolic functions) is big, and must be finite
+ * exactly where the true value is a finite double. */
+public class TrigTest{
+
+	static final String[] FUNCTIONS={"sin", "cos", "tan", "sinh", "cosh", "tanh"};
+
+	/** Bands of |Im z| for sin, cos, tan, and of |Re z| for the hyperbolic ones. */
+	static final double[][] BANDS={{0, 1}, {1, 20}, {20, 40}, {300, 400}, {700, 720}};
+
+	static final int SAMPLES=200;
+
+	/** The greatest error allowed, in units of 2^-53 of the modulus. */
+	static final double MAX_ERROR=8;
+
+	@Test public void accuracy()throws Exception{
+		Random random=new Random(1);
+		for(String f : FUNCTIONS){
+			boolean hyperbolic=f.endsWith("h");
+			for(double[] band : BANDS){
+				for(int n=0; n<SAMPLES; n++){
+					double a=(random.nextDouble()*2 - 1) * 10;
+					double b=band[0] + random.nextDouble()*(band[1]-band[0]);
+					if(random.nextBoolean())
+						b=-b;
+					EC z= hyperbolic ? EC.mkCartesian(b, a) : EC.mkCartesian(a, b);
+					String at=f + "(" + z + ")";
+					BigDecimal[] ref=reference(f, z.re(), z.im());
+					EC w=evaluate(f, z);
+					BigDecimal modulus=sqrt(ref[0].multiply(ref[0], MC).add(ref[1].multiply(ref[1], MC), MC));
+					boolean finite=modulus.compareTo(MAX)<=0;
+					assertTrue(at + " = " + w, w!=null && !Double.isNaN(w.re()) && !Double.isNaN(w.im()));
+					assertEquals(at + " = " + w, finite, w.isFinite());
+					if(finite)
+						assertTrue(at + " = " + w, error(w, ref, modulus) <= MAX_ERROR);
+				}
+			}
+		}
+	}
+
+	/** @return null if undefined */
+	private static EC evaluate(String f, EC z){
+		try{
+			if(f.equals("sin")) return z.sin();
+			if(f.equals("cos")) return z.cos();
+			if(f.equals("tan")) return z.tan();
+			if(f.equals("sinh")) return z.sinh();
+			if(f.equals("cosh")) return z.cosh();
+			return z.tanh();
+		}catch(PartialException e){
+			return null;
+		}
+	}
+
+	/** Distance of w from the reference, in units of 2^-53 of the modulus. */
+	private static double error(EC w, BigDecimal[] ref, BigDecimal modulus){
+		BigDecimal dr=new BigDecimal(w.re()).subtract(ref[0], MC);
+		BigDecimal di=new BigDecimal(w.im()).subtract(ref[1], MC);
+		BigDecimal d=sqrt(dr.multiply(dr, MC).add(di.multiply(di, MC), MC));
+		if(modulus.signum()==0)
+			return d.signum()==0 ? 0 : Double.POSITIVE_INFINITY;
+		return d.divide(modulus, MC).doubleValue() * 0x1p53;
+	}
+
+	//Reference ---------------------------------------------------------------
+
+	private static final MathContext MC=new MathContext(60, RoundingMode.HALF_EVEN);
+
+	private static final BigDecimal PI=new BigDecimal("3.14159265358979323846264338327950288419716939937510582097494459230781640628620899863");
+	private static final BigDecimal TWOPI=PI.add(PI);
+	private static final BigDecimal TWO=BigDecimal.valueOf(2);
+	private static final BigDecimal E=exp1();
+	private static final BigDecimal MAX=new BigDecimal(Double.MAX_VALUE);
+
+	/** The true value of f at x+iy, as {re, im}. */
+	static BigDecimal[] reference(String f, double x, double y){
+		boolean hyperbolic=f.endsWith("h");
+		//sinh(x+iy) = -i sin(i(x+iy)) = -i sin(-y+ix), and so on
+		BigDecimal a=new BigDecimal(hyperbolic ? -y : x);
+		BigDecimal b=new BigDecimal(hyperbolic ? x : y);
+		BigDecimal s=sin(a), c=cos(a);
+		BigDecimal eb=exp(b), emb=BigDecimal.ONE.divide(eb, MC);
+		BigDecimal sh=eb.subtract(emb, MC).divide(TWO, MC);
+		BigDecimal ch=eb.add(emb, MC).divide(TWO, MC);
+		BigDecimal[] sin={s.multiply(ch, MC), c.multiply(sh, MC)};
+		BigDecimal[] cos={c.multiply(ch, MC), s.multiply(sh, MC).negate()};
+		BigDecimal[] w;
+		if(f.startsWith("sin"))
+			w=sin;
+		else if(f.startsWith("cos"))
+			w=cos;
+		else
+			w=divide(sin, cos);
+		if(!hyperbolic || f.equals("cosh"))
+			return w;
+		return new BigDecimal[]{w[1], w[0].negate()};	//times -i
+	}
+
+	private static BigDecimal[] divide(BigDecimal[] p, BigDecimal[] q){
+		BigDecimal d=q[0].multiply(q[0], MC).add(q[1].multiply(q[1], MC), MC);
+		BigDecimal r=p[0].multiply(q[0], MC).add(p[1].multiply(q[1], MC), MC);
+		BigDecimal i=p[1].multiply(q[0], MC).subtract(p[0].multiply(q[1], MC), MC);
+		return new BigDecimal[]{r.divide(d, MC), i.divide(d, MC)};
+	}
+
+	private static BigDecimal sin(BigDecimal x){
+		x=reduce(x);
+		BigDecimal sum=BigDecimal.ZERO;
+		BigDecimal term=x;
+		BigDecimal xx=x.multiply(x, MC);
+		for(int n=1; term.signum()!=0 && term.abs().compareTo(new BigDecimal("1e-70"))>0; n+=2){
+			sum=sum.add(term, MC);
+			term=term.multiply(xx, MC).divide(BigDecimal.valueOf(-(long)(n+1)*(n+2)), MC);
+		}
+		return sum;
+	}
+
+	private static BigDecimal cos(BigDecimal x){
+		x=reduce(x);
+		BigDecimal sum=BigDecimal.ZERO;
+		BigDecimal term=BigDecimal.ONE;
+		BigDecimal xx=x.multiply(x, MC);
+		for(int n=0; term.abs().compareTo(new BigDecimal("1e-70"))>0; n+=2){
+			sum=sum.add(term, MC);
+			term=term.multiply(xx, MC).divide(BigDecimal.valueOf(-(long)(n+1)*(n+2)), MC);
+		}
+		return sum;
+	}
+
+	/** x modulo 2 pi, in [-pi, pi]. */
+	private static BigDecimal reduce(BigDecimal x){
+		BigDecimal n=x.divide(TWOPI, MC).setScale(0, RoundingMode.HALF_EVEN);
+		return x.subtract(n.multiply(TWOPI, MC), MC);
+	}
+
+	private static BigDecimal exp(BigDecimal x){
+		if(x.signum()<0)
+			return BigDecimal.ONE.divide(exp(x.negate()), MC);
+		int n=x.intValue();
+		return E.pow(n, MC).multiply(series(x.subtract(BigDecimal.valueOf(n))), MC);
+	}
+
+	private static BigDecimal exp1(){return series(BigDecimal.ONE);}
+
+	/** e^x by its series, for small x. */
+	private static BigDecimal series(BigDecimal x){
+		BigDecimal sum=BigDecimal.ZERO;
+		BigDecimal term=BigDecimal.ONE;
+		for(int n=1; term.compareTo(new BigDecimal("1e-70"))>0; n++){
+			sum=sum.add(term, MC);
+			term=term.multiply(x, MC).divide(BigDecimal.valueOf(n), MC);
+		}
+		return sum;
+	}
+
+	private static BigDecimal sqrt(BigDecimal a){
+		if(a.signum()==0)
+			return a;
+		double d=a.doubleValue();
+		BigDecimal x= d==0 || Double.isInfinite(d) ?
+				BigDecimal.ONE.scaleByPowerOfTen(a.precision() - a.scale() >> 1) :
+				new BigDecimal(Math.sqrt(d));
+		for(int n=0; n<100; n++){
+			BigDecimal y=x.add(a.divide(x, MC), MC).divide(TWO, MC);
+			if(y.compareTo(x)==0)
+				break;
+			x=y;
+		}
+		return x;
+	}
+}
@@ -0,0 +1,75 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import org.junit.Test;
+
+import cat.inspiracio.numbers.ComplexFunction;
+import cat.inspiracio.numbers.EC;
+
+/** The class that ClassCompiler makes must give exactly the results of
+ * the program. */
+public class ClassCompilerTest{
+
+	private static final EC[] POINTS=Expressions.points(21);
+
+	@Test public void formulas()throws Exception{
+		for(String f : Expressions.FORMULAS)
+			check(f);
+	}
+
+	@Test public void random()throws Exception{
+		for(String f : ProgramTest.random(500))
+			check(f);
+	}
+
+	/** Deep enough for locals beyond 255. */
+	@Test public void deep()throws Exception{
+		StringBuilder b=new StringBuilder();
+		for(int k=0; k<100; k++)
+			b.append("z*(1+");
+		b.append('z');
+		for(int k=0; k<100; k++)
+			b.append(')');
+		check(b.toString());
+	}
+
+	private static void check(String f)throws Exception{
+		Program program=SyntaxTree.parse(f).compile();
+		ComplexFunction compiled=ClassCompiler.compile(program);
+		if(!program.hasBug())
+			assertNotSame(f, program, compiled);
+		int n=POINTS.length;
+		double[] re=new double[n], im=new double[n], pRe=new double[n], pIm=new double[n];
+		for(int i=0; i<n; i++){
+			re[i]=POINTS[i].re();
+			im[i]=POINTS[i].im();
+		}
+		program.evaluate(re, im, pRe, pIm, n);
+		compiled.evaluate(re, im, re, im, n);
+		for(int i=0; i<n; i++)
+			assertEquals(f + " at " + POINTS[i], bits(pRe[i], pIm[i]), bits(re[i], im[i]));
+	}
+
+	private static String bits(double re, double im){
+		return Double.isNaN(re) && Double.isNaN(im) ? null : Expressions.bits(EC.mkCartesian(re, im));
+	}
+}
@@ -0,0 +1,129 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.util.Random;
+
+import cat.inspiracio.numbers.EC;
+
+/** Random expressions for the tests, and points to evaluate them at. */
+final class Expressions{
+
+	/** Typical formulas. */
+	static final String[] FORMULAS={
+		"z",
+		"z*z+1",
+		"2*pi*i*z",
+		"(z-1)/(z+1)",
+		"exp(z)*sinz",
+		"z^3-2z+5",
+		"ln(z)+cos(z)/z",
+		//undefined everywhere
+		"(z-z)/(z-z)+1",
+		"z!",
+	};
+
+	/** Functions that evaluate. acos, asin, atan and D do not. */
+	private static final String[] FUNCTIONS={"arg", "conj", "cos", "cosh", "exp", "Im", "ln", "mod", "opp", "Re", "sin", "sinh", "tan", "tanh"};
+
+	private static final String[] ATOMS={"z", "x", "0", "1", "2", "0.5", "3.25", "i", "e", "pi", "\u03C0", "inf", "\u221E"};
+
+	/** Characters that make a valid expression invalid. */
+	private static final String NOISE="()()+-*/^!.zp1 ";
+
+	private final Random random;
+
+	Expressions(long seed){
+		random=new Random(seed);
+	}
+
+	/** A valid expression of about this depth. */
+	String valid(int depth){
+		if(depth<=0 || random.nextInt(4)==0)
+			return ATOMS[random.nextInt(ATOMS.length)];
+		String a=valid(depth-1);
+		switch(random.nextInt(11)){
+		case 0: return a + "+" + operand(depth-1);
+		case 1: return a + "-" + operand(depth-1);
+		case 2: return a + "*" + operand(depth-1);
+		case 3: return a + "/" + operand(depth-1);
+		case 4: return a + "^" + operand(depth-1);
+		case 5: return (random.nextBoolean() ? "-" : "+") + operand(depth-1);
+		case 6: return FUNCTIONS[random.nextInt(FUNCTIONS.length)] + (random.nextBoolean() ? "(" + a + ")" : operand(depth-1));
+		case 7: return "(" + a + ")!";
+		case 8: return "(" + a + ")" + operand(depth-1);
+		case 9: return "2" + operand(depth-1);
+		default: return "(" + a + ")";
+		}
+	}
+
+	/** A valid expression that does not start with a sign, so that it can
+	 * follow an operator. */
+	private String operand(int depth){
+		String a=valid(depth);
+		char c=a.charAt(0);
+		return c=='+' || c=='-' ? "(" + a + ")" : a;
+	}
+
+	/** A valid expression with some characters deleted, inserted or replaced,
+	 * so that it is likely to be invalid. */
+	String invalid(int depth){
+		StringBuilder b=new StringBuilder(valid(depth));
+		int edits=1 + random.nextInt(3);
+		for(int e=0; e<edits; e++){
+			int i=random.nextInt(b.length() + 1);
+			char c=NOISE.charAt(random.nextInt(NOISE.length()));
+			switch(random.nextInt(3)){
+			case 0:
+				if(i<b.length())
+					b.deleteCharAt(i);
+				break;
+			case 1:
+				b.insert(i, c);
+				break;
+			default:
+				if(i<b.length())
+					b.setCharAt(i, c);
+			}
+		}
+		return b.toString();
+	}
+
+	/** A grid of side x side points in the square of +-2, and some special points. */
+	static EC[] points(int side){
+		EC[] zs=new EC[side*side + 6];
+		int k=0;
+		for(int y=0; y<side; y++)
+			for(int x=0; x<side; x++)
+				zs[k++]=EC.mkCartesian(-2 + 4.0*x/(side-1), -2 + 4.0*y/(side-1));
+		zs[k++]=EC.ZERO;
+		zs[k++]=EC.ONE;
+		zs[k++]=EC.I;
+		zs[k++]=EC.mkReal(-1);
+		zs[k++]=EC.mkCartesian(1e300, -1e300);
+		zs[k++]=EC.INFINITY;
+		return zs;
+	}
+
+	/** The bits of a result, or "inf". */
+	static String bits(EC c){
+		if(!c.isFinite())
+			return "inf";
+		return Double.doubleToLongBits(c.re()) + "," + Double.doubleToLongBits(c.im());
+	}
+}
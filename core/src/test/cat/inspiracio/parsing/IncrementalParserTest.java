@@ -0,0 +1,93 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** After every edit, IncrementalParser must give the tree, or throw the
+ * exception, that SyntaxTree.parse gives for the whole text. */
+public class IncrementalParserTest{
+
+	/** Characters that the edits insert. */
+	private static final String KEYS="()()+-*/^!.zx12pie sincoexpln ";
+
+	@Test public void random(){
+		Expressions expressions=new Expressions(5);
+		Random random=new Random(5);
+		for(int k=0; k<300; k++){
+			IncrementalParser parser=new IncrementalParser();
+			parser.setText(expressions.valid(1 + k%8));
+			check(parser);
+			for(int e=0; e<30; e++){
+				int length=parser.getText().length();
+				int start=random.nextInt(length + 1);
+				int end=Math.min(length, start + random.nextInt(3));
+				StringBuilder r=new StringBuilder();
+				for(int c=random.nextInt(4); 0<c; c--)
+					r.append(KEYS.charAt(random.nextInt(KEYS.length())));
+				parser.replace(start, end, r);
+				check(parser);
+			}
+		}
+	}
+
+	/** Types a bracketed term into a product of bracketed terms, one key
+	 * at a time, as the display does. */
+	@Test public void typing(){
+		String term="(sinz+2*z^3-1)*";
+		StringBuilder b=new StringBuilder();
+		for(int k=0; k<50; k++)
+			b.append(term);
+		int at=b.length() + 2;
+		b.append("(z)*").append(b).append('z');
+		IncrementalParser parser=new IncrementalParser();
+		parser.setText(b);
+		check(parser);
+		String typed="+2*z^3-1*sinz)(";
+		for(int k=0; k<typed.length(); k++){
+			parser.replace(at+k, at+k, typed.substring(k, k+1));
+			check(parser);
+		}
+	}
+
+	private static void check(IncrementalParser parser){
+		String text=parser.getText();
+		assertEquals(text, result(text), result(parser));
+	}
+
+	private static String result(String text){
+		try{
+			return SyntaxTree.parse(text).unparse();
+		}catch(ParseException e){
+			return e.getMessage() + " at " + e.getErrorOffset();
+		}
+	}
+
+	private static String result(IncrementalParser parser){
+		try{
+			return parser.getTree().unparse();
+		}catch(ParseException e){
+			return e.getMessage() + " at " + e.getErrorOffset();
+		}
+	}
+}
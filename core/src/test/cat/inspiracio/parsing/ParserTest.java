@@ -0,0 +1,135 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** The one-pass parser must make the same trees, and throw the same
+ * exceptions, as the recursive parser, also where the brackets are
+ * not balanced. */
+public class ParserTest{
+
+	@Test public void valid(){
+		Expressions expressions=new Expressions(2);
+		for(int k=0; k<2000; k++)
+			check(expressions.valid(1 + k%10));
+	}
+
+	@Test public void invalid(){
+		Expressions expressions=new Expressions(3);
+		for(int k=0; k<5000; k++)
+			check(expressions.invalid(1 + k%10));
+	}
+
+	@Test public void examples(){
+		String[] examples={
+			"", " ", "z", "2piz", "-z-1", "+z+1", "sinz^2", "z^2^3", "z!!", "exp ln z",
+			"1.", "1.z", "1..2", "p", "pz", "q", "z+", "*z", "z**z", "z^", "^z", "!z",
+			"()", "(z))", "((z)", "(z", "z)", ")z", "sin(1-z-z", "(1+2)*(3", "2(z+1)(z-1)",
+			"(", ")", ")(", "(+", "z+(", "(z+)", "1.(", "((1+2)*3", "(1+2))*3", "z)+(z", "-(z", "z^(2",
+			"(z!", "sin(", "(z)(", "exp(z*(1+z)", "q+(", "(p", "z*)", "(z)/)", "sin(1-z-z)))",
+		};
+		for(String s : examples)
+			check(s);
+	}
+
+	/** Valid expressions with one bracket more or less. */
+	@Test public void unbalanced(){
+		Expressions expressions=new Expressions(4);
+		Random random=new Random(4);
+		for(int k=0; k<5000; k++){
+			StringBuilder b=new StringBuilder(expressions.valid(1 + k%10));
+			int i=random.nextInt(b.length() + 1);
+			if(random.nextBoolean())
+				b.insert(i, random.nextBoolean() ? '(' : ')');
+			else{
+				int j=indexOfBracket(b, i);
+				if(j<0)
+					b.insert(i, '(');
+				else
+					b.deleteCharAt(j);
+			}
+			check(b.toString());
+		}
+	}
+
+	/** Long expressions of each shape. */
+	@Test public void long_valid(){
+		int n=500;
+		check(repeat("z+1+", n) + "z");
+		check(repeat("z-1-", n) + "z");
+		check(repeat("z*2/", n) + "z");
+		check(repeat("2piz", n));
+		StringBuilder b=new StringBuilder(repeat("(", n/2)).append('z');
+		for(int i=0; i<n/2; i++)
+			b.append(i%2==0 ? "+1)*z" : "-1)*z");
+		check(b.toString());
+	}
+
+	/** Long unbalanced expressions, where the recursive parser needs a deep stack. */
+	@Test public void long_unbalanced(){
+		StringBuilder b=new StringBuilder("sin(1");
+		for(int k=0; k<100000; k++)
+			b.append("-z");
+		assertEquals("unmatched bracket at 3", parse(b.toString()));
+		b.append(")))");
+		assertEquals(b.toString() + " at " + (b.length()-2), parse(b.toString()));
+	}
+
+	private static String repeat(String s, int n){
+		StringBuilder b=new StringBuilder(s.length()*n);
+		for(int i=0; i<n; i++)
+			b.append(s);
+		return b.toString();
+	}
+
+	/** The index of the first bracket from i on, or -1. */
+	private static int indexOfBracket(CharSequence s, int i){
+		for(int j=i; j<s.length(); j++)
+			if(s.charAt(j)=='(' || s.charAt(j)==')')
+				return j;
+		return -1;
+	}
+
+	/** Compares the parsers on an expression. */
+	private static void check(String s){
+		assertEquals(s, recursive(s), parse(s));
+	}
+
+	/** The unparsed tree, or the message and offset of the exception. */
+	private static String parse(String s){
+		try{
+			return SyntaxTree.parse(s).unparse();
+		}catch(ParseException e){
+			return e.getMessage() + " at " + e.getErrorOffset();
+		}
+	}
+
+	private static String recursive(String s){
+		try{
+			return RecursiveParser.parse(SyntaxTree.stripBlanks(s)).unparse();
+		}catch(ParseException e){
+			return e.getMessage() + " at " + e.getErrorOffset();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.PartialException;
+
+/** The simplified tree must be defined where the original is, and give
+ * the same numbers up to rounding: gathering constants multiplies them
+ * in another order. */
+public class PartialEvaluateTest{
+
+	private static final EC[] POINTS=Expressions.points(21);
+
+	/** Relative error allowed. */
+	private static final double EPSILON=1e-9;
+
+	@Test public void formulas()throws Exception{
+		for(String f : Expressions.FORMULAS)
+			check(f);
+	}
+
+	@Test public void random()throws Exception{
+		for(String f : ProgramTest.random(500))
+			check(f);
+	}
+
+	@Test public void folds()throws Exception{
+		assertEquals("(2\u03C0i)*(z)", SyntaxTree.parse("2*pi*i*z").partialEvaluate().unparse());
+		assertEquals("(6)*(z)", SyntaxTree.parse("2*(3*z)").partialEvaluate().unparse());
+		assertEquals("z", SyntaxTree.parse("(z+0)*1^1").partialEvaluate().unparse());
+	}
+
+	private static void check(String f)throws Exception{
+		SyntaxTree tree=SyntaxTree.parse(f);
+		SyntaxTree simplified=tree.partialEvaluate();
+		for(EC z : POINTS){
+			//Where z^1 overflows, the simplified z does not.
+			if(z.isFinite() && 1e100<z.mod())
+				continue;
+			String at=f + " as " + simplified.unparse() + " at " + z;
+			EC a=evaluate(tree, z);
+			EC b=evaluate(simplified, z);
+			if(a==null || b==null){
+				assertTrue(at + ": " + a + " != " + b, a==b);
+				continue;
+			}
+			assertEquals(at, a.isFinite(), b.isFinite());
+			if(a.isFinite()){
+				double tolerance=EPSILON * Math.max(1, Math.hypot(a.re(), a.im()));
+				assertEquals(at, a.re(), b.re(), tolerance);
+				assertEquals(at, a.im(), b.im(), tolerance);
+			}
+		}
+	}
+
+	/** @return null if undefined */
+	private static EC evaluate(SyntaxTree tree, EC z)throws Exception{
+		try{
+			return tree.evaluate(z);
+		}catch(PartialException e){
+			return null;
+		}
+	}
+}
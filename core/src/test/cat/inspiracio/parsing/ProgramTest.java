@@ -0,0 +1,98 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import static cat.inspiracio.parsing.Expressions.bits;
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.MutableEC;
+import cat.inspiracio.numbers.PartialException;
+
+/** The program must give exactly the results of the tree, by every way of
+ * evaluating it. */
+public class ProgramTest{
+
+	private static final EC[] POINTS=Expressions.points(21);
+
+	@Test public void formulas()throws Exception{
+		for(String f : Expressions.FORMULAS)
+			check(f);
+	}
+
+	@Test public void random()throws Exception{
+		for(String f : random(500))
+			check(f);
+	}
+
+	/** Valid expressions, some deep. */
+	static List<String> random(int n){
+		Expressions expressions=new Expressions(1);
+		List<String> fs=new ArrayList<String>(n);
+		for(int k=0; k<n; k++)
+			fs.add(expressions.valid(1 + k%8));
+		return fs;
+	}
+
+	private static void check(String f)throws ParseException, Exception{
+		SyntaxTree tree=SyntaxTree.parse(f);
+		Program program=tree.compile();
+		int n=POINTS.length;
+		EC[] ws=new EC[n];
+		program.evaluate(POINTS, ws);
+		double[] re=new double[n], im=new double[n];
+		for(int i=0; i<n; i++){
+			re[i]=POINTS[i].re();
+			im[i]=POINTS[i].im();
+		}
+		program.evaluate(re, im, re, im, n);
+		for(int i=0; i<n; i++){
+			EC z=POINTS[i];
+			String at=f + " at " + z;
+			String a;
+			String b;
+			try{
+				a=bits(tree.evaluate(z));
+			}catch(PartialException e){
+				a=e.getMessage();
+			}
+			try{
+				b=bits(program.evaluate(z));
+			}catch(PartialException e){
+				b=e.getMessage();
+			}
+			assertEquals(at, a, b);
+			boolean undefined=a.indexOf(',')<0 && !a.equals("inf");
+			String expected= undefined ? null : a;
+			MutableEC w=new MutableEC(z);
+			program.evaluate(w, w);
+			assertEquals(at + " mutable", expected, w.isUndefined() ? null : bits(w.toEC()));
+			assertEquals(at + " on grid", expected, ws[i]==null ? null : bits(ws[i]));
+			//On arrays, (NaN, NaN) is undefined.
+			String nan=bits(EC.mkCartesian(Double.NaN, Double.NaN));
+			String d= Double.isNaN(re[i]) && Double.isNaN(im[i]) ? null : bits(EC.mkCartesian(re[i], im[i]));
+			assertEquals(at + " on arrays", nan.equals(expected) ? null : expected, d);
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.text.ParseException;
+import java.text.ParsePosition;
+
+import cat.inspiracio.numbers.EC;
+
+/** The recursive parser that SyntaxTree had before Tokenizer and Parser,
+ * as it was, to compare them with it.
+ * <p>
+ * It splits at the last '+', '-', '*' or '/' outside brackets, and so
+ * takes quadratic time, and recursion as deep as the expression is long. */
+public final class RecursiveParser
+{
+
+    private RecursiveParser()
+    {
+    }
+
+    /** Parses an expression without blanks. */
+    public static SyntaxTree parse(String s)throws ParseException{
+        return parse(s, 0, s.length());
+    }
+
+    private static int first(char c, String s, int i, int j)
+    {
+        int k = i;
+        for(int l = 0; k < j && (l != 0 || s.charAt(k) != c); k++)
+            if(s.charAt(k) == '(')
+                l++;
+            else
+            if(s.charAt(k) == ')')
+                l--;
+
+        if(k < j)
+            return k;
+        else
+            return -1;
+    }
+
+    private static SyntaxTree getFactor(String s, ParsePosition parseposition, ParsePosition parseposition1)
+        throws ParseException
+    {
+        Object obj = null;
+        int i;
+        if(s.charAt(parseposition.getIndex()) == '(')
+        {
+            int j = first(')', s, parseposition.getIndex() + 1, parseposition1.getIndex());
+            if(j == -1)
+                throw new ParseException("unmatched bracket", parseposition.getIndex());
+            obj = parse(s, parseposition.getIndex() + 1, j);
+            parseposition.setIndex(j + 1);
+        } else
+        if((i = recogniseFunction(s, parseposition, parseposition1)) != -1)
+        {
+            obj = new SyntaxTreeUnary(i, parse(s, parseposition.getIndex(), parseposition1.getIndex()));
+            parseposition.setIndex(parseposition1.getIndex());
+        } else
+        if(SyntaxTree.in(s.charAt(parseposition.getIndex()), "0123456789"))
+            obj = readDigits(s, parseposition, parseposition1);
+        else
+        if(SyntaxTree.in(s.charAt(parseposition.getIndex()), "iep\u03C0\u221E"))
+            obj = readConstant(s, parseposition, parseposition1);
+        else
+        if(SyntaxTree.in(s.charAt(parseposition.getIndex()), "zx"))
+            obj = readVariable(s, parseposition, parseposition1);
+        if(obj == null)
+            throw new ParseException(s, parseposition.getIndex());
+        for(; parseposition.getIndex() < parseposition1.getIndex() && s.charAt(parseposition.getIndex()) == '!'; parseposition.setIndex(parseposition.getIndex() + 1))
+            obj = new SyntaxTreeUnary(20, ((SyntaxTree) (obj)));
+
+        if(parseposition.getIndex() < parseposition1.getIndex() && s.charAt(parseposition.getIndex()) == '^')
+        {
+            obj = new SyntaxTreeBinary(4, ((SyntaxTree) (obj)), parse(s, parseposition.getIndex() + 1, parseposition1.getIndex()));
+            parseposition.setIndex(parseposition1.getIndex());
+        }
+        return ((SyntaxTree) (obj));
+    }
+
+    private static int last(char c, String s, int i, int j){
+        int k = j - 1;
+        for(int l = 0; i <= k && (l != 0 || s.charAt(k) != c); k--)
+            if(s.charAt(k) == '(')
+                l++;
+            else if(s.charAt(k) == ')')
+                l--;
+        if(i <= k)
+            return k;
+        else
+            return -1;
+    }
+
+    private static SyntaxTree parse(String s, int i, int j)throws ParseException{
+        if(i >= j)
+            throw new ParseException("SyntaxTree.parse(empty)", i);
+        int k;
+        Object obj;
+        if((k = last('+', s, i, j)) > -1)
+            obj = bracketPlusMinus(s, i, k, j, 0);
+        else if((k = last('-', s, i, j)) > -1)
+            obj = bracketPlusMinus(s, i, k, j, 1);
+        else if((k = last('*', s, i, j)) > -1)
+            obj = bracketBin(s, i, k, j, 2);
+        else if((k = last('/', s, i, j)) > -1){
+            obj = bracketBin(s, i, k, j, 3);
+        } else{
+            ParsePosition parseposition = new ParsePosition(i);
+            ParsePosition parseposition1 = new ParsePosition(j);
+            for(obj = getFactor(s, parseposition, parseposition1); parseposition.getIndex() != parseposition1.getIndex(); obj = new SyntaxTreeBinary(2, ((SyntaxTree) (obj)), getFactor(s, parseposition, parseposition1)));
+        }
+        return ((SyntaxTree) (obj));
+    }
+
+    private static SyntaxTree readConstant(String s, ParsePosition parseposition, ParsePosition parseposition1) throws ParseException{
+        EC ec = null;
+        int i = parseposition.getIndex();
+        if(s.startsWith("inf", i)){
+            ec = EC.INFINITY;
+            i += 3;
+        } else if(s.startsWith("i", i))
+        {
+            ec = EC.I;
+            i++;
+        } else
+        if(s.startsWith("e", i))
+        {
+            ec = EC.E;
+            i++;
+        } else
+        if(s.startsWith("\u03C0", i))
+        {
+            ec = EC.PI;
+            i++;
+        } else
+        if(s.startsWith("\u221E", i))
+        {
+            ec = EC.INFINITY;
+            i++;
+        } else
+        if(s.startsWith("pi", i))
+        {
+            ec = EC.PI;
+            i += 2;
+        } else
+        {
+            throw new ParseException("readConstant " + s, i);
+        }
+        parseposition.setIndex(i);
+        return new SyntaxTreeConstant(ec);
+    }
+
+    private static SyntaxTree readDigits(String s, ParsePosition parseposition, ParsePosition parseposition1)
+        throws ParseException
+    {
+        int i;
+        for(i = parseposition.getIndex(); i < parseposition1.getIndex() && SyntaxTree.in(s.charAt(i), "0123456789"); i++);
+        EC ec;
+        if(parseposition1.getIndex() == i)
+            ec = EC.mkReal(Double.parseDouble(s.substring(parseposition.getIndex(), i)));
+        else
+        if(s.charAt(i) == '.')
+        {
+            int j;
+            for(j = i + 1; j < parseposition1.getIndex() && SyntaxTree.in(s.charAt(j), "0123456789"); j++);
+            if(i + 1 <= j - 1)
+            {
+                i = j;
+                ec = EC.mkReal(Double.parseDouble(s.substring(parseposition.getIndex(), i)));
+            } else
+            {
+                throw new ParseException("SyntaxTree.readDigits: decimal point followed by non-digit", i);
+            }
+        } else
+        {
+            ec = EC.mkReal(Double.parseDouble(s.substring(parseposition.getIndex(), i)));
+        }
+        parseposition.setIndex(i);
+        return new SyntaxTreeConstant(ec);
+    }
+
+    private static SyntaxTree readVariable(String s, ParsePosition parseposition, ParsePosition parseposition1)
+    {
+        parseposition.setIndex(parseposition.getIndex() + 1);
+        return new SyntaxTreeVariable();
+    }
+
+    /** Reads the longest function name at the position, if any.
+     * @return The token of the function, or -1. */
+    private static int recogniseFunction(String s, ParsePosition parseposition, ParsePosition parseposition1)
+    {
+        FunctionNames.Node node = FunctionNames.match(s, parseposition.getIndex());
+        if(node == null)
+            return -1;
+        parseposition.setIndex(parseposition.getIndex() + node.depth);
+        return node.token;
+    }
+
+    private static SyntaxTree bracketBin(String s, int i, int j, int k, int l)
+        throws ParseException
+    {
+        SyntaxTree syntaxtree = parse(s, i, j);
+        SyntaxTree syntaxtree1 = parse(s, j + 1, k);
+        return new SyntaxTreeBinary(l, syntaxtree, syntaxtree1);
+    }
+
+    private static SyntaxTree bracketPlusMinus(String s, int i, int j, int k, int l)
+        throws ParseException
+    {
+        if(j == i)
+        {
+            SyntaxTree syntaxtree = parse(s, i + 1, k);
+            return new SyntaxTreeUnary(l, syntaxtree);
+        } else
+        {
+            return bracketBin(s, i, j, k, l);
+        }
+    }
+}
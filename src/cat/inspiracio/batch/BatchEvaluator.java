@@ -0,0 +1,242 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.batch;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import cat.inspiracio.numbers.BugException;
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.PartialException;
+import cat.inspiracio.parsing.ExpressionCache;
+import cat.inspiracio.parsing.Program;
+import cat.inspiracio.parsing.SyntaxTree;
+
+/** Evaluates a stream of expressions, one per line, as the calculator does.
+ * <p>
+ * A line is an expression, or an expression and a value for z after a
+ * semicolon, like "z^2+1; 1+2i". For every line it writes one line:
+ * the value as EC.toString() gives it, "Undefined: " and the reason,
+ * or "Error: " and why the line does not parse. Empty lines stay empty.
+ * <p>
+ * Chunks of lines are evaluated on a pool of threads, and the results are
+ * written in the order of the input. Only a few chunks per thread are in
+ * memory at a time, so the input may be as long as you like.
+ * <p>
+ * From the command line:
+ * <pre>
+ * java cat.inspiracio.batch.BatchEvaluator [-threads n] [-precision n] [file]
+ * </pre>
+ * Without a file, or with "-", it reads stdin. It writes the results to
+ * stdout and the throughput to stderr. */
+public final class BatchEvaluator{
+
+	/** How many lines one task evaluates. */
+	static final int CHUNK=256;
+
+	/** How many chunks per thread may wait to be written. */
+	static final int WINDOW=4;
+
+	private static final String SEPARATOR=";";
+
+	//State -----------------------------------------------------------------
+
+	private final int threads;
+
+	/** How many lines the last run read. */
+	private long lines;
+
+	/** How long the last run took, in nanoseconds. */
+	private long nanos;
+
+	//Constructors ----------------------------------------------------------
+
+	/** @param threads How many threads evaluate, at least 1. */
+	public BatchEvaluator(int threads){
+		if(threads<1)
+			throw new IllegalArgumentException("threads " + threads);
+		this.threads=threads;
+	}
+
+	//Main ------------------------------------------------------------------
+
+	public static void main(String[] args)throws Exception{
+		int threads=Runtime.getRuntime().availableProcessors();
+		String file=null;
+		for(int i=0; i<args.length; i++){
+			String a=args[i];
+			if(a.equals("-threads") && i+1<args.length)
+				threads=Integer.parseInt(args[++i]);
+			else if(a.equals("-precision") && i+1<args.length)
+				EC.setPrecision(Integer.parseInt(args[++i]));
+			else if(file==null && (a.equals("-") || !a.startsWith("-")))
+				file=a;
+			else{
+				System.err.println("usage: java " + BatchEvaluator.class.getName() + " [-threads n] [-precision n] [file]");
+				System.exit(2);
+			}
+		}
+		InputStream in= file==null || file.equals("-") ? System.in : new FileInputStream(file);
+		BatchEvaluator batch=new BatchEvaluator(threads);
+		try{
+			batch.run(new InputStreamReader(in, "UTF-8"), new OutputStreamWriter(System.out, "UTF-8"));
+		}finally{
+			in.close();
+		}
+		double seconds=batch.getNanos() / 1e9;
+		System.err.printf("%d expressions in %.3f s on %d threads: %.0f expressions/s%n",
+				batch.getLines(), seconds, threads, batch.getLines() / seconds);
+	}
+
+	//Accessors -------------------------------------------------------------
+
+	/** How many lines the last run read. */
+	public long getLines(){return lines;}
+
+	/** How long the last run took, in nanoseconds. */
+	public long getNanos(){return nanos;}
+
+	//Methods ---------------------------------------------------------------
+
+	/** Evaluates every line of in and writes the results to out, in order.
+	 * Flushes out at the end, but does not close in or out. */
+	public void run(Reader in, Writer out)throws IOException, InterruptedException{
+		long start=System.nanoTime();
+		lines=0;
+		BufferedReader reader=new BufferedReader(in);
+		Writer writer=new BufferedWriter(out);
+		ExecutorService executor=Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			private int n;
+			@Override public synchronized Thread newThread(Runnable r){
+				Thread thread=new Thread(r, "BatchEvaluator-" + ++n);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		ArrayDeque<Future<String[]>> pending=new ArrayDeque<Future<String[]>>();
+		try{
+			List<String> chunk=new ArrayList<String>(CHUNK);
+			String line;
+			while((line=reader.readLine())!=null){
+				lines++;
+				chunk.add(line);
+				if(chunk.size()==CHUNK){
+					if(pending.size()==threads*WINDOW)
+						write(pending.poll(), writer);
+					pending.add(executor.submit(new Task(chunk)));
+					chunk=new ArrayList<String>(CHUNK);
+				}
+			}
+			if(!chunk.isEmpty())
+				pending.add(executor.submit(new Task(chunk)));
+			while(!pending.isEmpty())
+				write(pending.poll(), writer);
+			writer.flush();
+		}finally{
+			executor.shutdownNow();
+			nanos=System.nanoTime() - start;
+		}
+	}
+
+	/** Evaluates one line as the calculator does.
+	 * @return The line to write for it. */
+	public static String evaluate(String line){
+		if(line.trim().length()==0)
+			return "";
+		String expression=line;
+		String zExpression=null;
+		int semicolon=line.indexOf(SEPARATOR);
+		if(0<=semicolon){
+			expression=line.substring(0, semicolon);
+			zExpression=line.substring(semicolon + SEPARATOR.length());
+		}
+		try{
+			EC z=null;
+			if(zExpression!=null){
+				//Values of z are seldom repeated: they would only push
+				//the expressions out of the cache.
+				SyntaxTree value=SyntaxTree.parse(zExpression);
+				if(value.compile().usesVariable())
+					return "Error: the value of z uses z";
+				z=value.evaluate(null);
+			}
+			Program program=ExpressionCache.getInstance().get(expression).getProgram();
+			if(z==null && program.usesVariable())
+				return "Error: no value for z";
+			return program.evaluate(z).toString();
+		}catch(PartialException pe){
+			return "Undefined: " + pe.getLocalizedMessage();
+		}catch(BugException be){
+			return "Error: " + be.getLocalizedMessage();
+		}catch(ParseException pe){
+			return "Error: " + pe.getLocalizedMessage();
+		}
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	private static void write(Future<String[]> future, Writer writer)throws IOException, InterruptedException{
+		String[] results;
+		try{
+			results=future.get();
+		}catch(ExecutionException e){
+			Throwable cause=e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+		for(String result : results){
+			writer.write(result);
+			writer.write('\n');
+		}
+	}
+
+	/** Evaluates a chunk of lines. */
+	private static final class Task implements Callable<String[]>{
+
+		private final List<String> lines;
+
+		Task(List<String> lines){this.lines=lines;}
+
+		@Override public String[] call(){
+			String[] results=new String[lines.size()];
+			for(int i=0; i<results.length; i++)
+				results[i]=evaluate(lines.get(i));
+			return results;
+		}
+	}
+}
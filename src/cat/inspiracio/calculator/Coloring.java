@@ -0,0 +1,307 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.calculator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.util.Log;
+import cat.inspiracio.numbers.BugException;
+import cat.inspiracio.numbers.ComplexFunction;
+import cat.inspiracio.numbers.DomainColoring;
+import cat.inspiracio.numbers.ECContext;
+
+/** Renders the domain colouring of a function in square tiles, on a pool
+ * of background threads.
+ * <p>
+ * A tile is a bitmap of TILE x TILE pixels. Its points are evaluated with
+ * one call of the function, and coloured with DomainColoring. Tiles sit on
+ * a grid of the plane, so that a tile is the same wherever the view is.
+ * The tiles nearest the centre of the view are rendered first. Only
+ * finished tiles go to the listener, on the UI thread.
+ * <p>
+ * The width of a pixel is quantised to zoom levels, and each level has
+ * its own grid. Finished tiles are kept in a TileCache, so that a pan
+ * renders only the tiles that come into view, and a zoom back to a level
+ * shows its tiles at once.
+ * <p>
+ * A render goes in passes. The first pass makes every tile with a pixel
+ * of 8x8 tile pixels, which is quick. When all tiles of a pass have
+ * arrived, the next pass makes them again with smaller pixels: 4, 2, and
+ * at last 1. So during a gesture, when each move makes a new render, the
+ * user sees the coarse pass, and the fine passes run when the view rests.
+ * <p>
+ * A new render makes the tiles of the render before stale: those that
+ * have not started are not rendered, and those that finish are dropped.
+ * The workers always use the principal argument, because the tiles are
+ * evaluated in no particular order.
+ * <p>
+ * Make it on the UI thread, and call shutdown() when the activity ends. */
+final class Coloring{
+
+	private static final String TAG="Coloring";
+
+	/** Side of a tile, in pixels. */
+	static final int TILE=128;
+
+	/** The sides of a pixel of the passes, in pixels of the last pass. Each divides TILE. */
+	static final int[] STEPS={8, 4, 2, 1};
+
+	/** How many zoom levels for every factor 2. A tile is drawn at most
+	 * this root of 2 smaller than it was made. */
+	static final int LEVELS=4;
+
+	private static final double LN2=Math.log(2);
+
+	/** Receives the tiles on the UI thread. */
+	interface Listener{
+
+		/** A tile of the newest render has finished. */
+		void onTile(Tile tile);
+
+		/** All tiles of the newest render have finished, in the last pass. */
+		void onComplete(int generation);
+	}
+
+	/** A finished tile. */
+	static final class Tile{
+
+		/** Which render made it. */
+		final int generation;
+
+		/** The real part of the left edge, and the imaginary part of the top edge. */
+		final double left, top;
+
+		/** Width of a pixel of the last pass, by the zoom level. */
+		final double pixel;
+
+		/** Side of a pixel of the bitmap, in pixels of the last pass: one of STEPS. */
+		final int step;
+
+		/** Which function it shows. */
+		final ComplexFunction function;
+
+		/** TILE/step square. */
+		final Bitmap bitmap;
+
+		Tile(int generation, double left, double top, double pixel, int step, ComplexFunction function, Bitmap bitmap){
+			this.generation=generation;
+			this.left=left;
+			this.top=top;
+			this.pixel=pixel;
+			this.step=step;
+			this.function=function;
+			this.bitmap=bitmap;
+		}
+
+		/** The real part of the right edge. */
+		double right(){return left + TILE*pixel;}
+
+		/** The imaginary part of the bottom edge. */
+		double bottom(){return top - TILE*pixel;}
+	}
+
+	//State -----------------------------------------------------------------
+
+	private final Listener listener;
+
+	/** Posts results to the UI thread. */
+	private final Handler handler=new Handler();
+
+	private final ExecutorService executor;
+
+	/** Counts the renders. Changed only on the UI thread. */
+	private volatile int generation;
+
+	/** The tasks of the newest render. */
+	private final List<Future<?>> pending=new ArrayList<Future<?>>();
+
+	/** The newest render. Only on the UI thread. */
+	private ComplexFunction function;
+	private int level;
+
+	/** The columns and rows of the tiles it renders, from the centre outwards. */
+	private List<int[]> corners;
+
+	/** The finished tiles. Only on the UI thread. */
+	private final TileCache cache=new TileCache(Runtime.getRuntime().maxMemory() / 8);
+
+	/** How many tiles of the current pass have not arrived. Only on the UI thread. */
+	private int remaining;
+
+	//Constructors ----------------------------------------------------------
+
+	Coloring(Listener listener){
+		this.listener=listener;
+		int threads=Runtime.getRuntime().availableProcessors();
+		this.executor=Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			private int n;
+			@Override public synchronized Thread newThread(final Runnable r){
+				Thread thread=new Thread(new Runnable(){
+					@Override public void run(){
+						ECContext.get().setArgContinuous(Boolean.FALSE);
+						r.run();
+					}
+				}, TAG + "-" + ++n);
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		});
+	}
+
+	//Methods ---------------------------------------------------------------
+
+	/** Renders f on all tiles that a view touches, in passes from coarse to fine.
+	 * Tiles in the cache go to the listener at once, and only the others
+	 * are rendered.
+	 * @param pixel Width of a screen pixel. The tiles are made for the zoom
+	 * 	level just finer.
+	 * @return The generation of this render. */
+	int render(ComplexFunction f, double left, double top, double right, double bottom, double pixel){
+		cancel();
+		int g=generation;
+		int level=level(pixel);
+		double side=TILE*pixel(level);
+		int i0=(int)Math.floor(left/side), i1=(int)Math.ceil(right/side);
+		int j0=(int)Math.floor(bottom/side), j1=(int)Math.ceil(top/side);
+
+		//The tiles that are not cached.
+		List<int[]> missing=new ArrayList<int[]>();
+		for(int i=i0; i<i1; i++)
+			for(int j=j0; j<j1; j++){
+				Bitmap bitmap=cache.get(new TileCache.Key(f, level, i, j));
+				if(bitmap==null)
+					missing.add(new int[]{i, j});
+				else
+					listener.onTile(new Tile(g, i*side, (j+1)*side, pixel(level), 1, f, bitmap));
+			}
+		if(missing.isEmpty()){
+			listener.onComplete(g);
+			return g;
+		}
+
+		//From the centre outwards.
+		final double cx=(left+right)/2/side, cy=(top+bottom)/2/side;
+		Collections.sort(missing, new Comparator<int[]>(){
+			@Override public int compare(int[] a, int[] b){
+				return Double.compare(distance(a), distance(b));
+			}
+			private double distance(int[] c){
+				double dx=c[0]+0.5-cx, dy=c[1]+0.5-cy;
+				return dx*dx + dy*dy;
+			}
+		});
+
+		this.function=f;
+		this.level=level;
+		this.corners=missing;
+		pass(g, 0);
+		return g;
+	}
+
+	/** Makes the tiles of the newest render stale. */
+	void cancel(){
+		generation++;
+		for(Future<?> future : pending)
+			future.cancel(false);
+		pending.clear();
+	}
+
+	/** Stops the background threads, and forgets the cached tiles. */
+	void shutdown(){
+		generation++;
+		executor.shutdownNow();
+		cache.clear();
+	}
+
+	/** The zoom level whose pixels are just finer than this width.
+	 * There are LEVELS levels for every factor 2. */
+	static int level(double pixel){
+		return (int)Math.floor(Math.log(pixel) / LN2 * LEVELS);
+	}
+
+	/** The width of a pixel at a zoom level. */
+	static double pixel(int level){
+		return Math.pow(2, (double)level / LEVELS);
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** Starts a pass of the newest render.
+	 * @param p Index in STEPS. */
+	private void pass(final int g, final int p){
+		pending.clear();
+		remaining=corners.size();
+		final ComplexFunction f=function;
+		final int level=this.level;
+		for(final int[] corner : corners)
+			pending.add(executor.submit(new Runnable(){
+				@Override public void run(){tile(f, g, p, level, corner[0], corner[1]);}
+			}));
+	}
+
+	/** On a worker: renders one tile in a pass, and posts it.
+	 * The last tile of a pass to arrive starts the next pass.
+	 * The tiles of the last pass go into the cache. */
+	private void tile(final ComplexFunction f, final int g, final int p, final int level, final int x, final int y){
+		if(g!=generation)
+			return;
+		double pixel=pixel(level);
+		double side=TILE*pixel;
+		double left=x*side, top=(y+1)*side;
+		int step=STEPS[p];
+		int n=TILE/step;
+		Bitmap bitmap=null;
+		try{
+			int[] argb=new int[n*n];
+			DomainColoring.render(f, left, top, pixel*step, n, n, argb);
+			if(g!=generation)
+				return;
+			bitmap=Bitmap.createBitmap(argb, n, n, Bitmap.Config.ARGB_8888);
+		}catch(BugException be){
+			Log.w(TAG, be);
+		}
+		final Tile tile= bitmap==null ? null : new Tile(g, left, top, pixel, step, f, bitmap);
+		handler.post(new Runnable(){
+			@Override public void run(){
+				if(g!=generation)
+					return;
+				if(tile!=null){
+					if(p+1==STEPS.length)
+						cache.put(new TileCache.Key(f, level, x, y), tile.bitmap);
+					listener.onTile(tile);
+				}
+				if(--remaining==0){
+					if(p+1<STEPS.length)
+						pass(g, p+1);
+					else
+						listener.onComplete(g);
+				}
+			}
+		});
+	}
+}
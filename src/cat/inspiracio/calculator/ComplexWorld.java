@@ -28,6 +28,7 @@ import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.text.Editable;
@@ -48,6 +49,7 @@ import android.widget.Toast;
 import cat.inspiracio.numbers.BugException;
 import cat.inspiracio.numbers.EC;
 import cat.inspiracio.numbers.PartialException;
+import cat.inspiracio.parsing.ExpressionCache;
 import cat.inspiracio.parsing.SyntaxTree;
 import cat.inspiracio.widget.IMEEditText;
 
@@ -67,6 +69,12 @@ public final class ComplexWorld extends Activity{
 
 	/** The text box where the expression is displayed. */
 	private EditText display;
+
+	/** Shows the value of the expression as it is typed. */
+	private TextView preview;
+
+	/** Evaluates the expression of the display as it changes. */
+	private LivePreview live;
 	
 	//Constructors ----------------------------------------------------------------
 	
@@ -112,6 +120,18 @@ public final class ComplexWorld extends Activity{
                 return false;
             }
         });
+        this.preview=(TextView)this.findViewById(R.id.preview);
+        this.live=new LivePreview(display.getText(), new LivePreview.Listener(){
+        	@Override public void onPreview(EC result, String message){
+        		if(result!=null)
+        			preview.setText("= " + result);
+        		else
+        			preview.setText(message==null ? "" : message);
+        		if(world!=null)
+        			world.preview(result);
+        	}
+        });
+        this.display.addTextChangedListener(live);
         //hides the input method
         Window window=getWindow();
         window.setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_STATE_HIDDEN);
@@ -121,6 +141,12 @@ public final class ComplexWorld extends Activity{
         //if(bundle!=null)this.world.onRestoreInstanceState(bundle);
     }
 
+    /** Stops the live preview. */
+    @Override protected void onDestroy(){
+    	live.shutdown();
+    	super.onDestroy();
+    }
+
     /** Create the options menu for the first time. */
     @Override public final boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater=this.getMenuInflater();
@@ -138,6 +164,9 @@ public final class ComplexWorld extends Activity{
         case R.id.clear:
             this.world.clear();
             return true;
+        case R.id.mapping:
+            this.startActivity(new Intent(this, Mapping.class));
+            return true;
         case R.id.about:
             this.showDialog(DIALOG_ABOUT);
             return true;
@@ -204,14 +233,15 @@ public final class ComplexWorld extends Activity{
     //Helpers ----------------------------------------------------------------
     
     /** Gets the expression from the display, parses it, evaluates it,
-     * and append the result to the display. */
+     * and append the result to the display.
+     * Parsed expressions come from the shared ExpressionCache. */
 	private void doEquals(){
         Editable editable=display.getText();
         String s=editable.toString();
         display.append(" = ");
         String msg=null;
         try{
-            SyntaxTree tree=SyntaxTree.parse(s);
+            SyntaxTree tree=ExpressionCache.getInstance().get(s).getSimplified();
             EC ec=tree.evaluate(null);
             display.append(ec.toString());
             if(this.world!=null)
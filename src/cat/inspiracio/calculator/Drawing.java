@@ -22,6 +22,7 @@ import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.graphics.Path;
 import android.graphics.Point;
+import android.graphics.Rect;
 
 /** Some convenience methods for drawing. */
 final class Drawing{
@@ -123,6 +124,14 @@ final class Drawing{
         canvas.drawText(s, pen.x, pen.y, paint);
     }
 
+    /** Sets the colour of the brush.
+     * @return The old colour. */
+    int color(int colour){
+    	int old=paint.getColor();
+    	paint.setColor(colour);
+    	return old;
+    }
+
     /** Fills the polygon with the given colour.
      * @param polygon The polygon to fill.
      * @param colour In this colour.
@@ -180,6 +189,11 @@ final class Drawing{
         pen.y = point.y;
     }
 
+    /** Sets the rectangle outside which nothing shows. */
+    void getClipBounds(Rect bounds){
+        canvas.getClipBounds(bounds);
+    }
+
     /** Moves the pen. */
     void move(int i, int j){
         pen.offset(i, j);
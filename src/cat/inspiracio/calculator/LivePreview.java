@@ -0,0 +1,228 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.calculator;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import cat.inspiracio.numbers.BugException;
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.PartialException;
+import cat.inspiracio.parsing.IncrementalParser;
+import cat.inspiracio.parsing.Program;
+
+/** Evaluates the expression of the display as the user types it.
+ * <p>
+ * Every edit goes to a background thread, which keeps the expression in an
+ * IncrementalParser, parses it and evaluates it. Only the newest evaluation
+ * counts: an edit cancels the evaluation of the edit before, and a result
+ * that arrives after a newer edit is dropped. Results go to the listener
+ * on the UI thread.
+ * <p>
+ * Make it on the UI thread, and call shutdown() when the activity ends. */
+final class LivePreview implements TextWatcher{
+
+	private static final String TAG="LivePreview";
+
+	/** Receives the results on the UI thread. */
+	interface Listener{
+
+		/** The expression has a new value.
+		 * @param result The value, or null if the expression does not parse
+		 * 	or has the variable z.
+		 * @param message Why the value is undefined, or null. */
+		void onPreview(EC result, String message);
+	}
+
+	//State -----------------------------------------------------------------
+
+	private final Listener listener;
+
+	/** Posts results to the UI thread. */
+	private final Handler handler=new Handler();
+
+	/** One thread, so that the edits arrive in order. */
+	private final ExecutorService executor=Executors.newSingleThreadExecutor(new ThreadFactory(){
+		@Override public Thread newThread(Runnable r){
+			Thread thread=new Thread(r, TAG);
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		}
+	});
+
+	/** Only used on the background thread. */
+	private final IncrementalParser parser=new IncrementalParser();
+
+	/** Counts the edits. Changed only on the UI thread. */
+	private volatile int generation;
+
+	/** The evaluation of the newest edit. */
+	private Future<?> pending;
+
+	private final Latency latency=new Latency();
+
+	//Constructors ----------------------------------------------------------
+
+	/** @param text The text of the display now. */
+	LivePreview(CharSequence text, Listener listener){
+		this.listener=listener;
+		final String s=text.toString();
+		executor.execute(new Runnable(){
+			@Override public void run(){parser.setText(s);}
+		});
+	}
+
+	//TextWatcher methods ---------------------------------------------------
+
+	@Override public void beforeTextChanged(CharSequence s, int start, int count, int after){}
+
+	/** The characters from start to start+before have been replaced by count characters. */
+	@Override public void onTextChanged(CharSequence s, int start, int before, int count){
+		long edited=System.nanoTime();
+		final int from=start;
+		final int to=start + before;
+		final String replacement=s.subSequence(start, start+count).toString();
+		if(pending!=null)
+			pending.cancel(false);
+		//The edit itself must never be cancelled.
+		executor.execute(new Runnable(){
+			@Override public void run(){parser.replace(from, to, replacement);}
+		});
+		pending=executor.submit(new Evaluation(++generation, edited));
+	}
+
+	@Override public void afterTextChanged(Editable s){}
+
+	//Methods ---------------------------------------------------------------
+
+	/** Statistics of the time from an edit to its result on the UI thread. */
+	Latency getLatency(){return latency;}
+
+	/** Stops the background thread. */
+	void shutdown(){
+		generation++;
+		executor.shutdownNow();
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** Parses and evaluates the expression after an edit. */
+	private final class Evaluation implements Runnable{
+
+		private final int generation;
+
+		/** When the edit happened, in System.nanoTime(). */
+		private final long edited;
+
+		Evaluation(int generation, long edited){
+			this.generation=generation;
+			this.edited=edited;
+		}
+
+		@Override public void run(){
+			if(stale())
+				return;
+			EC result=null;
+			String message=null;
+			try{
+				Program program=parser.getTree().compile();
+				if(!program.usesVariable())
+					result=program.evaluate(null);
+			}catch(ParseException pe){
+				//Not complete yet: no preview.
+			}catch(PartialException pe){
+				message="Undefined: " + pe.getLocalizedMessage();
+			}catch(BugException be){
+				message=be.getLocalizedMessage();
+			}
+			if(stale())
+				return;
+			final EC r=result;
+			final String m=message;
+			handler.post(new Runnable(){
+				@Override public void run(){
+					if(stale())
+						return;
+					latency.add(System.nanoTime() - edited);
+					listener.onPreview(r, m);
+				}
+			});
+		}
+
+		/** Has there been a newer edit? */
+		private boolean stale(){
+			return generation!=LivePreview.this.generation;
+		}
+	}
+
+	/** Statistics of edit-to-result times, thread-safe. */
+	static final class Latency{
+
+		/** Keeps the newest times, for percentiles. */
+		private final long[] recent=new long[128];
+
+		private int count;
+		private long total;
+		private long max;
+
+		synchronized void add(long nanos){
+			recent[count % recent.length]=nanos;
+			count++;
+			total+=nanos;
+			max=Math.max(max, nanos);
+			//Only when debugging, so that the sort in toString() costs nothing otherwise.
+			if(count % 64==0 && Log.isLoggable(TAG, Log.DEBUG))
+				Log.d(TAG, toString());
+		}
+
+		synchronized int count(){return count;}
+
+		/** Mean time in milliseconds. */
+		synchronized double mean(){return count==0 ? 0 : total / 1e6 / count;}
+
+		/** Maximum time in milliseconds. */
+		synchronized double max(){return max / 1e6;}
+
+		/** Percentile of the newest times in milliseconds.
+		 * @param p Between 0 and 100. */
+		synchronized double percentile(double p){
+			int n=Math.min(count, recent.length);
+			if(n==0)
+				return 0;
+			long[] sorted=new long[n];
+			System.arraycopy(recent, 0, sorted, 0, n);
+			Arrays.sort(sorted);
+			int k=(int)Math.ceil(p / 100 * n) - 1;
+			return sorted[Math.max(0, Math.min(n-1, k))] / 1e6;
+		}
+
+		@Override public synchronized String toString(){
+			return String.format("edit to result: %d edits, mean %.2f ms, p50 %.2f ms, p95 %.2f ms, max %.2f ms",
+					count, mean(), percentile(50), percentile(95), max());
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.calculator;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Handler;
+import android.util.Log;
+import cat.inspiracio.numbers.AdaptiveSampler;
+import cat.inspiracio.numbers.BugException;
+import cat.inspiracio.numbers.Piclet;
+import cat.inspiracio.numbers.Polyline;
+import cat.inspiracio.parsing.ExpressionCache;
+import cat.inspiracio.parsing.Program;
+
+/** Maps the shapes of the z-plane through the expression f(z), on a
+ * background thread.
+ * <p>
+ * The UI thread tells it what has changed: the expression, the scale of
+ * the w-plane, or a shape. Only what has changed is mapped again: while a
+ * shape is dragged, the other shapes keep their images. Changes that come
+ * faster than they can be mapped are merged, so that only the newest
+ * version of a shape is mapped. Each shape is sampled with AdaptiveSampler,
+ * which evaluates f for many points at once. The images go to the listener
+ * on the UI thread.
+ * <p>
+ * Make it on the UI thread, and call shutdown() when the activity ends. */
+final class Mapper{
+
+	private static final String TAG="Mapper";
+
+	/** Receives the results on the UI thread. */
+	interface Listener{
+
+		/** Some shapes have new images.
+		 * @param images By the id of the shape. Infinity in an image is a gap. */
+		void onImages(Map<Integer, Polyline> images);
+
+		/** The expression has been parsed.
+		 * @param function The function, or null if it does not parse.
+		 * @param message Why it does not parse, or null if it does. */
+		void onExpression(Program function, String message);
+	}
+
+	//State -----------------------------------------------------------------
+
+	private final Listener listener;
+
+	/** Posts results to the UI thread. */
+	private final Handler handler=new Handler();
+
+	private final ExecutorService executor=Executors.newSingleThreadExecutor(new ThreadFactory(){
+		@Override public Thread newThread(Runnable r){
+			Thread thread=new Thread(r, TAG);
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		}
+	});
+
+	//Written on the UI thread, read on the background thread. Guarded by this.
+
+	/** All shapes, by id. */
+	private final Map<Integer, Piclet> shapes=new HashMap<Integer, Piclet>();
+
+	/** The shapes to map, by id. */
+	private final Map<Integer, Piclet> dirty=new LinkedHashMap<Integer, Piclet>();
+
+	/** The new expression, or null if it has not changed. */
+	private String expression;
+
+	/** Pixels per unit in the w-plane. */
+	private double scale;
+
+	/** Counts the changes of expression and scale. */
+	private int generation;
+
+	/** Whether a Drain is waiting to run. */
+	private boolean scheduled;
+
+	/** Only used on the background thread. */
+	private Program function;
+
+	//Constructors ----------------------------------------------------------
+
+	Mapper(Listener listener){this.listener=listener;}
+
+	//Methods ---------------------------------------------------------------
+
+	/** Maps all shapes through a new expression. */
+	synchronized void setExpression(String expression){
+		this.expression=expression;
+		generation++;
+		dirty.putAll(shapes);
+		schedule();
+	}
+
+	/** Maps all shapes again for a new scale of the w-plane. */
+	synchronized void setScale(double scale){
+		if(scale==this.scale)
+			return;
+		this.scale=scale;
+		generation++;
+		dirty.putAll(shapes);
+		schedule();
+	}
+
+	/** A shape is new or has changed.
+	 * @param shape Must not change any more. */
+	synchronized void put(int id, Piclet shape){
+		shapes.put(id, shape);
+		dirty.put(id, shape);
+		schedule();
+	}
+
+	/** All shapes have gone. */
+	synchronized void clear(){
+		shapes.clear();
+		dirty.clear();
+	}
+
+	/** Stops the background thread. */
+	void shutdown(){
+		synchronized(this){
+			generation++;
+		}
+		executor.shutdownNow();
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** Call with the lock. */
+	private void schedule(){
+		if(scheduled || executor.isShutdown())
+			return;
+		scheduled=true;
+		executor.execute(new Drain());
+	}
+
+	private synchronized int generation(){return generation;}
+
+	/** Is this version of a shape still the newest one? */
+	private synchronized boolean current(int id, Piclet shape){
+		return shapes.get(id)==shape && !dirty.containsKey(id);
+	}
+
+	/** Maps what has changed since the last time. */
+	private final class Drain implements Runnable{
+
+		@Override public void run(){
+			String e;
+			Map<Integer, Piclet> work;
+			double s;
+			int g;
+			synchronized(Mapper.this){
+				scheduled=false;
+				e=expression;
+				expression=null;
+				work=new LinkedHashMap<Integer, Piclet>(dirty);
+				dirty.clear();
+				s=scale;
+				g=generation;
+			}
+
+			if(e!=null)
+				parse(e);
+			if(function==null || work.isEmpty() || !(0<s))
+				return;
+
+			AdaptiveSampler sampler=new AdaptiveSampler(function, s);
+			final Map<Integer, Polyline> images=new HashMap<Integer, Polyline>();
+			for(Map.Entry<Integer, Piclet> entry : work.entrySet()){
+				int id=entry.getKey();
+				Piclet shape=entry.getValue();
+				if(!current(id, shape))
+					continue;//A newer version comes later.
+				try{
+					images.put(id, sampler.sample(shape));
+				}catch(BugException be){
+					Log.w(TAG, be);
+				}
+			}
+			post(g, images);
+		}
+
+		/** Parses the expression and tells the listener. */
+		private void parse(String e){
+			String message=null;
+			try{
+				function=ExpressionCache.getInstance().get(e).getProgram();
+			}catch(ParseException pe){
+				//Not complete yet: keep the images of the last expression.
+				function=null;
+				message=pe.getLocalizedMessage();
+			}
+			final Program f=function;
+			final String m=message;
+			handler.post(new Runnable(){
+				@Override public void run(){listener.onExpression(f, m);}
+			});
+		}
+
+		/** Sends the images to the UI thread, unless they are stale by then,
+		 * or their shapes have gone. */
+		private void post(final int g, final Map<Integer, Polyline> images){
+			if(images.isEmpty() || g!=generation())
+				return;
+			handler.post(new Runnable(){
+				@Override public void run(){
+					if(g!=generation())
+						return;
+					synchronized(Mapper.this){
+						images.keySet().retainAll(shapes.keySet());
+					}
+					listener.onImages(images);
+				}
+			});
+		}
+	}
+}
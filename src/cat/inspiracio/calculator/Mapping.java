@@ -0,0 +1,183 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.calculator;
+
+import java.util.Map;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.Window;
+import android.view.WindowManager;
+import android.widget.EditText;
+import android.widget.TextView;
+import cat.inspiracio.numbers.Polyline;
+import cat.inspiracio.parsing.Program;
+import cat.inspiracio.widget.IMEEditText;
+
+/** The activity for the mapping mode z -> f(z).
+ * <p>
+ * The user draws shapes on the z-plane and types f(z) in the display.
+ * The w-plane shows the images of the shapes under f. */
+public final class Mapping extends Activity{
+
+	/** The expression at the start. */
+	private static final String EXPRESSION="z^2";
+
+	//State -----------------------------------------------------------------------
+
+	private ZPlane zPlane;
+
+	private WPlane wPlane;
+
+	/** The text box where the expression is typed. */
+	private EditText display;
+
+	/** Shows why the expression does not parse. */
+	private TextView preview;
+
+	/** Maps the shapes on a background thread. */
+	private Mapper mapper;
+
+	/** The function of the expression that parsed last, or null. */
+	private Program function;
+
+	/** Whether the z-plane shows the domain colouring of the function. */
+	private boolean coloring;
+
+	//Constructors ----------------------------------------------------------------
+
+	public Mapping(){}
+
+	//Activity methods ------------------------------------------------------------
+
+	/** Called when the activity is first created. */
+	@Override public void onCreate(Bundle bundle){
+		super.onCreate(bundle);
+		this.setContentView(R.layout.mapping);
+
+		this.zPlane=(ZPlane)this.findViewById(R.id.zplane);
+		this.wPlane=(WPlane)this.findViewById(R.id.wplane);
+		this.preview=(TextView)this.findViewById(R.id.preview);
+
+		this.mapper=new Mapper(new Mapper.Listener(){
+			@Override public void onImages(Map<Integer, Polyline> images){wPlane.setImages(images);}
+			@Override public void onExpression(Program f, String message){
+				preview.setText(message==null ? "" : message);
+				if(f!=null){
+					function=f;
+					if(coloring)
+						zPlane.setColoring(f);
+				}
+			}
+		});
+		this.zPlane.setMapper(mapper);
+		this.wPlane.setMapper(mapper);
+
+		IMEEditText it=(IMEEditText)this.findViewById(R.id.display);
+		it.setInputMethodService(new SoftKeyboard());
+		this.display=it;
+		if(bundle==null)
+			this.display.setText(EXPRESSION);
+		this.mapper.setExpression(display.getText().toString());
+		this.display.addTextChangedListener(new TextWatcher(){
+			@Override public void beforeTextChanged(CharSequence s, int start, int count, int after){}
+			@Override public void onTextChanged(CharSequence s, int start, int before, int count){}
+			@Override public void afterTextChanged(Editable s){mapper.setExpression(s.toString());}
+		});
+
+		//hides the input method
+		Window window=getWindow();
+		window.setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_STATE_HIDDEN);
+	}
+
+	/** Stops the mapper and the colouring. */
+	@Override protected void onDestroy(){
+		mapper.shutdown();
+		zPlane.stopColoring();
+		super.onDestroy();
+	}
+
+	@Override public final boolean onCreateOptionsMenu(Menu menu){
+		MenuInflater inflater=this.getMenuInflater();
+		inflater.inflate(R.menu.mapping_menu, menu);
+		return true;
+	}
+
+	/** Checks the item of the tool. */
+	@Override public final boolean onPrepareOptionsMenu(Menu menu){
+		int id;
+		switch(zPlane.getTool()){
+		case LINE: id=R.id.line; break;
+		case CIRCLE: id=R.id.circle; break;
+		case RECTANGLE: id=R.id.rectangle; break;
+		case SQUARE: id=R.id.square; break;
+		case FREELINE: id=R.id.freeline; break;
+		default: id=R.id.pan;
+		}
+		menu.findItem(id).setChecked(true);
+		menu.findItem(R.id.coloring).setChecked(coloring);
+		return true;
+	}
+
+	@Override public final boolean onOptionsItemSelected(MenuItem item){
+		switch(item.getItemId()){
+		case R.id.line: zPlane.setTool(ZPlane.Tool.LINE); return true;
+		case R.id.circle: zPlane.setTool(ZPlane.Tool.CIRCLE); return true;
+		case R.id.rectangle: zPlane.setTool(ZPlane.Tool.RECTANGLE); return true;
+		case R.id.square: zPlane.setTool(ZPlane.Tool.SQUARE); return true;
+		case R.id.freeline: zPlane.setTool(ZPlane.Tool.FREELINE); return true;
+		case R.id.pan: zPlane.setTool(ZPlane.Tool.PAN); return true;
+		case R.id.coloring:
+			coloring=!coloring;
+			zPlane.setColoring(coloring ? function : null);
+			return true;
+		case R.id.reset:
+			zPlane.reset();
+			wPlane.reset();
+			return true;
+		case R.id.clear:
+			zPlane.clear();
+			wPlane.clear();
+			return true;
+		default:
+			return super.onOptionsItemSelected(item);
+		}
+	}
+
+	/** Writes the state to bundle. */
+	@Override protected final void onSaveInstanceState(Bundle bundle){
+		super.onSaveInstanceState(bundle);
+		this.zPlane.parcel("inspiracio.calculator.zplane", bundle);
+		this.wPlane.parcel("inspiracio.calculator.wplane", bundle);
+		bundle.putBoolean("inspiracio.calculator.coloring", coloring);
+	}
+
+	@Override protected final void onRestoreInstanceState(Bundle bundle){
+		super.onRestoreInstanceState(bundle);
+		this.zPlane.unparcel("inspiracio.calculator.zplane", bundle);
+		this.wPlane.unparcel("inspiracio.calculator.wplane", bundle);
+		this.coloring=bundle.getBoolean("inspiracio.calculator.coloring");
+		if(coloring)
+			zPlane.setColoring(function);
+	}
+}
@@ -0,0 +1,85 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.calculator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import cat.inspiracio.numbers.EC;
+
+/** Serialisation of EC in Android.
+ * <p>
+ * EC is plain Java, so that the numbers and the parser run on any JVM.
+ * This adapter carries an EC through a Parcel, in the format that
+ * EC itself used to write. */
+final class ParcelableEC implements Parcelable{
+
+	//State -----------------------------------------------------------------
+
+	private final EC c;
+
+	//Constructors ----------------------------------------------------------
+
+	ParcelableEC(EC c){this.c=c;}
+
+	//Accessors -------------------------------------------------------------
+
+	EC get(){return c;}
+
+	/** Wraps every number. */
+	static ArrayList<ParcelableEC> wrap(Collection<EC> cs){
+		ArrayList<ParcelableEC> ps=new ArrayList<ParcelableEC>(cs.size());
+		for(EC c : cs)
+			ps.add(new ParcelableEC(c));
+		return ps;
+	}
+
+	/** Unwraps every number.
+	 * @param ps May be null. */
+	static List<EC> unwrap(List<ParcelableEC> ps){
+		List<EC> cs=new ArrayList<EC>();
+		if(ps!=null)
+			for(ParcelableEC p : ps)
+				cs.add(p.c);
+		return cs;
+	}
+
+	//Parcelable ------------------------------------------------------------
+
+	@Override public int describeContents(){return 0;}
+
+	@Override public void writeToParcel(Parcel p, int flags){
+		p.writeBooleanArray(new boolean[]{c.isFinite()});
+		p.writeDouble(c.re());
+		p.writeDouble(c.im());
+	}
+
+	public static final Parcelable.Creator<ParcelableEC> CREATOR=new Parcelable.Creator<ParcelableEC>(){
+		@Override public ParcelableEC[] newArray(int size){return new ParcelableEC[size];}
+		@Override public ParcelableEC createFromParcel(Parcel p){
+			boolean[] bs=new boolean[1];
+			p.readBooleanArray(bs);
+			double r=p.readDouble();
+			double i=p.readDouble();
+			return new ParcelableEC(bs[0] ? EC.mkCartesian(r, i) : EC.INFINITY);
+		}
+	};
+}
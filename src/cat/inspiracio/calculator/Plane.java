@@ -23,14 +23,17 @@ import static cat.inspiracio.calculator.Polygon.Direction.SOUTH;
 import static cat.inspiracio.calculator.Polygon.Direction.WEST;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
 
 import cat.inspiracio.numbers.Circle;
+import cat.inspiracio.numbers.ComplexFunction;
 import cat.inspiracio.numbers.EC;
-import cat.inspiracio.numbers.ECList;
+import cat.inspiracio.numbers.ECTree;
 import cat.inspiracio.numbers.Line;
 import cat.inspiracio.numbers.Piclet;
+import cat.inspiracio.numbers.Polyline;
 import cat.inspiracio.numbers.Rectangle;
 import cat.inspiracio.view.DragEvent;
 import cat.inspiracio.view.MouseEvent;
@@ -39,15 +42,22 @@ import cat.inspiracio.view.TouchDispatcher;
 import cat.inspiracio.view.ZoomEvent;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.os.Bundle;
 import android.util.AttributeSet;
 
-/** The complex plane */
-final class Plane extends WorldRepresentation{
+/** The complex plane.
+ * <p>
+ * In the calculator, a tap adds a number and a drag moves the plane.
+ * Subclasses change that by overriding onPlaneClick, onPlaneDrag and
+ * onPlaneRelease. */
+class Plane extends WorldRepresentation{
 
 	/** Pixel distance between the axis tips and the border of the view. */
     private static int AXISSPACE=30;//30
@@ -63,6 +73,15 @@ final class Plane extends WorldRepresentation{
     
     /** Length of the we marks on the axes. */
     private static int MARKLENGTH=4;//2
+
+    /** A tap this many pixels from a number selects it. */
+    private static final int TOUCH=24;
+
+    /** Numbers closer than this many pixels are drawn as one cluster. */
+    private static final int CLUSTER=16;
+
+    /** Approximate pixel width of the label of a number. */
+    private static final int LABELWIDTH=200;
     
     /** Initial scale factor */
     private static final double SCALEFACTOR_INITIAL=80;//40
@@ -86,8 +105,47 @@ final class Plane extends WorldRepresentation{
     private double maxReal=Double.NaN;
     private double minReal=Double.NaN;
 
-    /** The numbers that are currently displayed. */
-    private Set<EC>numbers=new HashSet<EC>();
+    /** The numbers that are currently displayed, in a quadtree,
+     * so that drawing and tapping look only at the ones near. */
+    private final ECTree numbers=new ECTree();
+
+    /** For culling, without allocating in onDraw. */
+    private final Rect clip=new Rect();
+
+    /** The value of the expression that is being typed, or null. */
+    private EC preview;
+
+    /** The function whose domain colouring is under the axes, or null. */
+    private ComplexFunction coloringFunction;
+
+    /** Renders the colouring. Made when first needed. */
+    private Coloring coloring;
+
+    /** The tiles of the colouring that are drawn, in the order they arrived.
+     * Tiles of an older render stay, maybe stretched, until the newest render
+     * has replaced them. */
+    private final List<Coloring.Tile> tiles=new ArrayList<Coloring.Tile>();
+
+    /** For blitting the tiles, without allocating in onDraw. */
+    private final Paint tilePaint=new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF tileRect=new RectF();
+
+    /** The last frame without the axes: colouring and stuff. A pan blits it
+     * moved, and draws only the strips that come into view. The spare is
+     * for moving it, because a bitmap cannot be drawn onto itself. */
+    private Bitmap buffer, spare;
+    private Canvas bufferCanvas, spareCanvas;
+
+    /** Whether the buffer shows the stuff. Any invalidate() clears it,
+     * only a pan keeps it. */
+    private boolean bufferValid;
+
+    /** Where the buffer was drawn: its left and top edges and its scale. */
+    private double bufferLeftReal, bufferTopImaginary, bufferScale;
+
+    /** A region of the plane that must be drawn again in the buffer,
+     * in numbers, because tiles have arrived there. NaN if none. */
+    private double dirtyLeft=Double.NaN, dirtyTop, dirtyRight, dirtyBottom;
     
     //Constructors ------------------------------------------
 	
@@ -100,22 +158,11 @@ final class Plane extends WorldRepresentation{
 		TouchDispatcher dispatcher=new TouchDispatcher();
 		dispatcher.addTouchListener(new TouchAdapter(){
 			
-			/** Users selects a number by clicking on it. */
-			@Override public void onClick(MouseEvent e){
-				Point point=e.getPoint();
-				EC c=point2Complex(point);
-				add(c);				//Show the point on the plane.
-				calculator.add(c);	//Also need to send it to the display
-			}
+			@Override public void onClick(MouseEvent e){onPlaneClick(e.getPoint());}
 			
-			/** In calculator-mode, dragging is moving the plane. */
-			@Override public void onDrag(DragEvent e){
-				Point start=e.getStart();
-				Point end=e.getEnd();
-				int deltaX=start.x-end.x;
-				int deltaY=start.y-end.y;
-				Plane.this.shift(deltaX, deltaY);
-			}
+			@Override public void onDrag(DragEvent e){onPlaneDrag(e);}
+
+			@Override public void onRelease(MouseEvent e){onPlaneRelease();}
 
 			/** Zooming. */
 			@Override public void onZoom(ZoomEvent e){
@@ -142,6 +189,8 @@ final class Plane extends WorldRepresentation{
 		    	centerImaginary=fixNumber.im()+deltaY;
 		    	
 		    	invalidate();
+		    	recolor();
+		    	viewChanged();
 			}
 
 		});
@@ -153,9 +202,10 @@ final class Plane extends WorldRepresentation{
 	/** Draw the world. */
 	@Override protected final void onDraw(Canvas canvas){
 		//Get ready
-		this.setBackgroundColor(Color.WHITE);
 		int height=this.getHeight();
 		int width=this.getWidth();
+		if(width==0 || height==0)
+			return;
 		
 		//Create paintbrush
 		Paint paint=new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -174,6 +224,11 @@ final class Plane extends WorldRepresentation{
         bottomImaginary = centerImaginary - pix2Math(height / 2);
         leftReal = centerReal - pix2Math(width / 2);
         rightReal = centerReal + pix2Math(width / 2);
+
+        //The colouring and the stuff, from the buffer. The axes go over them.
+        this.drawBuffer(width, height, paint);
+        canvas.drawBitmap(buffer, 0, 0, null);
+        paint.setColor(Color.BLUE);
                 
         //Draws the x axis.
         double d = raiseSmooth(pix2Math(AXISMARKING));
@@ -243,12 +298,16 @@ final class Plane extends WorldRepresentation{
             }
             d5 += d;
         }
-        
-        //Draws the numbers we are currently showing
-        this.drawStuff(drawing);
 	}
 
-	@Override public final void parcel(String prefix, Bundle b){
+	/** The stuff has changed, so the buffer must be drawn again.
+	 * Panning invalidates the view without this. */
+	@Override public void invalidate(){
+		this.bufferValid=false;
+		super.invalidate();
+	}
+
+	@Override public void parcel(String prefix, Bundle b){
 		b.putDouble(prefix + ".bottomImaginary", bottomImaginary);
 		b.putDouble(prefix + ".centerImaginary", centerImaginary);
 		b.putDouble(prefix + ".centerReal", centerReal);
@@ -258,15 +317,13 @@ final class Plane extends WorldRepresentation{
 		b.putDouble(prefix + ".minImaginary", minImaginary);
 		b.putDouble(prefix + ".minReal", minReal);
 		//numbers
-		ArrayList<EC> zs=new ArrayList<EC>(numbers.size());
-		zs.addAll(numbers);
-		b.putParcelableArrayList(prefix + ".numbers", zs);
+		b.putParcelableArrayList(prefix + ".numbers", ParcelableEC.wrap(numbers));
 		b.putDouble(prefix + ".rightReal", rightReal);
 		b.putDouble(prefix + ".scaleFactor", scaleFactor);
 		b.putDouble(prefix + ".topImaginary", topImaginary);
 	}
 		
-	@Override public final void unparcel(String prefix, Bundle b){
+	@Override public void unparcel(String prefix, Bundle b){
 		bottomImaginary=b.getDouble(prefix + ".bottomImaginary");
 		centerImaginary=b.getDouble(prefix + ".centerImaginary");
 		centerReal=b.getDouble(prefix + ".centerReal");
@@ -276,16 +333,18 @@ final class Plane extends WorldRepresentation{
 		minImaginary=b.getDouble(prefix + ".minImaginary");
 		minReal=b.getDouble(prefix + ".minReal");
 		//numbers
-		ArrayList<EC>zs=b.getParcelableArrayList(prefix + ".numbers");
-		numbers.addAll(zs);
+		ArrayList<ParcelableEC>zs=b.getParcelableArrayList(prefix + ".numbers");
+		numbers.addAll(ParcelableEC.unwrap(zs));
 		rightReal=b.getDouble(prefix + ".rightReal");
 		scaleFactor=b.getDouble(prefix + ".scaleFactor");
 		topImaginary=b.getDouble(prefix + ".topImaginary");
+		this.recolor();
 	}
 		
 	/** Called when the size of the view has changed. */
 	@Override public final void onSizeChanged(int a, int b, int c, int d){
 		System.out.println("onSizeChanged " + a + " " + b + " " + c + " " + d);
+		this.recolor();
 	}
 		
 	//Business methods ----------------------------------------------
@@ -297,8 +356,16 @@ final class Plane extends WorldRepresentation{
 		this.invalidate();
 	}
 
+	/** Shows the value of the expression that is being typed. */
+	@Override final void preview(EC c){
+		if(c==null && preview==null)
+			return;
+		this.preview=c;
+		this.invalidate();
+	}
+
 	/** Clears all displayed numbers and stuff. */
-	@Override final void clear(){
+	@Override void clear(){
 		this.numbers.clear();
 		this.minReal=Double.NaN;
 		this.maxReal=Double.NaN;
@@ -314,6 +381,8 @@ final class Plane extends WorldRepresentation{
         centerImaginary=0.0D;
         this.scaleFactor=SCALEFACTOR_INITIAL;
 		this.invalidate();
+		this.recolor();
+		this.viewChanged();
     }
 
     /** Shift the image by some pixel distance. 
@@ -323,9 +392,212 @@ final class Plane extends WorldRepresentation{
     private void shift(int i, int j){
         centerImaginary -= pix2Math(j);
         centerReal += pix2Math(i);
-		this.invalidate();
+		super.invalidate();//Only moved: onDraw blits the buffer.
+		this.recolor();
+		this.viewChanged();
+    }
+
+    /** Shows the domain colouring of a function under the axes.
+     * @param f Evaluated on background threads, so it must be thread-safe.
+     * 	If null, no colouring. */
+    final void setColoring(ComplexFunction f){
+    	this.coloringFunction=f;
+    	if(f==null){
+    		if(coloring!=null)
+    			coloring.cancel();
+    		tiles.clear();
+    		invalidate();
+    		return;
+    	}
+    	if(coloring==null)
+    		coloring=new Coloring(new Coloring.Listener(){
+    			@Override public void onTile(Coloring.Tile tile){addTile(tile);}
+    			@Override public void onComplete(int generation){removeTiles(generation);}
+    		});
+    	recolor();
     }
 
+    /** Stops the threads of the colouring. Call it when the activity ends. */
+    final void stopColoring(){
+    	if(coloring!=null)
+    		coloring.shutdown();
+    	coloring=null;
+    	coloringFunction=null;
+    	tiles.clear();
+    }
+
+    //Gestures ----------------------------------------------------
+
+    /** Users selects a number by clicking on it. */
+    void onPlaneClick(Point point){
+    	EC c=point2Complex(point);
+    	EC near=numbers.nearest(c.re(), c.im(), TOUCH/scaleFactor);
+    	if(near!=null)
+    		c=near;			//Selects a number that is shown.
+    	add(c);				//Show the point on the plane.
+    	if(calculator!=null)
+    		calculator.add(c);	//Also need to send it to the display
+    }
+
+    /** In calculator-mode, dragging is moving the plane. */
+    void onPlaneDrag(DragEvent e){
+    	Point start=e.getStart();
+    	Point end=e.getEnd();
+    	int deltaX=start.x-end.x;
+    	int deltaY=start.y-end.y;
+    	shift(deltaX, deltaY);
+    }
+
+    /** The finger has left the plane. */
+    void onPlaneRelease(){}
+
+    /** The plane has been moved or zoomed. */
+    void viewChanged(){}
+
+	//Colouring ----------------------------------------------------
+
+	/** Renders the colouring for the current view, on the background threads.
+	 * Drops the old tiles that are out of view. */
+	private void recolor(){
+		int width=getWidth(), height=getHeight();
+		if(coloringFunction==null || coloring==null || width==0 || height==0)
+			return;
+		double top=centerImaginary + pix2Math(height / 2);
+		double bottom=centerImaginary - pix2Math(height / 2);
+		double left=centerReal - pix2Math(width / 2);
+		double right=centerReal + pix2Math(width / 2);
+		for(Iterator<Coloring.Tile> i=tiles.iterator(); i.hasNext();){
+			Coloring.Tile tile=i.next();
+			if(tile.right()<=left || right<=tile.left || tile.top<=bottom || top<=tile.bottom())
+				i.remove();
+		}
+		coloring.render(coloringFunction, left, top, right, bottom, 1/scaleFactor);
+	}
+
+	/** A tile has arrived. It replaces an older tile at the same place,
+	 * unless that one shows the same function more finely, as after a pan. */
+	private void addTile(Coloring.Tile tile){
+		for(ListIterator<Coloring.Tile> i=tiles.listIterator(); i.hasNext();){
+			Coloring.Tile old=i.next();
+			if(old.left==tile.left && old.top==tile.top && old.pixel==tile.pixel){
+				if(old.bitmap==tile.bitmap){
+					i.set(tile);//From the cache again, so it looks the same.
+					return;
+				}
+				if(old.function==tile.function && old.step<tile.step)
+					return;
+				i.remove();
+			}
+		}
+		tiles.add(tile);
+		dirty(tile);
+		super.invalidate();//Only the region of the tile changes.
+	}
+
+	/** A render has finished: removes the tiles of other renders. */
+	private void removeTiles(int generation){
+		boolean removed=false;
+		for(Iterator<Coloring.Tile> i=tiles.iterator(); i.hasNext();){
+			Coloring.Tile tile=i.next();
+			if(tile.generation!=generation){
+				i.remove();
+				dirty(tile);
+				removed=true;
+			}
+		}
+		if(removed)
+			super.invalidate();
+	}
+
+	/** The region of a tile must be drawn again in the buffer. */
+	private void dirty(Coloring.Tile tile){
+		if(Double.isNaN(dirtyLeft)){
+			dirtyLeft=tile.left;
+			dirtyTop=tile.top;
+			dirtyRight=tile.right();
+			dirtyBottom=tile.bottom();
+		}else{
+			dirtyLeft=Math.min(dirtyLeft, tile.left);
+			dirtyTop=Math.max(dirtyTop, tile.top);
+			dirtyRight=Math.max(dirtyRight, tile.right());
+			dirtyBottom=Math.min(dirtyBottom, tile.bottom());
+		}
+	}
+
+	/** Blits the tiles that are in view. Only blits, so that panning and
+	 * zooming stay fast while the new tiles are rendered. */
+	private void drawTiles(Canvas canvas){
+		for(Coloring.Tile tile : tiles){
+			if(tile.right()<=leftReal || rightReal<=tile.left || tile.top<=bottomImaginary || topImaginary<=tile.bottom())
+				continue;
+			tileRect.set(
+					(float)((tile.left - leftReal) * scaleFactor),
+					(float)((topImaginary - tile.top) * scaleFactor),
+					(float)((tile.right() - leftReal) * scaleFactor),
+					(float)((topImaginary - tile.bottom()) * scaleFactor));
+			canvas.drawBitmap(tile.bitmap, null, tileRect, tilePaint);
+		}
+	}
+
+	//Buffer --------------------------------------------------------
+
+	/** Brings the buffer up to date with the view. After a pan, moves the
+	 * old frame and draws only the strips that have come into view, and the
+	 * regions where tiles have arrived. Else draws it all. */
+	private void drawBuffer(int width, int height, Paint paint){
+		if(buffer==null || buffer.getWidth()!=width || buffer.getHeight()!=height){
+			buffer=Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+			spare=Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+			bufferCanvas=new Canvas(buffer);
+			spareCanvas=new Canvas(spare);
+			bufferValid=false;
+		}
+		int dx=(int)Math.round((bufferLeftReal - leftReal) * scaleFactor);
+		int dy=(int)Math.round((topImaginary - bufferTopImaginary) * scaleFactor);
+		if(!bufferValid || bufferScale!=scaleFactor || width<=Math.abs(dx) || height<=Math.abs(dy))
+			redraw(0, 0, width, height, paint);
+		else{
+			if(dx!=0 || dy!=0){
+				spareCanvas.drawBitmap(buffer, dx, dy, null);
+				Bitmap b=buffer; buffer=spare; spare=b;
+				Canvas c=bufferCanvas; bufferCanvas=spareCanvas; spareCanvas=c;
+				if(0<dx)
+					redraw(0, 0, dx, height, paint);
+				else if(dx<0)
+					redraw(width+dx, 0, width, height, paint);
+				if(0<dy)
+					redraw(0, 0, width, dy, paint);
+				else if(dy<0)
+					redraw(0, height+dy, width, height, paint);
+			}
+			if(!Double.isNaN(dirtyLeft)){
+				int left=(int)Math.max(0, Math.floor((dirtyLeft - leftReal) * scaleFactor));
+				int top=(int)Math.max(0, Math.floor((topImaginary - dirtyTop) * scaleFactor));
+				int right=(int)Math.min(width, Math.ceil((dirtyRight - leftReal) * scaleFactor));
+				int bottom=(int)Math.min(height, Math.ceil((topImaginary - dirtyBottom) * scaleFactor));
+				if(left<right && top<bottom)
+					redraw(left, top, right, bottom, paint);
+			}
+		}
+		dirtyLeft=Double.NaN;
+		bufferLeftReal=leftReal;
+		bufferTopImaginary=topImaginary;
+		bufferScale=scaleFactor;
+		bufferValid=true;
+	}
+
+	/** Draws a rectangle of the buffer again: white, the tiles, and the stuff.
+	 * Only the parts of them in the rectangle change. */
+	private void redraw(int left, int top, int right, int bottom, Paint paint){
+		bufferCanvas.save();
+		bufferCanvas.clipRect(left, top, right, bottom);
+		bufferCanvas.drawColor(Color.WHITE);
+		paint.setColor(Color.BLUE);
+		this.drawTiles(bufferCanvas);
+		this.drawStuff(new Drawing(bufferCanvas, paint));
+		bufferCanvas.restore();
+	}
+
 	//Converters ----------------------------------------------------
 	
 	/** Converts a complex number in Cartesian coordinates to a point on the plane. 
@@ -338,7 +610,7 @@ final class Plane extends WorldRepresentation{
     }
 
     /** Converts a point to a number. */
-	private EC point2Complex(Point point){
+	EC point2Complex(Point point){
 		double re=leftReal + (double)point.x / scaleFactor;
 		double im=topImaginary - (double)point.y / scaleFactor;
         return EC.mkCartesian(re, im);
@@ -354,13 +626,16 @@ final class Plane extends WorldRepresentation{
         return (int)(d * scaleFactor);
     }
 
+    /** The mathematical distance 1 is how many pixels? */
+    double getScale(){return scaleFactor;}
+
     /** Real to pixel x-value. */
-    private int real2Pix(double d){
+    int real2Pix(double d){
         return (int)((d - leftReal) * scaleFactor);
     }
 
     /** Imaginary to pixel y-value. */
-    private int imag2Pix(double d){
+    int imag2Pix(double d){
         return (int)((topImaginary - d) * scaleFactor);
     }
 
@@ -402,13 +677,30 @@ final class Plane extends WorldRepresentation{
         }
     }
 
-    /** Draws a list of numbers. */
-    private void drawECList(Drawing drawing, ECList eclist){
-        if(eclist != null){
-            moveTo(drawing, eclist.head());
-            lineTo(drawing, eclist.head());
-            for(eclist = eclist.tail(); eclist != null; eclist = eclist.tail())
-                lineTo(drawing, eclist.head());
+    /** Draws some numbers close together as a dot, labelled with how many. */
+    private void drawCluster(Drawing drawing, double re, double im, int count){
+    	int x=this.real2Pix(re);
+    	int y=this.imag2Pix(im);
+    	drawing.drawCircle(x, y, MARKLENGTH);
+    	drawing.moveTo(x, y);
+    	drawing.move(MARKLENGTH, MARKLENGTH);
+    	drawing.draw(String.valueOf(count));
+    }
+
+    /** Draws a line through numbers. Infinity is a gap in the line. */
+    void drawPolyline(Drawing drawing, Polyline polyline){
+        boolean down=false;
+        for(int i = 0; i < polyline.size(); i++){
+            if(!polyline.isFinite(i)){
+                down=false;
+                continue;
+            }
+            int x=real2Pix(polyline.re(i));
+            int y=imag2Pix(polyline.im(i));
+            if(!down)
+                drawing.moveTo(x, y);
+            drawing.lineTo(x, y);
+            down=true;
         }
     }
 
@@ -437,15 +729,28 @@ final class Plane extends WorldRepresentation{
             lineTo(drawing, rectangle.botLeft);
             return;
         } else{
-            drawECList(drawing, piclet.getSamples());
+            drawPolyline(drawing, piclet.getSamples());
             return;
         }
     }
 
     /** Draws the stuff that the plane should show: just the current numbers. */
-    @Override void drawStuff(Drawing drawing){
-        for(EC c : this.numbers)
-            this.drawComplex(drawing, c);
+    @Override void drawStuff(final Drawing drawing){
+        //Only the numbers whose cross or label may show.
+        drawing.getClipBounds(clip);
+        double left=leftReal + (clip.left - LABELWIDTH)/scaleFactor;
+        double right=leftReal + (clip.right + MARKLENGTH)/scaleFactor;
+        double top=topImaginary - (clip.top - MARKLENGTH)/scaleFactor;
+        double bottom=topImaginary - (clip.bottom + FONTHEIGHT + MARKLENGTH)/scaleFactor;
+        numbers.visit(left, bottom, right, top, CLUSTER/scaleFactor, new ECTree.Visitor(){
+        	@Override public void number(EC c){drawComplex(drawing, c);}
+        	@Override public void cluster(double re, double im, int count){drawCluster(drawing, re, im, count);}
+        });
+        if(preview!=null){
+        	int old=drawing.color(Color.GRAY);
+        	this.drawComplex(drawing, preview);
+        	drawing.color(old);
+        }
     }
 
     /** Draws a line to a number. */
@@ -0,0 +1,132 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.calculator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import android.graphics.Bitmap;
+import cat.inspiracio.numbers.ComplexFunction;
+
+/** The finished tiles of the domain colouring, bounded by memory.
+ * <p>
+ * A tile is known by the function, the zoom level, and its column and row
+ * in the grid of that level. When the bitmaps take more than the budget,
+ * the cache evicts the tiles that have been used least recently.
+ * <p>
+ * Only for the UI thread. */
+final class TileCache{
+
+	/** The key of a tile. The function is compared by identity. */
+	static final class Key{
+
+		final ComplexFunction function;
+		final int level;
+		final int x, y;
+
+		Key(ComplexFunction function, int level, int x, int y){
+			this.function=function;
+			this.level=level;
+			this.x=x;
+			this.y=y;
+		}
+
+		@Override public boolean equals(Object o){
+			if(!(o instanceof Key))
+				return false;
+			Key k=(Key)o;
+			return function==k.function && level==k.level && x==k.x && y==k.y;
+		}
+
+		@Override public int hashCode(){
+			int h=System.identityHashCode(function);
+			h=31*h + level;
+			h=31*h + x;
+			return 31*h + y;
+		}
+	}
+
+	//State -----------------------------------------------------------------
+
+	/** In access order, so that the eldest is used least recently. */
+	private final LinkedHashMap<Key, Bitmap> tiles=new LinkedHashMap<Key, Bitmap>(64, 0.75f, true);
+
+	/** Most bytes of bitmaps to keep. */
+	private final long budget;
+
+	/** Bytes of the bitmaps now kept. */
+	private long bytes;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	//Constructors ----------------------------------------------------------
+
+	/** @param budget Most bytes of bitmaps to keep. */
+	TileCache(long budget){
+		this.budget=budget;
+	}
+
+	//Methods ---------------------------------------------------------------
+
+	/** The bitmap of a tile, or null if it is not cached. */
+	Bitmap get(Key key){
+		Bitmap bitmap=tiles.get(key);
+		if(bitmap==null)
+			misses++;
+		else
+			hits++;
+		return bitmap;
+	}
+
+	/** Keeps a finished tile, evicting others if the budget needs it. */
+	void put(Key key, Bitmap bitmap){
+		Bitmap old=tiles.put(key, bitmap);
+		if(old!=null)
+			bytes-=size(old);
+		bytes+=size(bitmap);
+		Iterator<Bitmap> i=tiles.values().iterator();
+		while(budget<bytes && i.hasNext()){
+			Bitmap eldest=i.next();
+			if(eldest==bitmap)
+				break;//Keep the newest, even if it alone is over budget.
+			i.remove();
+			bytes-=size(eldest);
+			evictions++;
+		}
+	}
+
+	/** Removes all tiles. The statistics stay. */
+	void clear(){
+		tiles.clear();
+		bytes=0;
+	}
+
+	int size(){return tiles.size();}
+
+	@Override public String toString(){
+		return "TileCache[size=" + tiles.size() + ", bytes=" + bytes + "/" + budget + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	private static long size(Bitmap bitmap){
+		return (long)bitmap.getRowBytes() * bitmap.getHeight();
+	}
+}
@@ -0,0 +1,97 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.calculator;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.os.Bundle;
+import android.util.AttributeSet;
+import cat.inspiracio.numbers.Polyline;
+
+/** The w-plane of the mapping mode, where the images of the shapes are.
+ * <p>
+ * Dragging moves it and pinching zooms it. The images are sampled for the
+ * scale of this plane, so after a zoom they are mapped again. */
+final class WPlane extends Plane{
+
+	//State -----------------------------------------------------------------
+
+	/** The images of the shapes, by the id of the shape. */
+	private final Map<Integer, Polyline> images=new TreeMap<Integer, Polyline>();
+
+	private Mapper mapper;
+
+	//Constructors ----------------------------------------------------------
+
+	/** Constructor for inflation */
+	public WPlane(Context ctx, AttributeSet ats){
+		super(ctx, ats);
+	}
+
+	//Accessors -------------------------------------------------------------
+
+	/** Also tells the mapper the scale. */
+	void setMapper(Mapper mapper){
+		this.mapper=mapper;
+		mapper.setScale(getScale());
+	}
+
+	//Business methods ------------------------------------------------------
+
+	/** Some shapes have new images. */
+	void setImages(Map<Integer, Polyline> images){
+		this.images.putAll(images);
+		invalidate();
+	}
+
+	/** Clears the images too. */
+	@Override final void clear(){
+		images.clear();
+		super.clear();
+	}
+
+	/** Draws the images, in the colours of their shapes. */
+	@Override void drawStuff(Drawing drawing){
+		super.drawStuff(drawing);
+		for(Map.Entry<Integer, Polyline> image : images.entrySet()){
+			int old=drawing.color(ZPlane.color(image.getKey()));
+			drawPolyline(drawing, image.getValue());
+			drawing.color(old);
+		}
+	}
+
+	/** Tells the mapper the restored scale. */
+	@Override public void unparcel(String prefix, Bundle b){
+		super.unparcel(prefix, b);
+		viewChanged();
+	}
+
+	//Gestures --------------------------------------------------------------
+
+	/** Taps do nothing here. */
+	@Override void onPlaneClick(Point point){}
+
+	/** The images depend on the scale. */
+	@Override void viewChanged(){
+		if(mapper!=null)
+			mapper.setScale(getScale());
+	}
+}
@@ -51,6 +51,11 @@ abstract class WorldRepresentation extends View{
 
 	/** Adds a number to be displayed in the world. */
 	abstract void add(EC c);
+
+	/** Shows the value of the expression that is being typed,
+	 * until the next preview.
+	 * @param c The value, or null to show none. */
+	abstract void preview(EC c);
 	
 	/** Clears all displayed numbers and stuff. */
 	abstract void clear();
@@ -0,0 +1,280 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Point;
+import android.os.Bundle;
+import android.util.AttributeSet;
+import cat.inspiracio.numbers.Circle;
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.Freeline;
+import cat.inspiracio.numbers.Line;
+import cat.inspiracio.numbers.Piclet;
+import cat.inspiracio.numbers.Polyline;
+import cat.inspiracio.numbers.Rectangle;
+import cat.inspiracio.numbers.Square;
+import cat.inspiracio.view.DragEvent;
+
+/** The z-plane of the mapping mode, where the user draws shapes.
+ * <p>
+ * A drag that starts on a shape moves it. Any other drag draws a new shape
+ * with the tool, or moves the plane if the tool is PAN. Every change of a
+ * shape goes to the mapper, which maps it to the w-plane. */
+final class ZPlane extends Plane{
+
+	/** What a drag on the empty plane does. */
+	static enum Tool{LINE, CIRCLE, RECTANGLE, SQUARE, FREELINE, PAN}
+
+	/** A drag that starts this many pixels from a shape moves it. */
+	private static final int TOUCH=24;
+
+	/** The colours of the shapes, and of their images. */
+	private static final int[] COLORS={Color.BLUE, Color.RED, 0xFF008000, Color.MAGENTA, 0xFFFF8000, Color.CYAN, Color.DKGRAY};
+
+	//State -----------------------------------------------------------------
+
+	private Tool tool=Tool.LINE;
+
+	/** The shapes, in the order drawn. */
+	private final List<Shape> shapes=new ArrayList<Shape>();
+
+	private int nextId;
+
+	/** The shape being drawn or moved by the current drag, or null. */
+	private Shape current;
+
+	/** Whether the current drag moves a shape, rather than drawing it. */
+	private boolean moving;
+
+	private Mapper mapper;
+
+	//Constructors ----------------------------------------------------------
+
+	/** Constructor for inflation */
+	public ZPlane(Context ctx, AttributeSet ats){
+		super(ctx, ats);
+	}
+
+	//Accessors -------------------------------------------------------------
+
+	void setMapper(Mapper mapper){this.mapper=mapper;}
+
+	Tool getTool(){return tool;}
+	void setTool(Tool tool){this.tool=tool;}
+
+	/** The colour of the shape with this id, and of its image. */
+	static int color(int id){return COLORS[id % COLORS.length];}
+
+	//Business methods ------------------------------------------------------
+
+	/** Clears the shapes too. */
+	@Override final void clear(){
+		shapes.clear();
+		current=null;
+		if(mapper!=null)
+			mapper.clear();
+		super.clear();
+	}
+
+	/** Draws the shapes, in their colours. */
+	@Override void drawStuff(Drawing drawing){
+		super.drawStuff(drawing);
+		for(Shape shape : shapes){
+			int old=drawing.color(color(shape.id));
+			drawPolyline(drawing, shape.piclet.getSamples());
+			drawing.color(old);
+		}
+	}
+
+	//Gestures --------------------------------------------------------------
+
+	/** Taps do nothing here. */
+	@Override void onPlaneClick(Point point){}
+
+	@Override void onPlaneDrag(DragEvent e){
+		if(current==null && tool==Tool.PAN){
+			super.onPlaneDrag(e);
+			return;
+		}
+		Point start=e.getStart();
+		if(current==null){
+			current=hit(start);
+			moving= current!=null;
+			if(!moving){
+				current=new Shape(nextId++, tool, point2Complex(start));
+				shapes.add(current);
+			}
+		}
+		if(moving){
+			EC a=point2Complex(start);
+			EC b=point2Complex(e.getEnd());
+			current.translate(b.re()-a.re(), b.im()-a.im());
+		}else if(current.tool==Tool.FREELINE){
+			List<Point> points=e.getPoints();
+			for(int i=1; i<points.size(); i++)//The first is the last of the drag before.
+				current.free.add(point2Complex(points.get(i)));
+		}else
+			current.b=point2Complex(e.getEnd());
+		changed(current);
+	}
+
+	@Override void onPlaneRelease(){current=null;}
+
+	//Parcel ----------------------------------------------------------------
+
+	@Override public void parcel(String prefix, Bundle b){
+		super.parcel(prefix, b);
+		int n=shapes.size();
+		int[] tools=new int[n];
+		double[] points=new double[4*n];
+		for(int i=0; i<n; i++){
+			Shape shape=shapes.get(i);
+			tools[i]=shape.tool.ordinal();
+			if(shape.tool==Tool.FREELINE){
+				b.putDoubleArray(prefix + ".free" + i + ".re", shape.free.toRe());
+				b.putDoubleArray(prefix + ".free" + i + ".im", shape.free.toIm());
+			}else{
+				points[4*i]=shape.a.re();
+				points[4*i+1]=shape.a.im();
+				points[4*i+2]=shape.b.re();
+				points[4*i+3]=shape.b.im();
+			}
+		}
+		b.putIntArray(prefix + ".tools", tools);
+		b.putDoubleArray(prefix + ".points", points);
+		b.putInt(prefix + ".tool", tool.ordinal());
+	}
+
+	@Override public void unparcel(String prefix, Bundle b){
+		super.unparcel(prefix, b);
+		int[] tools=b.getIntArray(prefix + ".tools");
+		double[] points=b.getDoubleArray(prefix + ".points");
+		tool=Tool.values()[b.getInt(prefix + ".tool")];
+		if(tools==null)
+			return;
+		for(int i=0; i<tools.length; i++){
+			Shape shape=new Shape(nextId++, Tool.values()[tools[i]], EC.mkCartesian(points[4*i], points[4*i+1]));
+			if(shape.tool==Tool.FREELINE){
+				double[] re=b.getDoubleArray(prefix + ".free" + i + ".re");
+				double[] im=b.getDoubleArray(prefix + ".free" + i + ".im");
+				shape.free.clear();
+				for(int j=0; j<re.length; j++)
+					shape.free.add(re[j], im[j]);
+			}else
+				shape.b=EC.mkCartesian(points[4*i+2], points[4*i+3]);
+			shapes.add(shape);
+			changed(shape);
+		}
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** Makes the piclet of a changed shape, and sends it to the mapper. */
+	private void changed(Shape shape){
+		shape.make();
+		if(mapper!=null)
+			mapper.put(shape.id, shape.piclet);
+		invalidate();
+	}
+
+	/** The topmost shape near a point, or null. */
+	private Shape hit(Point point){
+		for(int i=shapes.size()-1; 0<=i; i--){
+			Polyline samples=shapes.get(i).piclet.getSamples();
+			for(int j=0; j<samples.size(); j++){
+				if(!samples.isFinite(j))
+					continue;
+				int x=real2Pix(samples.re(j)), y=imag2Pix(samples.im(j));
+				int x1=x, y1=y;
+				if(j+1<samples.size() && samples.isFinite(j+1)){
+					x1=real2Pix(samples.re(j+1));
+					y1=imag2Pix(samples.im(j+1));
+				}
+				if(distance(point.x, point.y, x, y, x1, y1)<=TOUCH)
+					return shapes.get(i);
+			}
+		}
+		return null;
+	}
+
+	/** Distance in pixels from (x,y) to the segment from (ax,ay) to (bx,by). */
+	private static double distance(int x, int y, int ax, int ay, int bx, int by){
+		double dx=bx-ax, dy=by-ay;
+		double l=dx*dx + dy*dy;
+		double u= l==0 ? 0 : Math.max(0, Math.min(1, ((x-ax)*dx + (y-ay)*dy) / l));
+		double ex=ax + u*dx - x, ey=ay + u*dy - y;
+		return Math.sqrt(ex*ex + ey*ey);
+	}
+
+	/** A shape that the user has drawn: what the tool makes from two
+	 * points, or a free line. */
+	private static final class Shape{
+
+		final int id;
+		final Tool tool;
+
+		/** Where the drag started, and where it is now. */
+		EC a, b;
+
+		/** The points of a free line. */
+		Polyline free;
+
+		/** Made from the points. The mapper may read it on its thread,
+		 * so it is never changed, only replaced. */
+		Piclet piclet;
+
+		Shape(int id, Tool tool, EC a){
+			this.id=id;
+			this.tool=tool;
+			this.a=a;
+			this.b=a;
+			if(tool==Tool.FREELINE){
+				free=new Polyline();
+				free.add(a);
+			}
+		}
+
+		void translate(double dx, double dy){
+			a=EC.mkCartesian(a.re()+dx, a.im()+dy);
+			b=EC.mkCartesian(b.re()+dx, b.im()+dy);
+			if(free!=null){
+				Polyline moved=new Polyline(free.size());
+				for(int i=0; i<free.size(); i++)
+					moved.add(free.re(i)+dx, free.im(i)+dy);
+				free=moved;
+			}
+		}
+
+		/** Makes the piclet, and samples it here on the UI thread. */
+		void make(){
+			switch(tool){
+			case LINE: piclet=new Line(a, b); break;
+			case CIRCLE: piclet=new Circle(a, b); break;
+			case RECTANGLE: piclet=new Rectangle(a, b); break;
+			case SQUARE: piclet=new Square(a, b); break;
+			default: piclet=new Freeline(new Polyline(free));//A copy, because free keeps growing.
+			}
+			piclet.getSamples();
+		}
+	}
+}
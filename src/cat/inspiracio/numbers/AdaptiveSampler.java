@@ -0,0 +1,240 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import java.util.Arrays;
+
+/** Samples the image of a piclet under a complex function, with more
+ * points where the image bends and fewer where it is straight.
+ * <p>
+ * It starts with a few points evenly along the piclet, and halves every
+ * segment whose image is further than the tolerance from a straight line,
+ * measured in pixels. All the midpoints of a round are evaluated in one
+ * call of the function. It stops at a depth, or at a number of points.
+ * <p>
+ * Where the image jumps, near a pole or across a branch cut, halving does
+ * not make the image shorter. There the result has infinity, as a gap
+ * in the curve. Points where the function is infinite or undefined are
+ * gaps too.
+ * <p>
+ * While the argument is continuous, the result depends on the order of
+ * evaluation, so then it maps the samples of the piclet in order. */
+public final class AdaptiveSampler{
+
+	/** How many segments the first round has. */
+	static final int START=16;
+
+	/** Default distance of the image from its chords, in pixels. */
+	public static final double TOLERANCE=0.5;
+
+	/** Default for how many times a segment may be halved. */
+	public static final int DEPTH=10;
+
+	/** Default for how many points at most. */
+	public static final int POINTS=4096;
+
+	/** A segment is a jump if its image is longer than this many pixels, */
+	static final double JUMP=16;
+
+	/** and if the image of one half has more than this fraction of its length,
+	 * until the end. */
+	static final double JUMP_RATIO=0.75;
+
+	//State -----------------------------------------------------------------
+
+	private final ComplexFunction f;
+	private final double scale;
+	private final double tolerance;
+	private final int depth;
+	private final int points;
+
+	//The points of the piclet being sampled, in the order made,
+	//linked in the order of t.
+	private int n;
+	private double[] t, x, y;
+	private int[] next;
+
+	/** Segment from point i to next[i] looks like a jump. */
+	private boolean[] jumpy;
+
+	//Constructors ----------------------------------------------------------
+
+	/** @param scale Pixels per unit. */
+	public AdaptiveSampler(ComplexFunction f, double scale){this(f, scale, TOLERANCE, DEPTH, POINTS);}
+
+	/** @param scale Pixels per unit.
+	 * @param tolerance Distance of the image from its chords, in pixels.
+	 * @param depth How many times a segment may be halved.
+	 * @param points How many points at most, at least START+1. */
+	public AdaptiveSampler(ComplexFunction f, double scale, double tolerance, int depth, int points){
+		if(!(0<scale) || !(0<tolerance) || depth<0 || points<START+1)
+			throw new IllegalArgumentException();
+		this.f=f;
+		this.scale=scale;
+		this.tolerance=tolerance;
+		this.depth=depth;
+		this.points=points;
+	}
+
+	//Methods ---------------------------------------------------------------
+
+	/** Samples the image of a piclet.
+	 * @return The image, with infinity for gaps. Not thread-safe. */
+	public Polyline sample(Piclet piclet)throws BugException{
+		if(EC.isArgContinuous()){
+			EC.resetArg();
+			return piclet.getSamples().map(f);
+		}
+
+		n=0;
+		int capacity=START*4;
+		t=new double[capacity];
+		x=new double[capacity];
+		y=new double[capacity];
+		next=new int[capacity];
+		jumpy=new boolean[capacity];
+
+		//First round: evenly.
+		for(int i=0; i<=START; i++){
+			t[i]=(double)i/START;
+			next[i]=i+1;
+		}
+		next[START]=-1;
+		evaluate(piclet, 0, START+1);
+		n=START+1;
+
+		int[] active=new int[START];
+		for(int i=0; i<START; i++)
+			active[i]=i;
+		int m=START;
+
+		for(int d=0; d<depth && 0<m; d++){
+			//Halve as many as there are points left for.
+			int k=Math.min(m, points-n);
+			if(k<=0)
+				break;
+			ensure(n+k);
+
+			//The midpoints of the active segments, in one call.
+			for(int j=0; j<k; j++){
+				int a=active[j];
+				t[n+j]=(t[a] + t[next[a]]) / 2;
+			}
+			evaluate(piclet, n, k);
+
+			int[] halves=new int[2*m];
+			int h=0;
+			for(int j=0; j<k; j++){
+				int a=active[j];
+				int b=next[a];
+				int c=n+j;
+				next[c]=b;
+				next[a]=c;
+				double ab=chord(a, b), ac=chord(a, c), cb=chord(c, b);
+				jumpy[a]= JUMP<ab && ac>=cb && ac>JUMP_RATIO*ab;
+				jumpy[c]= JUMP<ab && cb>ac && cb>JUMP_RATIO*ab;
+				//A jump may be straight.
+				if(bent(a, c, b) || jumpy[a] || jumpy[c]){
+					halves[h++]=a;
+					halves[h++]=c;
+				}
+			}
+			for(int j=k; j<m; j++)
+				halves[h++]=active[j];
+			n+=k;
+			active=halves;
+			m=h;
+		}
+
+		//What remains active has not become straight.
+		boolean[] gap=new boolean[n];
+		for(int j=0; j<m; j++){
+			int a=active[j];
+			gap[a]=jumpy[a];
+		}
+
+		//Gaps only between points.
+		Polyline image=new Polyline(n);
+		boolean open=false;
+		for(int i=0; i!=-1; i=next[i]){
+			if(!defined(i)){
+				open=true;
+				continue;
+			}
+			if(open && 0<image.size())
+				image.addInfinity();
+			image.add(x[i], y[i]);
+			open=gap[i];
+		}
+		return image;
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** Evaluates f at the points of the piclet for the m parameters from index i. */
+	private void evaluate(Piclet piclet, int i, int m)throws BugException{
+		double[] re=new double[m];
+		double[] im=new double[m];
+		for(int j=0; j<m; j++){
+			EC z=piclet.at(t[i+j]);
+			re[j]=z.re();
+			im[j]=z.im();
+		}
+		f.evaluate(re, im, re, im, m);
+		System.arraycopy(re, 0, x, i, m);
+		System.arraycopy(im, 0, y, i, m);
+	}
+
+	/** Is the image of point i finite and defined? */
+	private boolean defined(int i){
+		double re=x[i], im=y[i];
+		return !Double.isNaN(re) && !Double.isNaN(im) && !Double.isInfinite(re) && !Double.isInfinite(im);
+	}
+
+	/** Is the image of c further than the tolerance from the chord of a and b? */
+	private boolean bent(int a, int c, int b){
+		boolean da=defined(a), db=defined(b), dc=defined(c);
+		if(!da || !db || !dc)
+			return da || db || dc;//Find where it stops being defined.
+		double dx=x[b] - x[a], dy=y[b] - y[a];
+		double l=dx*dx + dy*dy;
+		double u= l==0 ? 0 : Math.max(0, Math.min(1, ((x[c] - x[a])*dx + (y[c] - y[a])*dy) / l));
+		return scale*distance(x[a] + u*dx - x[c], y[a] + u*dy - y[c]) > tolerance;
+	}
+
+	/** Length of the image of a segment, in pixels, or infinite. */
+	private double chord(int a, int b){
+		if(!defined(a) || !defined(b))
+			return Double.POSITIVE_INFINITY;
+		return scale*distance(x[b] - x[a], y[b] - y[a]);
+	}
+
+	/** Math.hypot is careful, and slow. */
+	private static double distance(double dx, double dy){return Math.sqrt(dx*dx + dy*dy);}
+
+	private void ensure(int capacity){
+		if(capacity<=t.length)
+			return;
+		capacity=Math.max(capacity, t.length*2);
+		t=Arrays.copyOf(t, capacity);
+		x=Arrays.copyOf(x, capacity);
+		y=Arrays.copyOf(y, capacity);
+		next=Arrays.copyOf(next, capacity);
+		jumpy=Arrays.copyOf(jumpy, capacity);
+	}
+}
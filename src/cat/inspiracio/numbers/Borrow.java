@@ -129,6 +129,32 @@ class Borrow
         return ad;
     }
 
+    /** Like div(double, double, double, double), but writes the quotient
+     * into re[k] and im[k] instead of allocating an array. */
+    public static void div(double d, double d1, double d2, double d3, double re[], double im[], int k)
+    {
+        double d4 = Math.abs(d2);
+        double d5 = Math.abs(d3);
+        double d6;
+        double d7;
+        double d10;
+        if(d4 <= d5)
+        {
+            double d8 = d2 / d3;
+            d10 = d3 * (1.0D + d8 * d8);
+            d6 = d * d8 + d1;
+            d7 = d1 * d8 - d;
+        } else
+        {
+            double d9 = d3 / d2;
+            d10 = d2 * (1.0D + d9 * d9);
+            d6 = d + d1 * d9;
+            d7 = d1 - d * d9;
+        }
+        re[k] = d6 / d10;
+        im[k] = d7 / d10;
+    }
+
     Borrow()
     {
     }
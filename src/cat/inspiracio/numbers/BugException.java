@@ -20,6 +20,7 @@ package cat.inspiracio.numbers;
 import cat.inspiracio.say.SayException;
 
 public class BugException extends SayException {
+	private static final long serialVersionUID=1L;
 	
     public BugException(String s){
         super(s);
@@ -19,7 +19,7 @@ package cat.inspiracio.numbers;
 
 
 // Referenced classes of package bunkenba.numbers:
-//            Piclet, EC, ECList, PartialException
+//            Piclet, EC, Polyline, PartialException
 
 public final class Circle extends Piclet{
 
@@ -71,12 +71,21 @@ public final class Circle extends Piclet{
         return center.re() + radius;
     }
 
+    /** Goes round once, anticlockwise from the right. */
+    public EC at(double t){
+        try{
+            return center.add(EC.mkPolar(radius, 2D * Math.PI * t));
+        }catch(PartialException _ex){
+            return EC.INFINITY;
+        }
+    }
+
     protected void sample(){
         double d = 0.20943951023931953D;
         double d1 = 0.0D;
         for(int i = 0; i <= 30; i++){
             try{
-                super.samples = new ECList(center.add(EC.mkPolar(radius, d1)), super.samples);
+                super.samples.add(center.add(EC.mkPolar(radius, d1)));
             }
             catch(PartialException _ex) { }
             d1 += d;
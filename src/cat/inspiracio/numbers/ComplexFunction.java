@@ -0,0 +1,37 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+/** A complex function that is evaluated for many points at once.
+ * <p>
+ * The points are given as arrays of real and imaginary parts, encoded as
+ * EC.re() and EC.im() give them: infinity is (Infinity, Infinity).
+ * Where the function is undefined, the result is (NaN, NaN). */
+public interface ComplexFunction{
+
+	/** Evaluates the function for n points.
+	 * The output arrays may be the input arrays.
+	 *
+	 * @param re Real parts of the arguments.
+	 * @param im Imaginary parts of the arguments.
+	 * @param outRe Receives the real parts of the results.
+	 * @param outIm Receives the imaginary parts of the results.
+	 * @param n How many points, from index 0. */
+	void evaluate(double[] re, double[] im, double[] outRe, double[] outIm, int n)throws BugException;
+
+}
@@ -0,0 +1,110 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+/** Domain colouring: shows a complex function by giving every point z the
+ * colour of f(z).
+ * <p>
+ * The hue is the argument of f(z): red for positive reals, then yellow,
+ * green at i, cyan for negative reals, blue, magenta. The brightness rises
+ * from one power of 2 of the modulus to the next, and then drops, so that
+ * the curves where |f(z)| is a power of 2 show as edges. Infinity is white
+ * and undefined is grey.
+ * <p>
+ * The colours are ARGB ints, as Android's Bitmap takes them. */
+public final class DomainColoring{
+
+	/** The colour of infinity. */
+	public static final int INFINITY=0xFFFFFFFF;
+
+	/** The colour where the function is undefined. */
+	public static final int UNDEFINED=0xFF808080;
+
+	/** Darkest brightness, just above a power of 2 of the modulus. */
+	static final double DARK=0.6;
+
+	private static final double LOG2=Math.log(2);
+
+	private DomainColoring(){}
+
+	//Methods ---------------------------------------------------------------
+
+	/** The colour of a value of f, as EC.re() and EC.im() give it. */
+	public static int color(double re, double im){
+		if(Double.isNaN(re) || Double.isNaN(im))
+			return UNDEFINED;
+		if(Double.isInfinite(re) || Double.isInfinite(im))
+			return INFINITY;
+		double hue=Math.atan2(im, re) / (2*Math.PI);
+		if(hue<0)
+			hue+=1;
+		double modulus=re*re + im*im;
+		double value=1;
+		if(0<modulus && modulus<Double.POSITIVE_INFINITY){
+			double m=Math.log(modulus) / (2*LOG2);
+			value=DARK + (1-DARK)*(m - Math.floor(m));
+		}
+		return hsv(hue, value);
+	}
+
+	/** Evaluates f at the centres of the pixels of a rectangle, and colours them.
+	 * Makes all points, evaluates them with one call of f, and then colours.
+	 * @param left Real part of the left edge.
+	 * @param top Imaginary part of the top edge.
+	 * @param pixel Width of a pixel.
+	 * @param argb Receives the colours, row by row from the top, at least width*height. */
+	public static void render(ComplexFunction f, double left, double top, double pixel, int width, int height, int[] argb)throws BugException{
+		int n=width*height;
+		double[] re=new double[n];
+		double[] im=new double[n];
+		for(int r=0, i=0; r<height; r++){
+			double y=top - (r+0.5)*pixel;
+			for(int c=0; c<width; c++, i++){
+				re[i]=left + (c+0.5)*pixel;
+				im[i]=y;
+			}
+		}
+		f.evaluate(re, im, re, im, n);
+		for(int i=0; i<n; i++)
+			argb[i]=color(re[i], im[i]);
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** Opaque colour of full saturation.
+	 * @param hue From 0 to 1, starting at red.
+	 * @param value Brightness from 0 to 1. */
+	private static int hsv(double hue, double value){
+		double h=hue*6;
+		int sector=(int)h;
+		double f=h - sector;
+		int v=(int)(value*255 + 0.5);
+		int down=(int)(value*(1-f)*255 + 0.5);
+		int up=(int)(value*f*255 + 0.5);
+		int r, g, b;
+		switch(sector){
+		case 0: r=v; g=up; b=0; break;
+		case 1: r=down; g=v; b=0; break;
+		case 2: r=0; g=v; b=up; break;
+		case 3: r=0; g=down; b=v; break;
+		case 4: r=up; g=0; b=v; break;
+		default: r=v; g=0; b=down;
+		}
+		return 0xFF000000 | r<<16 | g<<8 | b;
+	}
+}
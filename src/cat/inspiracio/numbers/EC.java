@@ -20,32 +20,27 @@ package cat.inspiracio.numbers;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
-import java.text.NumberFormat;
 
 import cat.inspiracio.parsing.SyntaxTree;
 
-import android.os.Parcel;
-import android.os.Parcelable;
-
 // Referenced classes of package bunkenba.numbers:
 //            Borrow, PartialException
 
 /** The Extended Complex numbers: that is, complex numbers and one infinity. 
  * Instances of EC are immutable. 
  * */
-public final class EC implements Parcelable{
+public final class EC{
 
 	//Constants ------------------------------------------------------------
 	
     private static final String piString ="\u03C0";
-    private static final String infinityString ="\u221E";
+    static final String infinityString ="\u221E";
     public static final EC E = mkReal(Math.E);
     public static final EC HALF = mkReal(0.5D);
     @SuppressWarnings("unused")
 	private static final EC HALFPI = mkReal(Math.PI/2);//1.5707963267948966
     public static final EC I = mkCartesian(0.0D, 1.0D);
     public static final EC INFINITY = mkInf();
-    private static final EC NEGHALFI = mkCartesian(0.0D, -0.5D);
     public static final EC ONE = mkReal(1.0D);
     @SuppressWarnings("unused")
 	private static final EC ONEANDHALFPI = mkReal(Math.PI*1.5);//4.71238898038469
@@ -54,23 +49,9 @@ public final class EC implements Parcelable{
 	private static final EC TWOPI = mkReal(Math.PI*2);//6.283185307179586
     public static final EC ZERO = mkReal(0.0D);
     
-    //Static state: affects continuous mapping z -> f(z) and some settings. ------------
+    //The settings, precision and continuous argument, and the state of the
+    //continuous argument are in ECContext, one per thread.
 
-    /** In mapping z -> arg(z), give the result closest to the last result,
-     * rather than the principal result. */
-    private static boolean argContinuous;
-    
-    private static int k;
-    
-    /** The last quadrant that a complex number was in. */
-    private static int lastQuad;
-    
-    /** How many digits precision should toString give? */
-    private static int PRECISION=4;
-    
-    /** Real numbers closer than this are considered equal. */
-    private static double EPSILON=Math.pow(10D, -PRECISION);
-    
     //State ----------------------------------------------------------------
 
     /** Is the number finite? */
@@ -81,40 +62,18 @@ public final class EC implements Parcelable{
     
     /** Imaginary part of the number. Irrelevant if number is infinite. */
     private final double imag;
-
-    //Parcelable -------------------------------------------------------------
-    //Serialisation in Android.
-    
-    @Override public final int describeContents(){return 0;}
-    @Override public final void writeToParcel(Parcel p, int flags){
-    	p.writeBooleanArray(new boolean[]{finite});
-    	p.writeDouble(real);
-    	p.writeDouble(imag);
-    }
-    public static Parcelable.Creator<EC>CREATOR=new Parcelable.Creator<EC>(){
-    	@Override public final EC[]newArray(int size){return new EC[size];}
-    	@Override public final EC createFromParcel(Parcel p){
-    		boolean[] bs=new boolean[1];
-    		p.readBooleanArray(bs);
-    		boolean f=bs[0];
-    		double r=p.readDouble();
-    		double i=p.readDouble();
-    		if(!f)
-    			return EC.INFINITY;
-    		return EC.mkCartesian(r, i);
-    	}
-	};
     
     //Settings -------------------------------------------------------------
     
+    /** Sets the precision of all threads that do not set their own. */
     public static void setPrecision(int np){
-    	int op=PRECISION;
-        PRECISION = np;
-        EPSILON = Math.pow(10D, -PRECISION);
+    	int op=ECContext.getDefaultPrecision();
+        ECContext.setDefaultPrecision(np);
         pcs.firePropertyChange("precision", op, np);
     }
     
-    public static int getPrecision(){return PRECISION;}
+    /** The precision of this thread. */
+    public static int getPrecision(){return ECContext.get().getPrecision();}
     
     /** The bean is fake. */
     private static PropertyChangeSupport pcs=new PropertyChangeSupport(new Object());
@@ -162,14 +121,15 @@ public final class EC implements Parcelable{
     //Methods --------------------------------------------------
     
     /** @deprecated No clients */
-    public final EC acos()throws PartialException{
+    @Deprecated public final EC acos()throws PartialException{
         throw new PartialException("EC.acos not implemented.");
     }
 
     /** Which quadrant does this number lie in? */
-    public final int quadrant(){
-        double re = re();
-        double im = im();
+    public final int quadrant(){return quadrant(re(), im());}
+
+    /** Which quadrant does the number re+im*i lie in? */
+    static int quadrant(double re, double im){
         if(re >= 0.0D && re >= 0.0D)
             return 1;
         if(re < 0.0D && im >= 0.0D)
@@ -181,21 +141,20 @@ public final class EC implements Parcelable{
 
     /** Argument (=angle) of this number, in radians.
      * If argContinuous, will return the value closest to the result of the 
-     * previous call. (Assuming there's only one thread.) */
-    private double arg(){
-        if(isFinite() && !isZero()){
-            double d = Math.atan2(im(), re());
-            if(argContinuous){
-                int i = quadrant();
-                if(lastQuad == 2 && i == 3)
-                    k++;
-                else if(lastQuad == 3 && i == 2)
-                    k--;
-                lastQuad = i;
-                return d + (double)(2 * k) * Math.PI;
-            }else{
+     * previous call in this thread. */
+    private double arg(){return arg(finite, re(), im());}
+
+    /** Argument of the number re+im*i, or 0 if it is zero or infinite. 
+     * If argContinuous, will return the value closest to the result of the 
+     * previous call in this thread. */
+    static double arg(boolean finite, double re, double im){
+        if(finite && !(re == 0.0D && im == 0.0D)){
+            double d = Math.atan2(im, re);
+            ECContext context=ECContext.get();
+            if(context.isArgContinuous())
+                return context.continuous(d, quadrant(re, im));
+            else
                 return d;
-            }
         }else{
             return 0.0D;
         }
@@ -218,10 +177,10 @@ public final class EC implements Parcelable{
     }
 
     /** @deprecated No clients */
-    public final EC asin()throws PartialException{throw new PartialException("EC.asin not implemented");}
+    @Deprecated public final EC asin()throws PartialException{throw new PartialException("EC.asin not implemented");}
 
     /** @deprecated No clients */
-    public final EC atan()throws PartialException{throw new PartialException("EC.atan not implemented");}
+    @Deprecated public final EC atan()throws PartialException{throw new PartialException("EC.atan not implemented");}
 
     /** Complex conjugate: just negate the imaginary part. */
     public final EC conj(){
@@ -230,31 +189,26 @@ public final class EC implements Parcelable{
         return INFINITY;
     }
 
-    /** cosine. Not defined for infinity. */
+    /** cosine. Not defined for infinity.
+     * cos(x+iy) = cos x cosh y - i sin x sinh y */
     public final EC cos()throws PartialException{
-        EC ec = null;
-        if(isFinite())
-            try{
-                EC ec1=this.multiply(I);
-                ec=HALF.multiply(ec1.exp().add(ec1.negate().exp()));
-            }
-            catch(PartialException _ex) { }
-        else
+        if(!isFinite())
             throw new PartialException("cos " + infinityString);
-        return ec;
+        double ch=ECMath.cosh(imag);
+        if(Double.isInfinite(ch))
+            return INFINITY;
+        return mkCartesian(Math.cos(real)*ch, -Math.sin(real)*ECMath.sinh(imag));
     }
 
-    /** Hyperbolic cosine. Not defined for infinity. */
+    /** Hyperbolic cosine. Not defined for infinity.
+     * cosh(x+iy) = cosh x cos y + i sinh x sin y */
     public final EC cosh()throws PartialException{
-        EC ec = ZERO;
-        if(isFinite())
-            try{
-                ec = HALF.multiply(exp().add(negate().exp()));
-            }
-            catch(PartialException _ex) { }
-        else
+        if(!isFinite())
             throw new PartialException("cosh " + infinityString);
-        return ec;
+        double ch=ECMath.cosh(real);
+        if(Double.isInfinite(ch))
+            return INFINITY;
+        return mkCartesian(ch*Math.cos(imag), ECMath.sinh(real)*Math.sin(imag));
     }
     
     /** Division by a real number. 
@@ -388,14 +342,24 @@ public final class EC implements Parcelable{
     /** Try to cast to a long. 
      * The imaginary part must be smaller than EPSILON
      * and the real part must be within EPSILON of a long number. */
-    private long longValue()throws PartialException{
-        if(Math.abs(im()) < EPSILON){
-            long l = Math.round(re());
-            if(Math.abs(re() - (double)l) < EPSILON)
+    private long longValue()throws PartialException{return longValue(re(), im());}
+
+    /** Is the number re+im*i a long, as longValue(double, double) sees it? */
+    static boolean isLong(double re, double im){
+        double epsilon=ECContext.get().epsilon();
+        return Math.abs(im) < epsilon && Math.abs(re - (double)Math.round(re)) < epsilon;
+    }
+
+    /** Try to cast the number re+im*i to a long. */
+    static long longValue(double re, double im)throws PartialException{
+        double epsilon=ECContext.get().epsilon();
+        if(Math.abs(im) < epsilon){
+            long l = Math.round(re);
+            if(Math.abs(re - (double)l) < epsilon)
                 return l;
-            throw new PartialException(this + " not integer");
+            throw new PartialException(mkCartesian(re, im) + " not integer");
         } else
-            throw new PartialException(this + " not real");
+            throw new PartialException(mkCartesian(re, im) + " not real");
     }
 
     /** Modulus: the distance to zero. */
@@ -520,45 +484,40 @@ public final class EC implements Parcelable{
             return mkPolar(1.0D / mod(), arg() + Math.PI);//usual case
     }
 
-    /** Forget the last quadrant result. */
-    public static void resetArg(){
-        lastQuad=0;
-        k=0;
-    }
+    /** Forget the last quadrant result of this thread. */
+    public static void resetArg(){ECContext.get().resetArg();}
 
-    /** The argument function should be continuous. */
-    public static void setArgContinuous(){argContinuous=true;}
+    /** The argument function should be continuous, in all threads that do not set their own. */
+    public static void setArgContinuous(){ECContext.setDefaultArgContinuous(true);}
+
+    /** Is the argument function continuous in this thread? */
+    public static boolean isArgContinuous(){return ECContext.get().isArgContinuous();}
     
-    /** The argument function should give principal values. */
-    public static void setArgPrincipal(){argContinuous=false;}
+    /** The argument function should give principal values, in all threads that do not set their own. */
+    public static void setArgPrincipal(){ECContext.setDefaultArgContinuous(false);}
 
     /** sin.
-     * Undefined sin(infinity). */
+     * Undefined sin(infinity).
+     * sin(x+iy) = sin x cosh y + i cos x sinh y */
     public final EC sin()throws PartialException{
-        EC ec = ZERO;
-        if(isFinite())
-            try{
-                EC ec1 = multiply(I);
-                ec = NEGHALFI.multiply(ec1.exp().subtract(ec1.negate().exp()));
-            }
-            catch(PartialException _ex) { }
-        else
+        if(!isFinite())
             throw new PartialException("sin " + infinityString);
-        return ec;
+        double ch=ECMath.cosh(imag);
+        if(Double.isInfinite(ch))
+            return INFINITY;
+        return mkCartesian(Math.sin(real)*ch, Math.cos(real)*ECMath.sinh(imag));
     }
 
     /** Hyperbolic sin function.
-     * Undefined sinh(infinity). */
+     * Undefined sinh(infinity).
+     * sinh(x+iy) = sinh x cos y + i cosh x sin y */
     public final EC sinh()throws PartialException{
-        EC ec = ZERO;
-        if(isFinite())
-            try{
-                ec = HALF.multiply(exp().subtract(negate().exp()));
-            }
-            catch(PartialException _ex) { }
-        else
+        if(!isFinite())
             throw new PartialException("sinh "+infinityString);
-        return ec;
+        double ch=ECMath.cosh(real);
+        if(Double.isInfinite(ch))
+            return INFINITY;
+        return mkCartesian(ECMath.sinh(real)*Math.cos(imag), ch*Math.sin(imag));
     }
 
     /** Square of real number. */
@@ -598,35 +557,59 @@ public final class EC implements Parcelable{
         throw new PartialException(infinityString + "-" + infinityString);
     }
 
-    /** tan */
-    public final EC tan()throws PartialException{return sin().divide(cos());}
-
-    /** Hyperbolic tan function. */
-    public final EC tanh()throws PartialException{return sinh().divide(cosh());}
+    /** tan. Undefined tan(infinity).
+     * tan(x+iy) = (sin x cos x + i sinh y cosh y) / (cos^2 x + sinh^2 y),
+     * and for large |y| the imaginary part is 1 or -1 in doubles. */
+    public final EC tan()throws PartialException{
+        if(!isFinite())
+            throw new PartialException("tan " + infinityString);
+        double s=Math.sin(real), c=Math.cos(real);
+        if(ECMath.TANH_ONE<Math.abs(imag))
+            return mkCartesian(4*s*c*Math.exp(-2*Math.abs(imag)), Math.signum(imag));
+        double sh=ECMath.sinh(imag), ch=ECMath.cosh(imag);
+        double d=c*c + sh*sh;
+        return mkCartesian(s*c/d, sh*ch/d);
+    }
+
+    /** Hyperbolic tan function. Undefined tanh(infinity).
+     * tanh(x+iy) = (sinh x cosh x + i sin y cos y) / (sinh^2 x + cos^2 y),
+     * and for large |x| the real part is 1 or -1 in doubles. */
+    public final EC tanh()throws PartialException{
+        if(!isFinite())
+            throw new PartialException("tanh " + infinityString);
+        double s=Math.sin(imag), c=Math.cos(imag);
+        if(ECMath.TANH_ONE<Math.abs(real))
+            return mkCartesian(Math.signum(real), 4*s*c*Math.exp(-2*Math.abs(real)));
+        double sh=ECMath.sinh(real), ch=ECMath.cosh(real);
+        double d=sh*sh + c*c;
+        return mkCartesian(sh*ch/d, s*c/d);
+    }
 
     /** Print it nicely. 
      * The user sees output of this function. 
-     * Rounds using EPSILON to good short results. */
+     * Rounds using the precision of this thread to good short results. */
     @Override public final String toString(){
     	if(!isFinite())
     		return infinityString;
+    	ECContext context=ECContext.get();
+    	double epsilon=context.epsilon();
     	double re = re();
     	double im = im();
-    	String s = toString(re);
+    	String s = toString(re, context);
 
     	//It's just a real number.
-    	if(Math.abs(im) < EPSILON)
+    	if(Math.abs(im) < epsilon)
     		return s;
 
     	String s1;
-    	if(Math.abs(im - 1.0D) < EPSILON)
+    	if(Math.abs(im - 1.0D) < epsilon)
     		s1 = "i";
-    	else if(Math.abs(im + 1.0D) < EPSILON)
+    	else if(Math.abs(im + 1.0D) < epsilon)
     		s1 = "-i";
     	else
-    		s1 = toString(im) + "i";
+    		s1 = toString(im, context) + "i";
 
-    	if(Math.abs(re) < EPSILON)
+    	if(Math.abs(re) < epsilon)
     		return s1;
     	else
     		return s + (im <= 0.0D ? "" : "+") + s1;
@@ -634,7 +617,9 @@ public final class EC implements Parcelable{
 
     /** Print a real number nicely, for the user.
      * Prefers rounded numbers and multiples of pi. */
-    public static String toString(double d){
+    public static String toString(double d){return toString(d, ECContext.get());}
+
+    private static String toString(double d, ECContext context){
     	if(Double.isNaN(d))
     		return Double.toString(d);//Whatever that gives.
     	if(Double.isInfinite(d))
@@ -644,7 +629,7 @@ public final class EC implements Parcelable{
     	long n=Math.round(d/Math.PI);//rounding
     	double reconstruct=n*Math.PI;
     	double distance=Math.abs(d-reconstruct);
-    	if(distance<EPSILON){
+    	if(distance<context.epsilon()){
     		if(n==0)
     			return "0";
     		if(n==1)
@@ -655,10 +640,7 @@ public final class EC implements Parcelable{
     	}
     	    	
     	//General formatting
-        NumberFormat nf=NumberFormat.getInstance();//Instantiate every time, because not threadsafe.
-        nf.setGroupingUsed(false);
-        nf.setMaximumFractionDigits(PRECISION);
-        String s = nf.format(d);
+        String s = context.format(d);//NumberFormat is not threadsafe: one per context.
         //Cut off trailing zeros.
         if(SyntaxTree.in('.', s)){
         	//Cuts off trailing zeros.
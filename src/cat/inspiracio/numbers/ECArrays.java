@@ -0,0 +1,177 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+/** The operations of EC as loops over whole arrays.
+ * <p>
+ * The numbers are given in structure-of-arrays form: the real parts in one
+ * array and the imaginary parts in another, as ECMath takes them.
+ * Every operation works on the first n numbers, in place: the result
+ * replaces the first operand. Where the operation is undefined, it sets
+ * the flag in the array undefined and leaves garbage in the result;
+ * flags that are already set stay set.
+ * <p>
+ * The results are exactly those of the corresponding methods of EC,
+ * but no EC is made for any number, and no exception is thrown. */
+public final class ECArrays{
+
+	private ECArrays(){}
+
+	//Arithmetic --------------------------------------------------------------
+
+	/** a := a + b, like EC.add(EC). */
+	public static void add(double[] ar, double[] ai, double[] br, double[] bi, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryAdd(ar[i], ai[i], br[i], bi[i], ar, ai, i))
+				undefined[i]=true;
+	}
+
+	/** a := a - b, like EC.subtract(EC). */
+	public static void subtract(double[] ar, double[] ai, double[] br, double[] bi, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.trySubtract(ar[i], ai[i], br[i], bi[i], ar, ai, i))
+				undefined[i]=true;
+	}
+
+	/** a := a * b, like EC.multiply(EC). */
+	public static void multiply(double[] ar, double[] ai, double[] br, double[] bi, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryMultiply(ar[i], ai[i], br[i], bi[i], ar, ai, i))
+				undefined[i]=true;
+	}
+
+	/** a := a / b, like EC.divide(EC). */
+	public static void divide(double[] ar, double[] ai, double[] br, double[] bi, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryDivide(ar[i], ai[i], br[i], bi[i], ar, ai, i))
+				undefined[i]=true;
+	}
+
+	/** a := a ^ b, like EC.power(EC). */
+	public static void power(double[] ar, double[] ai, double[] br, double[] bi, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryPower(ar[i], ai[i], br[i], bi[i], ar, ai, i))
+				undefined[i]=true;
+	}
+
+	//Unary functions ---------------------------------------------------------
+
+	/** z := negate z, like EC.negate(). */
+	public static void negate(double[] re, double[] im, int n){
+		for(int i=0; i<n; i++)
+			ECMath.negate(re[i], im[i], re, im, i);
+	}
+
+	/** z := conj z, like EC.conj(). */
+	public static void conj(double[] re, double[] im, int n){
+		for(int i=0; i<n; i++)
+			ECMath.conj(re[i], im[i], re, im, i);
+	}
+
+	/** z := rePart z, like EC.rePart(). */
+	public static void rePart(double[] re, double[] im, int n){
+		for(int i=0; i<n; i++)
+			ECMath.rePart(re[i], im[i], re, im, i);
+	}
+
+	/** z := imPart z, like EC.imPart(). */
+	public static void imPart(double[] re, double[] im, int n){
+		for(int i=0; i<n; i++)
+			ECMath.imPart(re[i], im[i], re, im, i);
+	}
+
+	/** z := modulus z, like EC.modulus(). */
+	public static void modulus(double[] re, double[] im, int n){
+		for(int i=0; i<n; i++)
+			ECMath.modulus(re[i], im[i], re, im, i);
+	}
+
+	/** z := argument z, like EC.argument(). */
+	public static void argument(double[] re, double[] im, int n){
+		for(int i=0; i<n; i++)
+			ECMath.argument(re[i], im[i], re, im, i);
+	}
+
+	/** z := opp z, like EC.opp(). */
+	public static void opp(double[] re, double[] im, int n){
+		for(int i=0; i<n; i++)
+			ECMath.opp(re[i], im[i], re, im, i);
+	}
+
+	/** z := exp z, like EC.exp(). */
+	public static void exp(double[] re, double[] im, int n){
+		for(int i=0; i<n; i++)
+			ECMath.exp(re[i], im[i], re, im, i);
+	}
+
+	/** z := ln z, like EC.ln(). */
+	public static void ln(double[] re, double[] im, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryLn(re[i], im[i], re, im, i))
+				undefined[i]=true;
+	}
+
+	/** z := fac z, like EC.fac(). */
+	public static void fac(double[] re, double[] im, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryFac(re[i], im[i], re, im, i))
+				undefined[i]=true;
+	}
+
+	/** z := sin z, like EC.sin(). */
+	public static void sin(double[] re, double[] im, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.trySin(re[i], im[i], re, im, i))
+				undefined[i]=true;
+	}
+
+	/** z := cos z, like EC.cos(). */
+	public static void cos(double[] re, double[] im, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryCos(re[i], im[i], re, im, i))
+				undefined[i]=true;
+	}
+
+	/** z := sinh z, like EC.sinh(). */
+	public static void sinh(double[] re, double[] im, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.trySinh(re[i], im[i], re, im, i))
+				undefined[i]=true;
+	}
+
+	/** z := cosh z, like EC.cosh(). */
+	public static void cosh(double[] re, double[] im, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryCosh(re[i], im[i], re, im, i))
+				undefined[i]=true;
+	}
+
+	/** z := tan z, like EC.tan(). */
+	public static void tan(double[] re, double[] im, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryTan(re[i], im[i], re, im, i))
+				undefined[i]=true;
+	}
+
+	/** z := tanh z, like EC.tanh(). */
+	public static void tanh(double[] re, double[] im, boolean[] undefined, int n){
+		for(int i=0; i<n; i++)
+			if(!ECMath.tryTanh(re[i], im[i], re, im, i))
+				undefined[i]=true;
+	}
+}
@@ -0,0 +1,141 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import java.text.NumberFormat;
+
+/** The state that EC keeps while it evaluates, one per thread.
+ * <p>
+ * It has the settings, precision and continuity of the argument, and
+ * the tracker of the continuous argument: where the last argument was.
+ * The settings of a thread follow the defaults, EC.setPrecision and
+ * EC.setArgContinuous, unless the thread sets its own. Only the thread
+ * itself touches its context, so threads that evaluate at the same time
+ * do not disturb each other. */
+public final class ECContext{
+
+	private static final ThreadLocal<ECContext> current=new ThreadLocal<ECContext>(){
+		@Override protected ECContext initialValue(){return new ECContext();}
+	};
+
+	//Defaults for all threads.
+	private static volatile int defaultPrecision=4;
+	private static volatile boolean defaultArgContinuous;
+
+	//State -----------------------------------------------------------------
+
+	/** The precision of this thread, or -1 to follow the default. */
+	private int precision=-1;
+
+	/** The continuity of this thread, or null to follow the default. */
+	private Boolean argContinuous;
+
+	/** For the precision formatted last. */
+	private int formatPrecision=-1;
+	private double epsilon;
+	private NumberFormat format;
+
+	/** The tracker: the last quadrant that a number was in, and how many
+	 * times the argument has gone round. */
+	private int lastQuad;
+	private int k;
+
+	//Constructors ----------------------------------------------------------
+
+	private ECContext(){}
+
+	/** The context of this thread. */
+	public static ECContext get(){return current.get();}
+
+	//Defaults --------------------------------------------------------------
+
+	static int getDefaultPrecision(){return defaultPrecision;}
+	static void setDefaultPrecision(int p){defaultPrecision=p;}
+
+	static boolean isDefaultArgContinuous(){return defaultArgContinuous;}
+	static void setDefaultArgContinuous(boolean b){defaultArgContinuous=b;}
+
+	//Settings --------------------------------------------------------------
+
+	/** How many digits EC.toString() gives. */
+	public int getPrecision(){return precision<0 ? defaultPrecision : precision;}
+
+	/** Sets the precision of this thread.
+	 * @param p How many digits, or -1 to follow the default. */
+	public void setPrecision(int p){precision=p;}
+
+	/** Real numbers closer than this are considered equal: 10^-precision. */
+	double epsilon(){
+		update();
+		return epsilon;
+	}
+
+	/** Formats a real number with the precision, without grouping. */
+	String format(double d){
+		update();
+		return format.format(d);
+	}
+
+	/** Is the argument function continuous? */
+	public boolean isArgContinuous(){return argContinuous==null ? defaultArgContinuous : argContinuous.booleanValue();}
+
+	/** Sets the continuity of the argument for this thread.
+	 * @param b Continuous, principal, or null to follow the default. */
+	public void setArgContinuous(Boolean b){argContinuous=b;}
+
+	/** Takes the settings of another context, and forgets the tracker.
+	 * For a thread that does a part of the work of another. */
+	public void setSettings(ECContext other){
+		precision=other.precision;
+		argContinuous=other.argContinuous;
+		resetArg();
+	}
+
+	//Tracker ---------------------------------------------------------------
+
+	/** Forget the last quadrant. */
+	public void resetArg(){
+		lastQuad=0;
+		k=0;
+	}
+
+	/** The continuous argument: the principal argument d of a number in
+	 * quadrant q, plus the turns that the argument has gone round. */
+	double continuous(double d, int q){
+		if(lastQuad == 2 && q == 3)
+			k++;
+		else if(lastQuad == 3 && q == 2)
+			k--;
+		lastQuad = q;
+		return d + (double)(2 * k) * Math.PI;
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** Makes epsilon and format fit the precision. */
+	private void update(){
+		int p=getPrecision();
+		if(p==formatPrecision)
+			return;
+		epsilon=Math.pow(10D, -p);
+		format=NumberFormat.getInstance();
+		format.setGroupingUsed(false);
+		format.setMaximumFractionDigits(p);
+		formatPrecision=p;
+	}
+}
@@ -0,0 +1,475 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+/** The operations of EC on primitive doubles.
+ * <p>
+ * An extended complex number is given as two doubles, its real and imaginary
+ * parts, as EC.re() and EC.im() return them: infinity is (Infinity, Infinity).
+ * Every operation takes its operands as doubles and writes its result into
+ * re[k] and im[k], so that it makes no objects.
+ * <p>
+ * The results are exactly those of the corresponding methods of EC,
+ * and so are the PartialExceptions.
+ * <p>
+ * Every operation that may be undefined also comes as tryX, which
+ * returns false where X throws, and then leaves re[k] and im[k] as they
+ * were. It makes no exception. Loops over
+ * many points should use those, and leave the exception, with its message,
+ * to the caller who shows it. */
+public final class ECMath{
+
+	private static final double INF=Double.POSITIVE_INFINITY;
+
+	/** Beyond this, tanh is 1 in doubles. */
+	static final double TANH_ONE=20;
+
+	private ECMath(){}
+
+	//Helpers -----------------------------------------------------------------
+
+	/** Is the number with this real part finite? */
+	public static boolean isFinite(double re){return re!=INF;}
+
+	private static boolean isZero(double r, double i){return r!=INF && r==0.0D && i==0.0D;}
+
+	/** Like EC.mkCartesian. */
+	private static void cartesian(double x, double y, double[] re, double[] im, int k){
+		if(Double.isInfinite(x) || Double.isInfinite(y)){
+			re[k]=INF;
+			im[k]=INF;
+		}else{
+			re[k]=x;
+			im[k]=y;
+		}
+	}
+
+	/** Like EC.mkPolar. */
+	private static void polar(double d, double a, double[] re, double[] im, int k){
+		if(Double.isInfinite(d)){
+			re[k]=INF;
+			im[k]=INF;
+		}else{
+			re[k]=d*Math.cos(a);
+			im[k]=d*Math.sin(a);
+		}
+	}
+
+	/** Real cosh by one Math.exp, which is many times faster than Math.cosh. */
+	static double cosh(double x){
+		double a=Math.abs(x);
+		if(709<a)
+			return Math.cosh(x);	//exp overflows a little before cosh
+		double e=Math.exp(a);
+		return 0.5*e + 0.5/e;
+	}
+
+	/** Real sinh by one Math.exp or Math.expm1, which is many times faster than Math.sinh. */
+	static double sinh(double x){
+		double a=Math.abs(x);
+		double s;
+		if(a<1){
+			double m=Math.expm1(a);	//no cancellation near 0
+			s=0.5*(m + m/(m+1));
+		}else if(a<=709){
+			double e=Math.exp(a);
+			s=0.5*e - 0.5/e;
+		}else
+			return Math.sinh(x);
+		return x<0 ? -s : s;
+	}
+
+	private static void infinity(double[] re, double[] im, int k){
+		re[k]=INF;
+		im[k]=INF;
+	}
+
+	private static void zero(double[] re, double[] im, int k){
+		re[k]=0.0D;
+		im[k]=0.0D;
+	}
+
+	//Arithmetic --------------------------------------------------------------
+
+	/** Like EC.add(EC). */
+	public static void add(double ar, double ai, double br, double bi, double[] re, double[] im, int k)throws PartialException{
+		if(!tryAdd(ar, ai, br, bi, re, im, k))
+			throw new PartialException(EC.infinityString + " + " + EC.infinityString);
+	}
+
+	/** Like add, but returns false where add throws. */
+	public static boolean tryAdd(double ar, double ai, double br, double bi, double[] re, double[] im, int k){
+		if(ar!=INF)
+			if(br!=INF)
+				cartesian(ar + br, ai + bi, re, im, k);
+			else
+				infinity(re, im, k);
+		else if(br!=INF)
+			infinity(re, im, k);
+		else
+			return false;
+		return true;
+	}
+
+	/** Like EC.subtract(EC). */
+	public static void subtract(double ar, double ai, double br, double bi, double[] re, double[] im, int k)throws PartialException{
+		if(!trySubtract(ar, ai, br, bi, re, im, k))
+			throw new PartialException(EC.infinityString + "-" + EC.infinityString);
+	}
+
+	/** Like subtract, but returns false where subtract throws. */
+	public static boolean trySubtract(double ar, double ai, double br, double bi, double[] re, double[] im, int k){
+		if(ar!=INF)
+			if(br!=INF)
+				cartesian(ar - br, ai - bi, re, im, k);
+			else
+				infinity(re, im, k);
+		else if(br!=INF)
+			infinity(re, im, k);
+		else
+			return false;
+		return true;
+	}
+
+	/** Like EC.multiply(EC). */
+	public static void multiply(double ar, double ai, double br, double bi, double[] re, double[] im, int k)throws PartialException{
+		if(!tryMultiply(ar, ai, br, bi, re, im, k))
+			throw new PartialException(operand(ar, ai) + "*" + operand(br, bi));
+	}
+
+	/** Like multiply, but returns false where multiply throws. */
+	public static boolean tryMultiply(double ar, double ai, double br, double bi, double[] re, double[] im, int k){
+		if(isZero(ar, ai)){
+			if(br!=INF)
+				zero(re, im, k);
+			else
+				return false;
+		}else if(ar!=INF){
+			if(isZero(br, bi))
+				zero(re, im, k);
+			else if(br!=INF)
+				cartesian(ar * br - ai * bi, ar * bi + br * ai, re, im, k);
+			else
+				infinity(re, im, k);
+		}else{
+			if(isZero(br, bi))
+				return false;
+			infinity(re, im, k);
+		}
+		return true;
+	}
+
+	/** Like EC.divide(EC). */
+	public static void divide(double ar, double ai, double br, double bi, double[] re, double[] im, int k)throws PartialException{
+		if(!tryDivide(ar, ai, br, bi, re, im, k))
+			throw new PartialException(operand(ar, ai) + "/" + operand(br, bi));
+	}
+
+	/** Like divide, but returns false where divide throws. */
+	public static boolean tryDivide(double ar, double ai, double br, double bi, double[] re, double[] im, int k){
+		if(isZero(ar, ai)){
+			if(isZero(br, bi))
+				return false;
+			if(br!=INF)
+				zero(re, im, k);
+			else
+				return false;
+		}else if(ar!=INF){
+			if(isZero(br, bi))
+				infinity(re, im, k);
+			else if(br!=INF){
+				Borrow.div(ar, ai, br, bi, re, im, k);
+				cartesian(re[k], im[k], re, im, k);
+			}else
+				zero(re, im, k);
+		}else{
+			if(isZero(br, bi))
+				return false;
+			if(br!=INF)
+				infinity(re, im, k);
+			else
+				return false;
+		}
+		return true;
+	}
+
+	/** Like EC.power(EC): x^y. */
+	public static void power(double xr, double xi, double yr, double yi, double[] re, double[] im, int k)throws PartialException{
+		if(!tryPower(xr, xi, yr, yi, re, im, k))
+			throw new PartialException(operand(xr, xi) + "^0");
+	}
+
+	/** Like power, but returns false where power throws. */
+	public static boolean tryPower(double xr, double xi, double yr, double yi, double[] re, double[] im, int k){
+		if(isZero(xr, xi)){
+			if(isZero(yr, yi))
+				return false;
+			zero(re, im, k);
+		}else if(xr!=INF){
+			if(isZero(yr, yi)){
+				re[k]=1.0D;
+				im[k]=0.0D;
+			}else if(yr!=INF){
+				double mx=Math.log(Math.sqrt(EC.sqr(xr) + EC.sqr(xi)));
+				double ax=Math.atan2(xi, xr);
+				if(ax==-Math.PI)
+					ax=Math.PI;
+				double mr=Math.exp(mx*yr - yi*ax);
+				double ar=yi * mx + yr * ax;
+				polar(mr, ar, re, im, k);
+			}else
+				infinity(re, im, k);
+		}else{
+			if(isZero(yr, yi))
+				return false;
+			infinity(re, im, k);
+		}
+		return true;
+	}
+
+	/** How the message of a PartialException names an operand: 0 or infinity. */
+	private static String operand(double r, double i){
+		return isZero(r, i) ? "0" : EC.infinityString;
+	}
+
+	//Unary functions ---------------------------------------------------------
+
+	/** Like EC.negate(). */
+	public static void negate(double r, double i, double[] re, double[] im, int k){
+		if(r!=INF)
+			cartesian(-r, -i, re, im, k);
+		else
+			infinity(re, im, k);
+	}
+
+	/** Like EC.conj(). */
+	public static void conj(double r, double i, double[] re, double[] im, int k){
+		if(r!=INF)
+			cartesian(r, -i, re, im, k);
+		else
+			infinity(re, im, k);
+	}
+
+	/** Like EC.rePart(). */
+	public static void rePart(double r, double i, double[] re, double[] im, int k){
+		if(r!=INF)
+			cartesian(r, 0.0D, re, im, k);
+		else
+			infinity(re, im, k);
+	}
+
+	/** Like EC.imPart(). */
+	public static void imPart(double r, double i, double[] re, double[] im, int k){
+		if(r!=INF)
+			cartesian(i, 0.0D, re, im, k);
+		else
+			infinity(re, im, k);
+	}
+
+	/** Like EC.modulus(). */
+	public static void modulus(double r, double i, double[] re, double[] im, int k){
+		if(r!=INF)
+			cartesian(Math.sqrt(EC.sqr(r) + EC.sqr(i)), 0.0D, re, im, k);
+		else
+			infinity(re, im, k);
+	}
+
+	/** Like EC.argument(). */
+	public static void argument(double r, double i, double[] re, double[] im, int k){
+		cartesian(EC.arg(r!=INF, r, i), 0.0D, re, im, k);
+	}
+
+	/** Like EC.opp(). */
+	public static void opp(double r, double i, double[] re, double[] im, int k){
+		if(r==INF)
+			zero(re, im, k);
+		else if(isZero(r, i))
+			infinity(re, im, k);
+		else
+			polar(1.0D / Math.sqrt(EC.sqr(r) + EC.sqr(i)), EC.arg(true, r, i) + Math.PI, re, im, k);
+	}
+
+	/** Like EC.exp(). */
+	public static void exp(double r, double i, double[] re, double[] im, int k){
+		if(r!=INF)
+			polar(Math.exp(r), i, re, im, k);
+		else
+			infinity(re, im, k);
+	}
+
+	/** Like EC.ln(). */
+	public static void ln(double r, double i, double[] re, double[] im, int k)throws PartialException{
+		if(!tryLn(r, i, re, im, k))
+			throw new PartialException("ln 0");
+	}
+
+	/** Like ln, but returns false where ln throws. */
+	public static boolean tryLn(double r, double i, double[] re, double[] im, int k){
+		if(r!=INF){
+			if(isZero(r, i))
+				return false;
+			cartesian(Math.log(Math.sqrt(EC.sqr(r) + EC.sqr(i))), EC.arg(true, r, i), re, im, k);
+		}else
+			infinity(re, im, k);
+		return true;
+	}
+
+	/** Like EC.fac(). */
+	public static void fac(double r, double i, double[] re, double[] im, int k)throws PartialException{
+		if(!tryFac(r, i, re, im, k)){
+			long n=EC.longValue(r, i);//throws if not an integer
+			throw new PartialException(n<0 ? "(" + n + ")!" : n + "!");
+		}
+	}
+
+	/** Like fac, but returns false where fac throws. */
+	public static boolean tryFac(double r, double i, double[] re, double[] im, int k){
+		if(!EC.isLong(r, i))
+			return false;
+		long n=Math.round(r);
+		if(n<0 || 25<n)
+			return false;
+		long factorial = 1L;
+		for(; n > 0L; n--)
+			factorial *= n;
+		cartesian(factorial, 0.0D, re, im, k);
+		return true;
+	}
+
+	/** Like EC.sin(). */
+	public static void sin(double r, double i, double[] re, double[] im, int k)throws PartialException{
+		if(!trySin(r, i, re, im, k))
+			throw new PartialException("sin " + EC.infinityString);
+	}
+
+	/** Like sin, but returns false where sin throws.
+	 * sin(x+iy) = sin x cosh y + i cos x sinh y */
+	public static boolean trySin(double r, double i, double[] re, double[] im, int k){
+		if(r==INF)
+			return false;
+		double ch=cosh(i);
+		if(Double.isInfinite(ch))
+			infinity(re, im, k);
+		else
+			cartesian(Math.sin(r)*ch, Math.cos(r)*sinh(i), re, im, k);
+		return true;
+	}
+
+	/** Like EC.cos(). */
+	public static void cos(double r, double i, double[] re, double[] im, int k)throws PartialException{
+		if(!tryCos(r, i, re, im, k))
+			throw new PartialException("cos " + EC.infinityString);
+	}
+
+	/** Like cos, but returns false where cos throws.
+	 * cos(x+iy) = cos x cosh y - i sin x sinh y */
+	public static boolean tryCos(double r, double i, double[] re, double[] im, int k){
+		if(r==INF)
+			return false;
+		double ch=cosh(i);
+		if(Double.isInfinite(ch))
+			infinity(re, im, k);
+		else
+			cartesian(Math.cos(r)*ch, -Math.sin(r)*sinh(i), re, im, k);
+		return true;
+	}
+
+	/** Like EC.sinh(). */
+	public static void sinh(double r, double i, double[] re, double[] im, int k)throws PartialException{
+		if(!trySinh(r, i, re, im, k))
+			throw new PartialException("sinh " + EC.infinityString);
+	}
+
+	/** Like sinh, but returns false where sinh throws.
+	 * sinh(x+iy) = sinh x cos y + i cosh x sin y */
+	public static boolean trySinh(double r, double i, double[] re, double[] im, int k){
+		if(r==INF)
+			return false;
+		double ch=cosh(r);
+		if(Double.isInfinite(ch))
+			infinity(re, im, k);
+		else
+			cartesian(sinh(r)*Math.cos(i), ch*Math.sin(i), re, im, k);
+		return true;
+	}
+
+	/** Like EC.cosh(). */
+	public static void cosh(double r, double i, double[] re, double[] im, int k)throws PartialException{
+		if(!tryCosh(r, i, re, im, k))
+			throw new PartialException("cosh " + EC.infinityString);
+	}
+
+	/** Like cosh, but returns false where cosh throws.
+	 * cosh(x+iy) = cosh x cos y + i sinh x sin y */
+	public static boolean tryCosh(double r, double i, double[] re, double[] im, int k){
+		if(r==INF)
+			return false;
+		double ch=cosh(r);
+		if(Double.isInfinite(ch))
+			infinity(re, im, k);
+		else
+			cartesian(ch*Math.cos(i), sinh(r)*Math.sin(i), re, im, k);
+		return true;
+	}
+
+	/** Like EC.tan(). */
+	public static void tan(double r, double i, double[] re, double[] im, int k)throws PartialException{
+		if(!tryTan(r, i, re, im, k))
+			throw new PartialException("tan " + EC.infinityString);
+	}
+
+	/** Like tan, but returns false where tan throws.
+	 * tan(x+iy) = (sin x cos x + i sinh y cosh y) / (cos^2 x + sinh^2 y),
+	 * and for large |y| the imaginary part is 1 or -1 in doubles. */
+	public static boolean tryTan(double r, double i, double[] re, double[] im, int k){
+		if(r==INF)
+			return false;
+		double s=Math.sin(r), c=Math.cos(r);
+		if(TANH_ONE<Math.abs(i))
+			cartesian(4*s*c*Math.exp(-2*Math.abs(i)), Math.signum(i), re, im, k);
+		else{
+			double sh=sinh(i), ch=cosh(i);
+			double d=c*c + sh*sh;
+			cartesian(s*c/d, sh*ch/d, re, im, k);
+		}
+		return true;
+	}
+
+	/** Like EC.tanh(). */
+	public static void tanh(double r, double i, double[] re, double[] im, int k)throws PartialException{
+		if(!tryTanh(r, i, re, im, k))
+			throw new PartialException("tanh " + EC.infinityString);
+	}
+
+	/** Like tanh, but returns false where tanh throws.
+	 * tanh(x+iy) = (sinh x cosh x + i sin y cos y) / (sinh^2 x + cos^2 y),
+	 * and for large |x| the real part is 1 or -1 in doubles. */
+	public static boolean tryTanh(double r, double i, double[] re, double[] im, int k){
+		if(r==INF)
+			return false;
+		double s=Math.sin(i), c=Math.cos(i);
+		if(TANH_ONE<Math.abs(r))
+			cartesian(Math.signum(r), 4*s*c*Math.exp(-2*Math.abs(r)), re, im, k);
+		else{
+			double sh=sinh(r), ch=cosh(r);
+			double d=sh*sh + c*c;
+			cartesian(sh*ch/d, s*c/d, re, im, k);
+		}
+		return true;
+	}
+}
@@ -0,0 +1,343 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/** A set of complex numbers in a quadtree, for finding quickly the numbers
+ * in a rectangle, or the number nearest to a point.
+ * <p>
+ * Every node is a square of the plane, and knows how many numbers are in it
+ * and where their centre is. A leaf holds up to CAPACITY numbers, and then
+ * splits into four. The root starts as a square of width 1 on integer
+ * corners, and doubles towards a number that falls outside it. So all
+ * widths are powers of 2, every corner is an integer plus a multiple of
+ * its width, and they are exact because the numbers are below MAX.
+ * <p>
+ * Like a HashSet of EC, which has no equals(Object), it compares numbers by
+ * identity: the same object is added only once. Infinity, and numbers too
+ * big for the tree, are kept apart: they are in the set, but no rectangle
+ * finds them.
+ * <p>
+ * Not thread-safe. */
+public final class ECTree extends AbstractSet<EC>{
+
+	/** How many numbers a leaf holds before it splits. */
+	static final int CAPACITY=16;
+
+	/** Numbers with a bigger real or imaginary part are kept apart,
+	 * so that the corners of the squares stay exact. */
+	static final double MAX=1L<<50;
+
+	/** Receives the numbers that a visit finds. */
+	public interface Visitor{
+
+		/** A number in the rectangle. */
+		void number(EC c);
+
+		/** Some numbers close together, in a square no wider than the cluster size.
+		 * @param re Real part of their centre.
+		 * @param im Imaginary part of their centre.
+		 * @param count How many, at least 2. */
+		void cluster(double re, double im, int count);
+	}
+
+	//State -----------------------------------------------------------------
+
+	/** Null while there are no finite numbers. */
+	private Node root;
+
+	/** Infinity, and numbers outside any root. */
+	private final List<EC> others=new ArrayList<EC>();
+
+	//Constructors ----------------------------------------------------------
+
+	public ECTree(){}
+
+	//Set methods -----------------------------------------------------------
+
+	/** Adds a number, unless this object is in already. */
+	@Override public boolean add(EC c){
+		if(contains(c))
+			return false;
+		if(apart(c)){
+			others.add(c);
+			return true;
+		}
+		double re=c.re(), im=c.im();
+		grow(re, im);
+		Node node=root;
+		while(true){
+			node.count++;
+			node.sumRe+=re;
+			node.sumIm+=im;
+			if(node.children==null)
+				break;
+			int i=node.index(re, im);
+			if(node.children[i]==null)
+				node.children[i]=node.child(i);
+			node=node.children[i];
+		}
+		node.add(c);
+		return true;
+	}
+
+	/** Whether this object is in. */
+	@Override public boolean contains(Object o){
+		if(!(o instanceof EC))
+			return false;
+		EC c=(EC)o;
+		if(apart(c) || root==null || !root.contains(c.re(), c.im())){
+			for(EC other : others)
+				if(other==c)
+					return true;
+			return false;
+		}
+		Node node=root;
+		while(node!=null && node.children!=null)
+			node=node.children[node.index(c.re(), c.im())];
+		if(node!=null)
+			for(int i=0; i<node.n; i++)
+				if(node.items[i]==c)
+					return true;
+		return false;
+	}
+
+	@Override public int size(){
+		return (root==null ? 0 : root.count) + others.size();
+	}
+
+	@Override public void clear(){
+		root=null;
+		others.clear();
+	}
+
+	/** Iterates over a copy, so it cannot remove. */
+	@Override public Iterator<EC> iterator(){
+		List<EC> all=new ArrayList<EC>(size());
+		if(root!=null)
+			root.collect(all);
+		all.addAll(others);
+		return Collections.unmodifiableList(all).iterator();
+	}
+
+	//Queries ---------------------------------------------------------------
+
+	/** Finds the finite numbers in a rectangle, edges included.
+	 * Where a square of the tree is no wider than cluster and holds more
+	 * than one number, reports them as one cluster.
+	 * @param cluster Width of the biggest cluster. 0 for none. */
+	public void visit(double left, double bottom, double right, double top, double cluster, Visitor visitor){
+		if(root!=null)
+			root.visit(left, bottom, right, top, cluster, visitor);
+	}
+
+	/** The finite number nearest to a point, or null if none is nearer than max. */
+	public EC nearest(double re, double im, double max){
+		if(root==null)
+			return null;
+		Search search=new Search(re, im, max*max);
+		root.nearest(search);
+		return search.best;
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** Whether a number goes in others rather than in the tree. */
+	private static boolean apart(EC c){
+		return !c.isFinite() || MAX<Math.abs(c.re()) || MAX<Math.abs(c.im());
+	}
+
+	/** Makes the root big enough for a point. */
+	private void grow(double re, double im){
+		if(root==null)
+			root=new Node(Math.floor(re), Math.floor(im), 1);
+		while(!root.contains(re, im)){
+			double size=root.size;
+			double x0= re<root.x0 ? root.x0-size : root.x0;
+			double y0= im<root.y0 ? root.y0-size : root.y0;
+			Node parent=new Node(x0, y0, 2*size);
+			parent.children=new Node[4];
+			parent.items=null;
+			if(0<root.count)
+				parent.children[parent.index(root.x0, root.y0)]=root;
+			parent.count=root.count;
+			parent.sumRe=root.sumRe;
+			parent.sumIm=root.sumIm;
+			root=parent;
+		}
+	}
+
+	/** A square of the plane. */
+	private static final class Node{
+
+		/** Lower left corner and width. */
+		final double x0, y0, size;
+
+		/** How many numbers, and their sums. */
+		int count;
+		double sumRe, sumIm;
+
+		/** In a leaf: the numbers. Null once split. */
+		EC[] items=new EC[CAPACITY];
+		int n;
+
+		/** Once split: the quarters, some maybe null. The index is 1 for the
+		 * east half plus 2 for the north half. */
+		Node[] children;
+
+		Node(double x0, double y0, double size){
+			this.x0=x0;
+			this.y0=y0;
+			this.size=size;
+		}
+
+		boolean contains(double re, double im){
+			return x0<=re && re<x0+size && y0<=im && im<y0+size;
+		}
+
+		/** Which quarter a point inside is in. */
+		int index(double re, double im){
+			double h=size/2;
+			return (x0+h<=re ? 1 : 0) + (y0+h<=im ? 2 : 0);
+		}
+
+		Node child(int i){
+			double h=size/2;
+			return new Node((i&1)==0 ? x0 : x0+h, (i&2)==0 ? y0 : y0+h, h);
+		}
+
+		/** Puts a number in this leaf, whose count already has it. Splits if full. */
+		void add(EC c){
+			if(n==items.length){
+				double h=size/2;
+				if((x0+h)-x0==h && (y0+h)-y0==h){
+					split();
+					int i=index(c.re(), c.im());
+					if(children[i]==null)
+						children[i]=child(i);
+					Node child=children[i];
+					child.count++;
+					child.sumRe+=c.re();
+					child.sumIm+=c.im();
+					child.add(c);
+					return;
+				}
+				EC[] bigger=new EC[2*n];//Too small to split.
+				System.arraycopy(items, 0, bigger, 0, n);
+				items=bigger;
+			}
+			items[n++]=c;
+		}
+
+		/** Moves the numbers of this leaf to new quarters. */
+		private void split(){
+			EC[] old=items;
+			int m=n;
+			children=new Node[4];
+			items=null;
+			n=0;
+			for(int j=0; j<m; j++){
+				EC c=old[j];
+				int i=index(c.re(), c.im());
+				if(children[i]==null)
+					children[i]=child(i);
+				Node child=children[i];
+				child.count++;
+				child.sumRe+=c.re();
+				child.sumIm+=c.im();
+				child.add(c);
+			}
+		}
+
+		void collect(List<EC> all){
+			if(children==null){
+				for(int i=0; i<n; i++)
+					all.add(items[i]);
+				return;
+			}
+			for(Node child : children)
+				if(child!=null)
+					child.collect(all);
+		}
+
+		void visit(double left, double bottom, double right, double top, double cluster, Visitor visitor){
+			if(right<x0 || x0+size<left || top<y0 || y0+size<bottom)
+				return;
+			if(size<=cluster && 1<count){
+				visitor.cluster(sumRe/count, sumIm/count, count);
+				return;
+			}
+			if(children==null){
+				for(int i=0; i<n; i++){
+					double re=items[i].re(), im=items[i].im();
+					if(left<=re && re<=right && bottom<=im && im<=top)
+						visitor.number(items[i]);
+				}
+				return;
+			}
+			for(Node child : children)
+				if(child!=null)
+					child.visit(left, bottom, right, top, cluster, visitor);
+		}
+
+		void nearest(Search search){
+			double dx=Math.max(0, Math.max(x0 - search.re, search.re - (x0+size)));
+			double dy=Math.max(0, Math.max(y0 - search.im, search.im - (y0+size)));
+			if(search.d2<dx*dx + dy*dy)
+				return;
+			if(children==null){
+				for(int i=0; i<n; i++){
+					double ex=items[i].re() - search.re, ey=items[i].im() - search.im;
+					double d2=ex*ex + ey*ey;
+					if(d2<=search.d2){
+						search.d2=d2;
+						search.best=items[i];
+					}
+				}
+				return;
+			}
+			//The quarter of the point first, because it likely has the nearest.
+			int first=contains(search.re, search.im) ? index(search.re, search.im) : 0;
+			if(children[first]!=null)
+				children[first].nearest(search);
+			for(int i=0; i<4; i++)
+				if(i!=first && children[i]!=null)
+					children[i].nearest(search);
+		}
+	}
+
+	/** The state of a search for the nearest number. */
+	private static final class Search{
+		final double re, im;
+
+		/** Squared distance to the best so far, or to the limit. */
+		double d2;
+		EC best;
+
+		Search(double re, double im, double d2){
+			this.re=re;
+			this.im=im;
+			this.d2=d2;
+		}
+	}
+}
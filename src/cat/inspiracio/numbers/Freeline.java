@@ -19,14 +19,19 @@ package cat.inspiracio.numbers;
 
 
 // Referenced classes of package bunkenba.numbers:
-//            Piclet, ECList
+//            Piclet, ECList, Polyline
 
 public class Freeline extends Piclet
 {
 
     public Freeline(ECList eclist)
     {
-        super.samples = eclist;
+        super.samples = Polyline.of(eclist);
+    }
+
+    public Freeline(Polyline polyline)
+    {
+        super.samples = polyline;
     }
 
     public double top()
@@ -19,7 +19,7 @@ package cat.inspiracio.numbers;
 
 
 // Referenced classes of package bunkenba.numbers:
-//            Piclet, EC, ECList, PartialException
+//            Piclet, EC, Polyline, PartialException
 
 public class Line extends Piclet
 {
@@ -50,17 +50,24 @@ public class Line extends Piclet
         return Math.min(start.re(), end.re());
     }
 
+    public EC at(double t)
+    {
+        if(!start.isFinite() || !end.isFinite())
+            return EC.INFINITY;
+        return EC.mkCartesian(start.re() + t * (end.re() - start.re()), start.im() + t * (end.im() - start.im()));
+    }
+
     protected void sample()
     {
         try
         {
             EC ec = end.subtract(start).divide(30D);
             EC ec1 = start;
-            super.samples = new ECList(ec1, super.samples);
+            super.samples.add(ec1);
             for(int i = 0; i < 30; i++)
             {
                 ec1 = ec1.add(ec);
-                super.samples = new ECList(ec1, super.samples);
+                super.samples.add(ec1);
             }
 
             return;
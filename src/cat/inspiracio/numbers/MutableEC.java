@@ -0,0 +1,219 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+/** An extended complex number that changes, for calculations that
+ * should not make objects.
+ * <p>
+ * Every operation changes this number to its result and returns this,
+ * so that operations chain: z.multiply(w).add(one).exp().
+ * The results are exactly those of the corresponding methods of EC.
+ * Where EC throws a PartialException, the number becomes undefined
+ * instead, without an exception, and every operation on an undefined
+ * number, or with one, is undefined too.
+ * <p>
+ * Not thread-safe: every thread should have its own. */
+public final class MutableEC{
+
+	//State -----------------------------------------------------------------
+
+	/** The value, as ECMath writes it: infinity is (Infinity, Infinity). */
+	private final double[] re=new double[1];
+	private final double[] im=new double[1];
+
+	/** If undefined, the value is garbage. */
+	private boolean undefined;
+
+	//Constructors ----------------------------------------------------------
+
+	/** Zero. */
+	public MutableEC(){}
+
+	public MutableEC(double re, double im){set(re, im);}
+
+	public MutableEC(EC c){set(c);}
+
+	//Accessors -------------------------------------------------------------
+
+	/** Like EC.re(), or NaN if undefined. */
+	public double re(){return undefined ? Double.NaN : re[0];}
+
+	/** Like EC.im(), or NaN if undefined. */
+	public double im(){return undefined ? Double.NaN : im[0];}
+
+	public boolean isFinite(){return !undefined && ECMath.isFinite(re[0]);}
+
+	/** Has an operation been undefined, where EC would have thrown a PartialException? */
+	public boolean isUndefined(){return undefined;}
+
+	public MutableEC setUndefined(){
+		undefined=true;
+		return this;
+	}
+
+	/** Like EC.mkCartesian(double, double). */
+	public MutableEC set(double r, double i){
+		undefined=false;
+		if(Double.isInfinite(r) || Double.isInfinite(i)){
+			re[0]=Double.POSITIVE_INFINITY;
+			im[0]=Double.POSITIVE_INFINITY;
+		}else{
+			re[0]=r;
+			im[0]=i;
+		}
+		return this;
+	}
+
+	public MutableEC set(EC c){
+		undefined=false;
+		re[0]=c.re();
+		im[0]=c.im();
+		return this;
+	}
+
+	public MutableEC set(MutableEC c){
+		undefined=c.undefined;
+		re[0]=c.re[0];
+		im[0]=c.im[0];
+		return this;
+	}
+
+	/** Makes an immutable EC of the value.
+	 * @return null if undefined */
+	public EC toEC(){return undefined ? null : EC.mkCartesian(re[0], im[0]);}
+
+	@Override public String toString(){return undefined ? "undefined" : toEC().toString();}
+
+	//Arithmetic ------------------------------------------------------------
+
+	public MutableEC add(MutableEC b){
+		undefined= undefined || b.undefined || !ECMath.tryAdd(re[0], im[0], b.re[0], b.im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC subtract(MutableEC b){
+		undefined= undefined || b.undefined || !ECMath.trySubtract(re[0], im[0], b.re[0], b.im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC multiply(MutableEC b){
+		undefined= undefined || b.undefined || !ECMath.tryMultiply(re[0], im[0], b.re[0], b.im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC divide(MutableEC b){
+		undefined= undefined || b.undefined || !ECMath.tryDivide(re[0], im[0], b.re[0], b.im[0], re, im, 0);
+		return this;
+	}
+
+	/** This to the power b. */
+	public MutableEC power(MutableEC b){
+		undefined= undefined || b.undefined || !ECMath.tryPower(re[0], im[0], b.re[0], b.im[0], re, im, 0);
+		return this;
+	}
+
+	//Unary functions -------------------------------------------------------
+
+	public MutableEC negate(){
+		if(!undefined)
+			ECMath.negate(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC conj(){
+		if(!undefined)
+			ECMath.conj(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC rePart(){
+		if(!undefined)
+			ECMath.rePart(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC imPart(){
+		if(!undefined)
+			ECMath.imPart(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC modulus(){
+		if(!undefined)
+			ECMath.modulus(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC argument(){
+		if(!undefined)
+			ECMath.argument(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC opp(){
+		if(!undefined)
+			ECMath.opp(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC exp(){
+		if(!undefined)
+			ECMath.exp(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC ln(){
+		undefined= undefined || !ECMath.tryLn(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC fac(){
+		undefined= undefined || !ECMath.tryFac(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC sin(){
+		undefined= undefined || !ECMath.trySin(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC cos(){
+		undefined= undefined || !ECMath.tryCos(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC tan(){
+		undefined= undefined || !ECMath.tryTan(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC sinh(){
+		undefined= undefined || !ECMath.trySinh(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC cosh(){
+		undefined= undefined || !ECMath.tryCosh(re[0], im[0], re, im, 0);
+		return this;
+	}
+
+	public MutableEC tanh(){
+		undefined= undefined || !ECMath.tryTanh(re[0], im[0], re, im, 0);
+		return this;
+	}
+}
@@ -21,6 +21,7 @@ import cat.inspiracio.say.SayException;
 
 /** A partial function has been called outside its domain. */
 public final class PartialException extends SayException{
+	private static final long serialVersionUID=1L;
 	
 	/** Make a new partial exception. 
 	 * @param s The undefined expression, like "ln 0". */
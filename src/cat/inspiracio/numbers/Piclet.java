@@ -19,20 +19,43 @@ package cat.inspiracio.numbers;
 
 
 // Referenced classes of package bunkenba.numbers:
-//            ECList
+//            Polyline
 
 public abstract class Piclet
 {
 
-    public ECList getSamples()
+    /** The points of this piclet, sampled the first time. */
+    public Polyline getSamples()
     {
         if(samples == null)
+        {
+            samples = new Polyline();
             sample();
+        }
         return samples;
     }
 
+    /** Adds the points of this piclet to samples. */
     protected abstract void sample();
 
+    /** The point of this piclet at parameter t, from its start, 0, to its
+     * end, 1, as sample() goes. This one goes along the samples. */
+    public EC at(double t)
+    {
+        Polyline polyline = getSamples();
+        int n = polyline.size();
+        if(n == 0)
+            return EC.INFINITY;
+        double u = Math.max(0.0D, Math.min(1.0D, t)) * (double)(n - 1);
+        int i = (int)u;
+        if(i >= n - 1)
+            return polyline.get(n - 1);
+        double w = u - (double)i;
+        if(!polyline.isFinite(i) || !polyline.isFinite(i + 1))
+            return polyline.get(w < 0.5D ? i : i + 1);
+        return EC.mkCartesian(polyline.re(i) + w * (polyline.re(i + 1) - polyline.re(i)), polyline.im(i) + w * (polyline.im(i + 1) - polyline.im(i)));
+    }
+
     public abstract double top();
 
     public abstract double bottom();
@@ -46,5 +69,5 @@ public abstract class Piclet
     }
 
     static final int SAMPLE_DENSITY = 30;
-    protected ECList samples;
+    protected Polyline samples;
 }
@@ -0,0 +1,192 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** A sequence of complex numbers, such as the samples of a piclet.
+ * <p>
+ * The numbers are packed in two arrays, the real parts and the imaginary
+ * parts, and a bitset says which numbers are finite, so that a polyline of
+ * n points is three objects rather than 2n. It grows as numbers are added.
+ * Infinity is kept as EC.re() and EC.im() give it, (Infinity, Infinity). */
+public final class Polyline implements Iterable<EC>{
+
+	private static final int CAPACITY=32;
+
+	//State -----------------------------------------------------------------
+
+	private double[] re;
+	private double[] im;
+
+	/** Bit i is set if number i is finite. */
+	private final BitSet finite;
+
+	private int size;
+
+	//Constructors ----------------------------------------------------------
+
+	public Polyline(){this(CAPACITY);}
+
+	/** @param capacity How many numbers it will hold before it grows. */
+	public Polyline(int capacity){
+		capacity=Math.max(1, capacity);
+		re=new double[capacity];
+		im=new double[capacity];
+		finite=new BitSet(capacity);
+	}
+
+	/** Makes a copy of another polyline. */
+	public Polyline(Polyline other){
+		this(other.size);
+		System.arraycopy(other.re, 0, re, 0, other.size);
+		System.arraycopy(other.im, 0, im, 0, other.size);
+		finite.or(other.finite);
+		size=other.size;
+	}
+
+	/** Makes a polyline of the numbers of a list, in the order of the list.
+	 * @param list May be null, for no numbers. */
+	public static Polyline of(ECList list){
+		Polyline p=new Polyline();
+		for(; list!=null; list=list.tail())
+			p.add(list.head());
+		return p;
+	}
+
+	//Accessors -------------------------------------------------------------
+
+	/** How many numbers. */
+	public int size(){return size;}
+
+	public boolean isEmpty(){return size==0;}
+
+	/** The real part of number i, as EC.re() gives it. */
+	public double re(int i){
+		check(i);
+		return re[i];
+	}
+
+	/** The imaginary part of number i, as EC.im() gives it. */
+	public double im(int i){
+		check(i);
+		return im[i];
+	}
+
+	/** Is number i finite? */
+	public boolean isFinite(int i){
+		check(i);
+		return finite.get(i);
+	}
+
+	/** Number i, as a new EC. */
+	public EC get(int i){
+		check(i);
+		return finite.get(i) ? EC.mkCartesian(re[i], im[i]) : EC.INFINITY;
+	}
+
+	/** Iterates the numbers from the first, making an EC for each. */
+	@Override public Iterator<EC> iterator(){
+		return new Iterator<EC>(){
+			private int i;
+			@Override public boolean hasNext(){return i<size;}
+			@Override public EC next(){
+				if(size<=i)
+					throw new NoSuchElementException();
+				return get(i++);
+			}
+			@Override public void remove(){throw new UnsupportedOperationException();}
+		};
+	}
+
+	/** Copies the real parts into an array of size() numbers. */
+	public double[] toRe(){return Arrays.copyOf(re, size);}
+
+	/** Copies the imaginary parts into an array of size() numbers. */
+	public double[] toIm(){return Arrays.copyOf(im, size);}
+
+	//Methods ---------------------------------------------------------------
+
+	/** Appends a number. */
+	public void add(EC c){
+		if(c.isFinite())
+			add(c.re(), c.im());
+		else
+			addInfinity();
+	}
+
+	/** Appends a number. If a part is infinite, the number is infinity, as in EC.mkCartesian. */
+	public void add(double r, double i){
+		if(Double.isInfinite(r) || Double.isInfinite(i)){
+			addInfinity();
+			return;
+		}
+		grow();
+		re[size]=r;
+		im[size]=i;
+		finite.set(size);
+		size++;
+	}
+
+	/** Appends infinity. */
+	public void addInfinity(){
+		grow();
+		re[size]=Double.POSITIVE_INFINITY;
+		im[size]=Double.POSITIVE_INFINITY;
+		size++;
+	}
+
+	/** Forgets all numbers, keeping the arrays. */
+	public void clear(){
+		finite.clear();
+		size=0;
+	}
+
+	/** Maps all numbers through f at once.
+	 * @return The images, in order. The numbers where f is undefined are
+	 * 	left out, as the piclets leave out samples they cannot make. */
+	public Polyline map(ComplexFunction f)throws BugException{
+		double[] r=toRe();
+		double[] i=toIm();
+		f.evaluate(r, i, r, i, size);
+		Polyline p=new Polyline(size);
+		for(int j=0; j<size; j++)
+			if(!Double.isNaN(r[j]) && !Double.isNaN(i[j]))
+				p.add(r[j], i[j]);
+		return p;
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	private void check(int i){
+		if(i<0 || size<=i)
+			throw new IndexOutOfBoundsException(i + " of " + size);
+	}
+
+	/** Makes room for one more number. */
+	private void grow(){
+		if(size<re.length)
+			return;
+		int capacity=re.length*2;
+		re=Arrays.copyOf(re, capacity);
+		im=Arrays.copyOf(im, capacity);
+	}
+}
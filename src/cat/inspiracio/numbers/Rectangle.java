@@ -19,7 +19,7 @@ package cat.inspiracio.numbers;
 
 
 // Referenced classes of package bunkenba.numbers:
-//            Piclet, EC, ECList, PartialException
+//            Piclet, EC, Polyline, PartialException
 
 public class Rectangle extends Piclet
 {
@@ -81,44 +81,56 @@ public class Rectangle extends Piclet
         return Math.abs(botLeft.re() - botRight.re());
     }
 
+    /** Goes round once, anticlockwise from botLeft. */
+    public EC at(double t)
+    {
+        EC aec[] = {botLeft, botRight, topRight, topLeft, botLeft};
+        double u = Math.max(0.0D, Math.min(1.0D, t)) * 4D;
+        int i = Math.min(3, (int)u);
+        double w = u - (double)i;
+        EC ec = aec[i];
+        EC ec1 = aec[i + 1];
+        return EC.mkCartesian(ec.re() + w * (ec1.re() - ec.re()), ec.im() + w * (ec1.im() - ec.im()));
+    }
+
     protected void sample()
     {
         try
         {
             EC ec = botRight.subtract(botLeft).divide(30D);
             EC ec1 = botLeft;
-            super.samples = new ECList(ec1, super.samples);
+            super.samples.add(ec1);
             for(int i = 0; i < 30; i++)
             {
                 ec1 = ec1.add(ec);
-                super.samples = new ECList(ec1, super.samples);
+                super.samples.add(ec1);
             }
 
             ec = topRight.subtract(botRight).divide(30D);
             ec1 = botRight;
-            super.samples = new ECList(ec1, super.samples);
+            super.samples.add(ec1);
             for(int j = 0; j < 30; j++)
             {
                 ec1 = ec1.add(ec);
-                super.samples = new ECList(ec1, super.samples);
+                super.samples.add(ec1);
             }
 
             ec = topLeft.subtract(topRight).divide(30D);
             ec1 = topRight;
-            super.samples = new ECList(ec1, super.samples);
+            super.samples.add(ec1);
             for(int k = 0; k < 30; k++)
             {
                 ec1 = ec1.add(ec);
-                super.samples = new ECList(ec1, super.samples);
+                super.samples.add(ec1);
             }
 
             ec = botLeft.subtract(topLeft).divide(30D);
             ec1 = topLeft;
-            super.samples = new ECList(ec1, super.samples);
+            super.samples.add(ec1);
             for(int l = 0; l < 30; l++)
             {
                 ec1 = ec1.add(ec);
-                super.samples = new ECList(ec1, super.samples);
+                super.samples.add(ec1);
             }
 
             return;
@@ -0,0 +1,181 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.numbers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/** Evaluates a complex function on a rectangular grid of points, on all cores.
+ * <p>
+ * The grid has columns * rows points, from left to right and from top to
+ * bottom, the corners included: the point of column c and row r is
+ * left + c*(right-left)/(columns-1) + i*(top - r*(top-bottom)/(rows-1)).
+ * The results are in row-major arrays, at index r*columns + c, encoded as
+ * ComplexFunction gives them: infinity is (Infinity, Infinity), and
+ * undefined is (NaN, NaN).
+ * <p>
+ * The grid is split into bands of rows, and the bands are evaluated
+ * on a pool of threads. The function must allow several threads to
+ * evaluate it at the same time, as Program and the classes of
+ * ClassCompiler do. The threads take the settings of the ECContext of the
+ * calling thread. While the argument is continuous, the result depends
+ * on the order of the points, so then the grid is evaluated in order,
+ * on the calling thread. */
+public final class Tabulator{
+
+	/** About how many points a band has, at most. */
+	static final int BAND=4096;
+
+	/** How many bands per thread, at least, so that the threads finish together. */
+	static final int BANDS_PER_THREAD=4;
+
+	private static final Tabulator instance=new Tabulator(Runtime.getRuntime().availableProcessors());
+
+	//State -----------------------------------------------------------------
+
+	private final int threads;
+
+	private final ExecutorService executor;
+
+	//Constructors ----------------------------------------------------------
+
+	/** Makes a tabulator with its own threads. Call shutdown() when done.
+	 * @param threads How many threads, at least 1. */
+	public Tabulator(int threads){
+		if(threads<1)
+			throw new IllegalArgumentException("threads " + threads);
+		this.threads=threads;
+		executor=Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			private int n;
+			@Override public synchronized Thread newThread(Runnable r){
+				Thread thread=new Thread(r, "Tabulator-" + ++n);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/** The tabulator shared by everybody, with a thread per core. */
+	public static Tabulator getInstance(){return instance;}
+
+	//Methods ---------------------------------------------------------------
+
+	/** Evaluates f on a grid over the bounds of a region, such as a Rectangle.
+	 * @return {re, im}: the real and imaginary parts of the results. */
+	public double[][] tabulate(ComplexFunction f, Piclet region, int columns, int rows)throws BugException, InterruptedException{
+		int n=columns*rows;
+		double[] re=new double[n];
+		double[] im=new double[n];
+		tabulate(f, region.left(), region.right(), region.bottom(), region.top(), columns, rows, re, im);
+		return new double[][]{re, im};
+	}
+
+	/** Evaluates f on a grid.
+	 * @param outRe Receives the real parts, at least columns*rows long.
+	 * @param outIm Receives the imaginary parts, at least columns*rows long. */
+	public void tabulate(final ComplexFunction f, double left, double right, double bottom, double top, final int columns, int rows, final double[] outRe, final double[] outIm)throws BugException, InterruptedException{
+		if(columns<1 || rows<1)
+			throw new IllegalArgumentException(columns + "x" + rows);
+		final Grid grid=new Grid(left, right, bottom, top, columns, rows);
+		final ECContext settings=ECContext.get();
+
+		int band=Math.max(1, Math.min(BAND/columns, (rows + threads*BANDS_PER_THREAD - 1) / (threads*BANDS_PER_THREAD)));
+		if(threads==1 || rows<=band || settings.isArgContinuous()){
+			grid.evaluate(f, 0, rows, outRe, outIm);
+			return;
+		}
+
+		List<Callable<Void>> tasks=new ArrayList<Callable<Void>>();
+		for(int from=0; from<rows; from+=band){
+			final int a=from;
+			final int b=Math.min(rows, from+band);
+			tasks.add(new Callable<Void>(){
+				@Override public Void call()throws BugException{
+					ECContext.get().setSettings(settings);
+					grid.evaluate(f, a, b, outRe, outIm);
+					return null;
+				}
+			});
+		}
+		List<Future<Void>> futures=executor.invokeAll(tasks);
+		for(Future<Void> future : futures)
+			try{
+				future.get();
+			}catch(ExecutionException e){
+				Throwable cause=e.getCause();
+				if(cause instanceof BugException)
+					throw (BugException)cause;
+				if(cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if(cause instanceof Error)
+					throw (Error)cause;
+				throw new BugException(String.valueOf(cause));
+			}
+	}
+
+	/** Stops the threads of this tabulator. Not for the shared one. */
+	public void shutdown(){
+		if(this==instance)
+			throw new IllegalStateException("shared tabulator");
+		executor.shutdownNow();
+	}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** The points of a grid. */
+	private static final class Grid{
+
+		private final double left, top, dx, dy;
+		private final int columns;
+
+		Grid(double left, double right, double bottom, double top, int columns, int rows){
+			this.left=left;
+			this.top=top;
+			this.dx= columns==1 ? 0 : (right-left)/(columns-1);
+			this.dy= rows==1 ? 0 : (top-bottom)/(rows-1);
+			this.columns=columns;
+		}
+
+		/** Evaluates f on the rows from a to b. */
+		void evaluate(ComplexFunction f, int a, int b, double[] outRe, double[] outIm)throws BugException{
+			int n=(b-a)*columns;
+			//The first band goes straight into the results.
+			double[] re= a==0 ? outRe : new double[n];
+			double[] im= a==0 ? outIm : new double[n];
+			for(int r=a, i=0; r<b; r++){
+				double y=top - r*dy;
+				for(int c=0; c<columns; c++, i++){
+					re[i]=left + c*dx;
+					im[i]=y;
+				}
+			}
+			f.evaluate(re, im, re, im, n);
+			if(a==0)
+				return;
+			int offset=a*columns;
+			System.arraycopy(re, 0, outRe, offset, n);
+			System.arraycopy(im, 0, outIm, offset, n);
+		}
+	}
+}
@@ -0,0 +1,551 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cat.inspiracio.numbers.ComplexFunction;
+
+/** Translates a Program into a JVM class that implements ComplexFunction.
+ * <p>
+ * The class has one method, a loop over the points whose body is the
+ * program as straight-line code: every stack slot of the program becomes
+ * two local double variables. Addition, subtraction, multiplication,
+ * negation, conj, Re and Im are inlined as arithmetic for finite operands;
+ * the other cases and operations call the ECMath kernels, which the JIT
+ * can inline in turn. Where a kernel is undefined, the code branches to
+ * the end of the loop body, so no exception is thrown. The results are
+ * exactly those of the program.
+ * <p>
+ * Where a class cannot be defined, as on Dalvik, which does not run
+ * JVM classes, or if anything else goes wrong, compile() returns the
+ * program itself, which interprets the instructions. */
+public final class ClassCompiler{
+
+	/** Prefix of the names of generated classes. */
+	private static final String NAME="cat/inspiracio/parsing/CompiledFunction";
+
+	/** Counts generated classes, for unique names. */
+	private static int count;
+
+	//Local variables of the generated method.
+	private static final int RE=1;
+	private static final int IM=2;
+	private static final int OUT_RE=3;
+	private static final int OUT_IM=4;
+	private static final int N=5;
+	private static final int I=6;
+	/** double[1] arrays that receive the results of ECMath kernels. */
+	private static final int SCRATCH_RE=7;
+	private static final int SCRATCH_IM=8;
+	/** The first stack slot of the program. */
+	private static final int SLOTS=9;
+
+	//JVM opcodes
+	private static final int ICONST_0=0x03, ICONST_1=0x04, DCONST_0=0x0e;
+	private static final int LDC2_W=0x14, ILOAD=0x15, DLOAD=0x18, ALOAD=0x19, DALOAD=0x31, ISTORE=0x36;
+	private static final int DSTORE=0x39, ASTORE=0x3a, DASTORE=0x52, DUP2=0x5c;
+	private static final int DADD=0x63, DSUB=0x67, DMUL=0x6b, DNEG=0x77, IINC=0x84, DCMPL=0x97;
+	private static final int IFEQ=0x99, IFNE=0x9a, IF_ICMPGE=0xa2, GOTO=0xa7, RETURN=0xb1;
+	private static final int INVOKESPECIAL=0xb7, INVOKESTATIC=0xb8, NEWARRAY=0xbc, WIDE=0xc4, T_DOUBLE=7;
+
+	/** Binary and unary kernels of ECMath, by opcode of Program. */
+	private static final String[] KERNELS=new String[Program.BUG];
+	static{
+		KERNELS[Program.ADD]="add";
+		KERNELS[Program.SUBTRACT]="subtract";
+		KERNELS[Program.MULTIPLY]="multiply";
+		KERNELS[Program.DIVIDE]="divide";
+		KERNELS[Program.POWER]="power";
+		KERNELS[Program.NEGATE]="negate";
+		KERNELS[Program.CONJ]="conj";
+		KERNELS[Program.SINH]="sinh";
+		KERNELS[Program.COSH]="cosh";
+		KERNELS[Program.TANH]="tanh";
+		KERNELS[Program.ARG]="argument";
+		KERNELS[Program.COS]="cos";
+		KERNELS[Program.EXP]="exp";
+		KERNELS[Program.MOD]="modulus";
+		KERNELS[Program.OPP]="opp";
+		KERNELS[Program.SIN]="sin";
+		KERNELS[Program.TAN]="tan";
+		KERNELS[Program.IM]="imPart";
+		KERNELS[Program.LN]="ln";
+		KERNELS[Program.RE]="rePart";
+		KERNELS[Program.FAC]="fac";
+	}
+
+	/** Which kernels may be undefined. For them, the class calls tryX. */
+	private static final boolean[] PARTIAL=new boolean[Program.BUG];
+	static{
+		for(int op=Program.ADD; op<=Program.POWER; op++)
+			PARTIAL[op]=true;
+		int[] partial={Program.SINH, Program.COSH, Program.TANH, Program.COS, Program.SIN, Program.TAN, Program.LN, Program.FAC};
+		for(int op : partial)
+			PARTIAL[op]=true;
+	}
+
+	//State -----------------------------------------------------------------
+
+	private final Program program;
+
+	/** The constant pool of the class being generated. */
+	private final ByteArrayOutputStream pool=new ByteArrayOutputStream();
+	private final DataOutputStream poolOut=new DataOutputStream(pool);
+	private final Map<String, Integer> poolIndex=new HashMap<String, Integer>();
+	private int poolCount=1;
+
+	/** The code of the method being generated. */
+	private final Code code=new Code();
+
+	/** Where the code goes when the function is undefined at the current point. */
+	private final Label undefined=new Label();
+
+	//Constructors ----------------------------------------------------------
+
+	private ClassCompiler(Program program){
+		this.program=program;
+	}
+
+	//Interface -------------------------------------------------------------
+
+	/** Compiles the tree into a class, if possible, or else into a Program. */
+	public static ComplexFunction compile(SyntaxTree tree){
+		return compile(tree.compile());
+	}
+
+	/** Translates the program into a class, if possible.
+	 * @return An instance of the new class, or the program itself. */
+	public static ComplexFunction compile(Program program){
+		if(program.hasBug())
+			return program;//BugException is for the interpreter to throw.
+		try{
+			String name;
+			synchronized(ClassCompiler.class){
+				name=NAME + count++;
+			}
+			byte[] bytes=new ClassCompiler(program).generate(name);
+			Loader loader=new Loader(ComplexFunction.class.getClassLoader());
+			Class<?> c=loader.define(name.replace('/', '.'), bytes);
+			return (ComplexFunction)c.getDeclaredConstructor().newInstance();
+		}catch(Exception e){
+			return program;
+		}catch(LinkageError e){
+			return program;
+		}
+	}
+
+	//Class file ------------------------------------------------------------
+
+	/** Generates the class file. */
+	private byte[] generate(String name)throws IOException{
+		int thisClass=classRef(name);
+		int superClass=classRef("java/lang/Object");
+		int iface=classRef("cat/inspiracio/numbers/ComplexFunction");
+		int codeName=utf8("Code");
+		int initName=utf8("<init>");
+		int initDescriptor=utf8("()V");
+		int evaluateName=utf8("evaluate");
+		int evaluateDescriptor=utf8("([D[D[D[DI)V");
+
+		//The code adds to the constant pool, so it comes before the pool is written.
+		byte[] init=constructor(superClass);
+		byte[] evaluate=evaluate();
+
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+		DataOutputStream out=new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(49);//Java 5: verified without stack map frames
+		out.writeShort(poolCount);
+		pool.writeTo(out);
+		out.writeShort(0x31);//public final super
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(iface);
+		out.writeShort(0);//fields
+		out.writeShort(2);//methods
+		method(out, 1, initName, initDescriptor, codeName, 1, 1, init, null);
+		method(out, 1, evaluateName, evaluateDescriptor, codeName, 16, SLOTS + 4*Math.max(1, program.maxDepth()), evaluate, null);
+		out.writeShort(0);//attributes
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void method(DataOutputStream out, int access, int name, int descriptor, int codeName, int maxStack, int maxLocals, byte[] bytecode, int[] handlers)throws IOException{
+		int handlerCount= handlers==null ? 0 : handlers.length/4;
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1);
+		out.writeShort(codeName);
+		out.writeInt(12 + bytecode.length + 8*handlerCount);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(bytecode.length);
+		out.write(bytecode);
+		out.writeShort(handlerCount);
+		for(int h=0; h<4*handlerCount; h++)
+			out.writeShort(handlers[h]);
+		out.writeShort(0);
+	}
+
+	/** Code of the constructor: calls super(). */
+	private byte[] constructor(int superClass)throws IOException{
+		Code c=new Code();
+		c.op(ALOAD); c.u1(0);
+		c.op(INVOKESPECIAL); c.u2(methodRef(superClass, "<init>", "()V"));
+		c.op(RETURN);
+		return c.toByteArray();
+	}
+
+	//Constant pool -----------------------------------------------------------
+
+	private int utf8(String s)throws IOException{
+		Integer index=poolIndex.get("U" + s);
+		if(index!=null)
+			return index;
+		poolOut.writeByte(1);
+		poolOut.writeUTF(s);
+		return entry("U" + s, 1);
+	}
+
+	private int classRef(String name)throws IOException{
+		Integer index=poolIndex.get("C" + name);
+		if(index!=null)
+			return index;
+		int u=utf8(name);
+		poolOut.writeByte(7);
+		poolOut.writeShort(u);
+		return entry("C" + name, 1);
+	}
+
+	private int methodRef(int owner, String name, String descriptor)throws IOException{
+		String key="M" + owner + "." + name + descriptor;
+		Integer index=poolIndex.get(key);
+		if(index!=null)
+			return index;
+		int n=utf8(name);
+		int d=utf8(descriptor);
+		poolOut.writeByte(12);
+		poolOut.writeShort(n);
+		poolOut.writeShort(d);
+		int nameAndType=entry("N" + name + descriptor, 1);
+		poolOut.writeByte(10);
+		poolOut.writeShort(owner);
+		poolOut.writeShort(nameAndType);
+		return entry(key, 1);
+	}
+
+	private int doubleConstant(double d)throws IOException{
+		long bits=Double.doubleToRawLongBits(d);
+		String key="D" + bits;
+		Integer index=poolIndex.get(key);
+		if(index!=null)
+			return index;
+		poolOut.writeByte(6);
+		poolOut.writeLong(bits);
+		return entry(key, 2);
+	}
+
+	/** Registers the entry just written. Doubles take two slots. */
+	private int entry(String key, int slots){
+		int index=poolCount;
+		poolIndex.put(key, index);
+		poolCount+=slots;
+		return index;
+	}
+
+	//Code ------------------------------------------------------------------
+
+	/** Code of evaluate(double[], double[], double[], double[], int). */
+	private byte[] evaluate()throws IOException{
+		int[] instructions=program.code();
+
+		//double[] scratchRe=new double[1], scratchIm=new double[1];
+		code.op(ICONST_1); code.op(NEWARRAY); code.u1(T_DOUBLE); code.op(ASTORE); code.u1(SCRATCH_RE);
+		code.op(ICONST_1); code.op(NEWARRAY); code.u1(T_DOUBLE); code.op(ASTORE); code.u1(SCRATCH_IM);
+
+		//for(int i=0; i<n; i++)
+		code.op(ICONST_0); code.op(ISTORE); code.u1(I);
+		Label loop=new Label(), next=new Label(), end=new Label();
+		code.place(loop);
+		code.op(ILOAD); code.u1(I); code.op(ILOAD); code.u1(N); code.branch(IF_ICMPGE, end);
+
+		int sp=0;
+		for(int pc=0; pc<instructions.length; pc++){
+			int op=instructions[pc];
+			switch(op){
+			case Program.CONSTANT:
+				int k=instructions[++pc];
+				ldc(program.constantRe(k)); dstore(re(sp));
+				ldc(program.constantIm(k)); dstore(im(sp));
+				sp++;
+				break;
+			case Program.VARIABLE:
+				code.op(ALOAD); code.u1(RE); code.op(ILOAD); code.u1(I); code.op(DALOAD); dstore(re(sp));
+				code.op(ALOAD); code.u1(IM); code.op(ILOAD); code.u1(I); code.op(DALOAD); dstore(im(sp));
+				sp++;
+				break;
+			case Program.ADD:		sp--; add(sp-1, sp, DADD, op); break;
+			case Program.SUBTRACT:	sp--; add(sp-1, sp, DSUB, op); break;
+			case Program.MULTIPLY:	sp--; multiply(sp-1, sp); break;
+			case Program.DIVIDE:
+			case Program.POWER:		sp--; binaryKernel(op, sp-1, sp); break;
+			case Program.NEGATE:
+			case Program.CONJ:
+			case Program.RE:
+			case Program.IM:		simpleUnary(op, sp-1); break;
+			default:				unaryKernel(op, sp-1); break;
+			}
+		}
+
+		//outRe[i]=re0; outIm[i]=im0;
+		code.op(ALOAD); code.u1(OUT_RE); code.op(ILOAD); code.u1(I); dload(re(0)); code.op(DASTORE);
+		code.op(ALOAD); code.u1(OUT_IM); code.op(ILOAD); code.u1(I); dload(im(0)); code.op(DASTORE);
+
+		code.place(next);
+		code.op(IINC); code.u1(I); code.u1(1);
+		code.branch(GOTO, loop);
+
+		//undefined: outRe[i]=NaN; outIm[i]=NaN;
+		code.place(undefined);
+		code.op(ALOAD); code.u1(OUT_RE); code.op(ILOAD); code.u1(I); ldc(Double.NaN); code.op(DASTORE);
+		code.op(ALOAD); code.u1(OUT_IM); code.op(ILOAD); code.u1(I); ldc(Double.NaN); code.op(DASTORE);
+		code.branch(GOTO, next);
+
+		code.place(end);
+		code.op(RETURN);
+		return code.toByteArray();
+	}
+
+	/** a := a + b or a - b, inlined for finite operands. */
+	private void add(int a, int b, int dop, int op)throws IOException{
+		Label slow=new Label(), done=new Label();
+		ifInfinity(re(a), slow);
+		ifInfinity(re(b), slow);
+		dload(re(a)); dload(re(b)); code.op(dop); dstore(re(a));
+		dload(im(a)); dload(im(b)); code.op(dop); dstore(im(a));
+		cartesian(a);
+		code.branch(GOTO, done);
+		code.place(slow);
+		binaryKernel(op, a, b);
+		code.place(done);
+	}
+
+	/** a := a * b, inlined for finite non-zero operands. */
+	private void multiply(int a, int b)throws IOException{
+		Label slow=new Label(), done=new Label();
+		ifInfinity(re(a), slow);
+		ifInfinity(re(b), slow);
+		ifZero(a, slow);
+		ifZero(b, slow);
+		//re = ar*br - ai*bi; im = ar*bi + br*ai
+		dload(re(a)); dload(re(b)); code.op(DMUL); dload(im(a)); dload(im(b)); code.op(DMUL); code.op(DSUB);
+		dload(re(a)); dload(im(b)); code.op(DMUL); dload(re(b)); dload(im(a)); code.op(DMUL); code.op(DADD);
+		dstore(im(a));
+		dstore(re(a));
+		cartesian(a);
+		code.branch(GOTO, done);
+		code.place(slow);
+		binaryKernel(Program.MULTIPLY, a, b);
+		code.place(done);
+	}
+
+	/** Negate, conj, Re and Im, inlined for finite operands. */
+	private void simpleUnary(int op, int a)throws IOException{
+		Label slow=new Label(), done=new Label();
+		ifInfinity(re(a), slow);
+		switch(op){
+		case Program.NEGATE:
+			dload(re(a)); code.op(DNEG); dstore(re(a));
+			dload(im(a)); code.op(DNEG); dstore(im(a));
+			break;
+		case Program.CONJ:
+			dload(im(a)); code.op(DNEG); dstore(im(a));
+			break;
+		case Program.RE:
+			code.op(DCONST_0); dstore(im(a));
+			break;
+		case Program.IM:
+			dload(im(a)); dstore(re(a));
+			code.op(DCONST_0); dstore(im(a));
+			break;
+		}
+		cartesian(a);
+		code.branch(GOTO, done);
+		code.place(slow);
+		unaryKernel(op, a);
+		code.place(done);
+	}
+
+	/** a := kernel(a, b) */
+	private void binaryKernel(int op, int a, int b)throws IOException{
+		dload(re(a)); dload(im(a)); dload(re(b)); dload(im(b));
+		kernel(op, "(DDDD[D[DI)V", a);
+	}
+
+	/** a := kernel(a) */
+	private void unaryKernel(int op, int a)throws IOException{
+		dload(re(a)); dload(im(a));
+		kernel(op, "(DD[D[DI)V", a);
+	}
+
+	/** Calls the kernel with the operands on the stack and moves its result into slot a.
+	 * A kernel that may be undefined is called as tryX, and if it returns false,
+	 * the code jumps to undefined, without an exception. */
+	private void kernel(int op, String descriptor, int a)throws IOException{
+		code.op(ALOAD); code.u1(SCRATCH_RE);
+		code.op(ALOAD); code.u1(SCRATCH_IM);
+		code.op(ICONST_0);
+		int ecmath=classRef("cat/inspiracio/numbers/ECMath");
+		if(PARTIAL[op]){
+			String name="try" + Character.toUpperCase(KERNELS[op].charAt(0)) + KERNELS[op].substring(1);
+			code.op(INVOKESTATIC); code.u2(methodRef(ecmath, name, descriptor.replace(")V", ")Z")));
+			code.branch(IFEQ, undefined);
+		}else{
+			code.op(INVOKESTATIC); code.u2(methodRef(ecmath, KERNELS[op], descriptor));
+		}
+		code.op(ALOAD); code.u1(SCRATCH_RE); code.op(ICONST_0); code.op(DALOAD); dstore(re(a));
+		code.op(ALOAD); code.u1(SCRATCH_IM); code.op(ICONST_0); code.op(DALOAD); dstore(im(a));
+	}
+
+	/** Like EC.mkCartesian: if either part of slot a is infinite, slot a becomes infinity. */
+	private void cartesian(int a)throws IOException{
+		Label infinite=new Label(), done=new Label();
+		int isInfinite=methodRef(classRef("java/lang/Double"), "isInfinite", "(D)Z");
+		dload(re(a)); code.op(INVOKESTATIC); code.u2(isInfinite); code.branch(IFNE, infinite);
+		dload(im(a)); code.op(INVOKESTATIC); code.u2(isInfinite); code.branch(IFNE, infinite);
+		code.branch(GOTO, done);
+		code.place(infinite);
+		ldc(Double.POSITIVE_INFINITY); code.op(DUP2); dstore(re(a)); dstore(im(a));
+		code.place(done);
+	}
+
+	/** Jumps if the real part in the local is Infinity, meaning the number is infinity. */
+	private void ifInfinity(int local, Label label)throws IOException{
+		dload(local); ldc(Double.POSITIVE_INFINITY); code.op(DCMPL); code.branch(IFEQ, label);
+	}
+
+	/** Jumps if slot a is exactly zero. */
+	private void ifZero(int a, Label label)throws IOException{
+		Label nonZero=new Label();
+		dload(re(a)); code.op(DCONST_0); code.op(DCMPL); code.branch(IFNE, nonZero);
+		dload(im(a)); code.op(DCONST_0); code.op(DCMPL); code.branch(IFEQ, label);
+		code.place(nonZero);
+	}
+
+	private void ldc(double d)throws IOException{
+		code.op(LDC2_W); code.u2(doubleConstant(d));
+	}
+
+	private void dload(int local){local(DLOAD, local);}
+	private void dstore(int local){local(DSTORE, local);}
+
+	/** A load or store of a local. Locals beyond 255 need the wide form. */
+	private void local(int op, int local){
+		if(local<=0xff){
+			code.op(op); code.u1(local);
+		}else{
+			code.op(WIDE); code.op(op); code.u2(local);
+		}
+	}
+
+	/** Local of the real part of stack slot k. */
+	private static int re(int k){return SLOTS + 4*k;}
+
+	/** Local of the imaginary part of stack slot k. */
+	private static int im(int k){return SLOTS + 4*k + 2;}
+
+	//Helper classes --------------------------------------------------------
+
+	/** A position in the code, maybe not known yet. */
+	private static final class Label{
+		int position=-1;
+		/** Branch instructions waiting for the position: their offsets. */
+		final List<Integer> branches=new ArrayList<Integer>();
+	}
+
+	/** Bytecode of a method, with forward branches. */
+	private static final class Code{
+		private byte[] bytes=new byte[256];
+		private int size;
+
+		void op(int op){u1(op);}
+
+		void u1(int b){
+			if(size==bytes.length){
+				byte[] bs=new byte[2*bytes.length];
+				System.arraycopy(bytes, 0, bs, 0, size);
+				bytes=bs;
+			}
+			bytes[size++]=(byte)b;
+		}
+
+		void u2(int s){
+			u1(s>>8);
+			u1(s);
+		}
+
+		/** A branch with 16-bit offset to the label. */
+		void branch(int op, Label label){
+			int at=size;
+			op(op);
+			if(0<=label.position)
+				u2(label.position - at);
+			else{
+				label.branches.add(at);
+				u2(0);
+			}
+		}
+
+		/** Places the label here, and fixes the branches waiting for it. */
+		void place(Label label){
+			label.position=size;
+			for(int at : label.branches){
+				int offset=size - at;
+				bytes[at+1]=(byte)(offset>>8);
+				bytes[at+2]=(byte)offset;
+			}
+		}
+
+		/** @throws IOException if the code is too long for 16-bit branches. */
+		byte[] toByteArray()throws IOException{
+			if(32767<size)
+				throw new IOException("method too long: " + size);
+			byte[] bs=new byte[size];
+			System.arraycopy(bytes, 0, bs, 0, size);
+			return bs;
+		}
+	}
+
+	/** Defines one generated class, so that it can be unloaded with its function. */
+	private static final class Loader extends ClassLoader{
+		Loader(ClassLoader parent){super(parent);}
+		Class<?> define(String name, byte[] bytes){
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.text.ParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cat.inspiracio.numbers.BugException;
+
+/** A bounded cache of parsed expressions, thread-safe.
+ * <p>
+ * The key is the expression without blanks, as SyntaxTree.stripBlanks gives it.
+ * For every expression the cache keeps the syntax tree, the simplified tree,
+ * and, once somebody asks for it, the compiled program. When the cache is
+ * full, it evicts the expression that has been used least recently.
+ * <p>
+ * Syntax trees and programs are not changed once made, so an entry may be
+ * used by several threads. Expressions that do not parse are not cached.
+ * <p>
+ * A tree depends on the function names there were when it was parsed.
+ * An entry parsed before SyntaxTree.addFunctionName is stale, and get
+ * parses its expression again. */
+public final class ExpressionCache{
+
+	/** How many expressions the shared cache keeps by default. */
+	public static final int DEFAULT_SIZE=64;
+
+	private static final ExpressionCache instance=new ExpressionCache(DEFAULT_SIZE);
+
+	/** What the cache knows about an expression. */
+	public static final class Entry{
+
+		private final String expression;
+		private final SyntaxTree tree;
+		private final SyntaxTree simplified;
+
+		/** The version of FunctionNames it was parsed with. */
+		private final int names;
+
+		private Entry(String expression, SyntaxTree tree, SyntaxTree simplified, int names){
+			this.expression=expression;
+			this.tree=tree;
+			this.simplified=simplified;
+			this.names=names;
+		}
+
+		/** The expression without blanks. */
+		public String getExpression(){return expression;}
+
+		/** The syntax tree, as SyntaxTree.parse makes it. */
+		public SyntaxTree getTree(){return tree;}
+
+		/** The tree after SyntaxTree.partialEvaluate(). */
+		public SyntaxTree getSimplified(){return simplified;}
+
+		/** The simplified tree compiled into a program.
+		 * The tree keeps it, so it is compiled only once. */
+		public Program getProgram(){return simplified.compile();}
+	}
+
+	//State -----------------------------------------------------------------
+
+	/** Guarded by this. In access order, so that the eldest is used least recently. */
+	private final LinkedHashMap<String, Entry> entries;
+
+	private int maxSize;
+
+	//Statistics, guarded by this.
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	//Constructors ----------------------------------------------------------
+
+	/** Makes an empty cache.
+	 * @param maxSize How many expressions it keeps, at least 1. */
+	public ExpressionCache(int maxSize){
+		if(maxSize<1)
+			throw new IllegalArgumentException("maxSize " + maxSize);
+		this.maxSize=maxSize;
+		entries=new LinkedHashMap<String, Entry>(16, 0.75f, true){
+			private static final long serialVersionUID=1L;
+			@Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest){
+				if(size()<=ExpressionCache.this.maxSize)
+					return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/** The cache shared by the calculator and batch jobs. */
+	public static ExpressionCache getInstance(){return instance;}
+
+	//Interface -------------------------------------------------------------
+
+	/** Gets the entry for an expression, parsing it if it is not cached.
+	 * @throws ParseException like SyntaxTree.parse */
+	public Entry get(String expression)throws ParseException{
+		String key=SyntaxTree.stripBlanks(expression);
+		synchronized(this){
+			Entry entry=entries.get(key);
+			if(entry!=null && entry.names==FunctionNames.version()){
+				hits++;
+				return entry;
+			}
+			misses++;
+		}
+
+		//Parse without holding the lock.
+		int names=FunctionNames.version();
+		SyntaxTree tree=SyntaxTree.parse(key);
+		SyntaxTree simplified;
+		try{
+			simplified=tree.partialEvaluate();
+		}catch(BugException be){
+			//Then evaluating throws it too.
+			simplified=tree;
+		}
+		Entry entry=new Entry(key, tree, simplified, names);
+
+		synchronized(this){
+			Entry other=entries.get(key);
+			if(other!=null && names<=other.names)
+				return other;//another thread was quicker
+			entries.put(key, entry);
+			return entry;
+		}
+	}
+
+	/** Removes all entries. The statistics stay. */
+	public synchronized void clear(){entries.clear();}
+
+	/** How many expressions are cached. */
+	public synchronized int size(){return entries.size();}
+
+	public synchronized int getMaxSize(){return maxSize;}
+
+	/** Changes how many expressions the cache keeps,
+	 * evicting the least recently used ones if necessary. */
+	public synchronized void setMaxSize(int maxSize){
+		if(maxSize<1)
+			throw new IllegalArgumentException("maxSize " + maxSize);
+		this.maxSize=maxSize;
+		Iterator<String> keys=entries.keySet().iterator();
+		while(maxSize<entries.size()){
+			keys.next();
+			keys.remove();
+			evictions++;
+		}
+	}
+
+	/** How many calls of get(String) found their expression cached. */
+	public synchronized long getHits(){return hits;}
+
+	/** How many calls of get(String) had to parse. */
+	public synchronized long getMisses(){return misses;}
+
+	/** How many entries have been evicted to make room. */
+	public synchronized long getEvictions(){return evictions;}
+
+	@Override public synchronized String toString(){
+		return "ExpressionCache[size=" + entries.size() + "/" + maxSize + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+}
@@ -0,0 +1,163 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The names of the functions, in a trie that finds the longest name
+ * at a position in one pass.
+ * <p>
+ * More names can be added at runtime. Adding copies the trie, so that
+ * tokenizers that are running keep a consistent one. */
+final class FunctionNames{
+
+	/** A node of the trie. The path from the root spells a prefix of a name. */
+	static final class Node{
+
+		/** How many characters from the root. */
+		final int depth;
+
+		/** If the path spells a whole name, the token of its function, like SINTOKEN. */
+		int token=SyntaxTree.NOTOKEN;
+
+		/** The next characters, and the nodes they lead to. */
+		private char[] keys=new char[0];
+		private Node[] children=new Node[0];
+
+		private Node(int depth){this.depth=depth;}
+
+		private Node child(char c){
+			for(int k=0; k<keys.length; k++)
+				if(keys[k]==c)
+					return children[k];
+			return null;
+		}
+
+		private Node addChild(char c){
+			Node child=child(c);
+			if(child!=null)
+				return child;
+			char[] ks=new char[keys.length+1];
+			Node[] cs=new Node[keys.length+1];
+			System.arraycopy(keys, 0, ks, 0, keys.length);
+			System.arraycopy(children, 0, cs, 0, keys.length);
+			ks[keys.length]=c;
+			cs[keys.length]=child=new Node(depth+1);
+			keys=ks;
+			children=cs;
+			return child;
+		}
+	}
+
+	/** All names with their tokens. Guarded by the class. */
+	private static final Map<String, Integer> names=new LinkedHashMap<String, Integer>();
+	static{
+		names.put("acos", SyntaxTree.ACOSTOKEN);
+		names.put("arg", SyntaxTree.ARGTOKEN);
+		names.put("asin", SyntaxTree.ASINTOKEN);
+		names.put("atan", SyntaxTree.ATANTOKEN);
+		names.put("conj", SyntaxTree.CONJTOKEN);
+		names.put("cosh", SyntaxTree.COSHTOKEN);
+		names.put("cos", SyntaxTree.COSTOKEN);
+		names.put("D", SyntaxTree.DTOKEN);
+		names.put("exp", SyntaxTree.EXPTOKEN);
+		names.put("Im", SyntaxTree.IMTOKEN);
+		names.put("ln", SyntaxTree.LNTOKEN);
+		names.put("mod", SyntaxTree.MODTOKEN);
+		names.put("opp", SyntaxTree.OPPTOKEN);
+		names.put("Re", SyntaxTree.RETOKEN);
+		names.put("sinh", SyntaxTree.SINHTOKEN);
+		names.put("sin", SyntaxTree.SINTOKEN);
+		names.put("tanh", SyntaxTree.TANHTOKEN);
+		names.put("tan", SyntaxTree.TANTOKEN);
+	}
+
+	/** The current trie. Never changed once published. */
+	private static volatile Node root=build();
+
+	/** The length of the longest name. */
+	private static volatile int maxLength=computeMaxLength();
+
+	/** Counts the tries published, so that parses with an older one can be recognised. */
+	private static volatile int version;
+
+	private FunctionNames(){}
+
+	/** Finds the longest function name that starts at i.
+	 * @return The node at the end of the name, with its token and length,
+	 * 	or null if no name starts at i. */
+	static Node match(CharSequence s, int i){
+		Node node=root;
+		Node match=null;
+		for(int j=i; j<s.length(); j++){
+			node=node.child(s.charAt(j));
+			if(node==null)
+				break;
+			if(node.token!=SyntaxTree.NOTOKEN)
+				match=node;
+		}
+		return match;
+	}
+
+	/** The token of a name, or NOTOKEN. */
+	static synchronized int token(String name){
+		Integer token=names.get(name);
+		return token==null ? SyntaxTree.NOTOKEN : token;
+	}
+
+	/** Adds a name for the function with the token. */
+	static synchronized void add(String name, int token){
+		names.put(name, token);
+		root=build();
+		maxLength=computeMaxLength();
+		version++;
+	}
+
+	/** Changes whenever a name is added. A tree parsed with another version
+	 * may have read a name as a product of variables and constants. */
+	static int version(){
+		return version;
+	}
+
+	/** The length of the longest name:
+	 * how far the tokenizer may look ahead to recognise a name. */
+	static int maxLength(){
+		return maxLength;
+	}
+
+	private static synchronized int computeMaxLength(){
+		int max=0;
+		for(String name : names.keySet())
+			max=Math.max(max, name.length());
+		return max;
+	}
+
+	/** Builds a trie of all names. */
+	private static synchronized Node build(){
+		Node r=new Node(0);
+		for(Map.Entry<String, Integer> e : names.entrySet()){
+			Node node=r;
+			String name=e.getKey();
+			for(int i=0; i<name.length(); i++)
+				node=node.addChild(name.charAt(i));
+			node.token=e.getValue();
+		}
+		return r;
+	}
+}
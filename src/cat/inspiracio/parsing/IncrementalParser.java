@@ -0,0 +1,191 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Parses an expression that changes by small edits, as the user types it.
+ * <p>
+ * Keeps the tokens of the expression. On an edit it re-reads only the tokens
+ * near the edited characters, until the new tokens meet the old ones again,
+ * and moves the tokens after them. The parser remembers the tree of every
+ * bracketed expression in its OPEN token; an edit forgets the trees of the
+ * brackets around it, so the next parse builds only those again.
+ * <p>
+ * getTree() gives the same tree, and throws the same ParseException,
+ * as SyntaxTree.parse on the whole text. Not thread-safe: use it from
+ * the thread that edits the text. */
+public final class IncrementalParser{
+
+	//State -----------------------------------------------------------------
+
+	/** The text, with blanks. */
+	private final StringBuilder text=new StringBuilder();
+
+	/** The text without blanks. The tokens refer to it. */
+	private final StringBuilder stripped=new StringBuilder();
+
+	/** The tokens of stripped, ending with END. */
+	private final ArrayList<Token> tokens=new ArrayList<Token>();
+
+	/** Result of the last parse, until the next edit. */
+	private boolean parsed;
+	private SyntaxTree tree;
+	private ParseException exception;
+
+	//Constructors ----------------------------------------------------------
+
+	public IncrementalParser(){
+		tokens.add(Token.symbol(Token.END, 0, 0));
+	}
+
+	//Methods ---------------------------------------------------------------
+
+	/** The whole text. */
+	public String getText(){return text.toString();}
+
+	/** Replaces the whole text. */
+	public void setText(CharSequence s){
+		text.setLength(0);
+		text.append(s);
+		stripped.setLength(0);
+		strip(s, 0, s.length(), stripped);
+		tokens.clear();
+		tokens.addAll(Tokenizer.tokenize(stripped));
+		parsed=false;
+	}
+
+	/** Replaces the characters from start to end of the text.
+	 * @param start Index of the first replaced character.
+	 * @param end Index after the last replaced character.
+	 * @param replacement The new characters. */
+	public void replace(int start, int end, CharSequence replacement){
+		if(start<0 || end<start || text.length()<end)
+			throw new IndexOutOfBoundsException(start + "," + end + " in " + text.length());
+
+		//Where is the edit in stripped?
+		int a=start - blanks(text, 0, start);
+		int b=a + (end-start) - blanks(text, start, end);
+		StringBuilder r=new StringBuilder(replacement.length());
+		strip(replacement, 0, replacement.length(), r);
+
+		text.replace(start, end, replacement.toString());
+		stripped.replace(a, b, r.toString());
+		if(a!=b || r.length()!=0){
+			relex(a, b, r.length());
+			parsed=false;
+		}
+	}
+
+	/** Parses the text.
+	 * @return The same tree as SyntaxTree.parse(getText()).
+	 * @throws ParseException The same as SyntaxTree.parse(getText()). */
+	public SyntaxTree getTree()throws ParseException{
+		if(!parsed){
+			tree=null;
+			exception=null;
+			try{
+				tree=Parser.parse(stripped, tokens);
+			}catch(ParseException e){
+				exception=e;
+			}
+			parsed=true;
+		}
+		if(exception!=null)
+			throw exception;
+		return tree;
+	}
+
+	@Override public String toString(){return text.toString();}
+
+	//Helpers ---------------------------------------------------------------
+
+	/** Re-reads the tokens after stripped[a, b) has been replaced by rlength characters. */
+	private void relex(int a, int b, int rlength){
+		int delta=rlength - (b-a);
+
+		//A token reads some characters after its end: first go back to the
+		//first token that may have read an edited character.
+		int look=Math.max(FunctionNames.maxLength(), 3) + 2;
+		int k=0;
+		while(tokens.get(k).kind!=Token.END && tokens.get(k).end() + look <= a)
+			k++;
+
+		//The first old token after the edit.
+		int m=k;
+		while(tokens.get(m).kind!=Token.END && tokens.get(m).position < b)
+			m++;
+
+		//Read new tokens until one starts where an old one starts,
+		//after the edit: from there on, the old tokens are right.
+		List<Token> fresh=new ArrayList<Token>();
+		int i=tokens.get(k).position;
+		int length=stripped.length();
+		int edited=a + rlength;
+		int j=m;
+		for(;;){
+			if(edited<=i){
+				while(tokens.get(j).kind!=Token.END && tokens.get(j).position + delta < i)
+					j++;
+				if(tokens.get(j).position + delta==i)
+					break;
+			}
+			if(i==length){
+				j=tokens.size()-1;	//END
+				break;
+			}
+			Token t=Tokenizer.next(stripped, i);
+			fresh.add(t);
+			i=t.end();
+		}
+
+		//Brackets that were open around the edit have changed.
+		for(int o=0; o<k; o++){
+			Token t=tokens.get(o);
+			if(t.group!=null && k<=o+t.groupTokens)
+				t.group=null;
+		}
+
+		List<Token> old=tokens.subList(k, j);
+		old.clear();
+		old.addAll(fresh);
+		if(delta!=0)
+			for(int o=k+fresh.size(); o<tokens.size(); o++)
+				tokens.get(o).position+=delta;
+	}
+
+	/** How many blanks are in s[start, end)? */
+	private static int blanks(CharSequence s, int start, int end){
+		int n=0;
+		for(int i=start; i<end; i++)
+			if(Character.isWhitespace(s.charAt(i)))
+				n++;
+		return n;
+	}
+
+	/** Appends s[start, end) without blanks. Like SyntaxTree.stripBlanks. */
+	private static void strip(CharSequence s, int start, int end, StringBuilder out){
+		for(int i=start; i<end; i++){
+			char c=s.charAt(i);
+			if(!Character.isWhitespace(c))
+				out.append(c);
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Parses a list of tokens into a syntax tree in one pass from left to right.
+ * <p>
+ * The grammar is that of the recursive parser that SyntaxTree had, which
+ * split at the last '+', then at the last '-', '*' and '/' outside
+ * brackets, and else read a product of juxtaposed factors:
+ * <pre>
+ * sum        = ['+'] difference {'+' difference}
+ * difference = ['-'] product {'-' product}
+ * product    = quotient {'*' quotient}
+ * quotient   = factors {'/' factors}
+ * factors    = factor {factor}
+ * factor     = primary {'!'} ['^' factors]
+ * primary    = '(' sum ')' | function factors | number | constant | variable
+ * </pre>
+ * A unary sign applies to the whole difference or product after it, and
+ * a function or an exponent takes the rest of the juxtaposed factors.
+ * The parser makes the same trees, and throws the same ParseExceptions,
+ * but it looks at every token once, and so takes linear time.
+ * <p>
+ * If the brackets are not balanced, there is no tree, and the exception
+ * depends on how the recursive parser scanned: see unbalanced().
+ * <p>
+ * The parser remembers the tree of every bracketed expression in its
+ * OPEN token, and reuses it when it parses the same tokens again. */
+final class Parser{
+
+	/** The expression, for messages that quote it. */
+	private final CharSequence source;
+
+	private final List<Token> tokens;
+
+	/** Index of the next token. */
+	private int next;
+
+	private Parser(CharSequence source, List<Token> tokens){
+		this.source=source;
+		this.tokens=tokens;
+	}
+
+	/** Parses the tokens of an expression.
+	 * @param s The expression without blanks.
+	 * @param tokens Its tokens, ending with END. */
+	static SyntaxTree parse(CharSequence s, List<Token> tokens)throws ParseException{
+		if(!balanced(tokens))
+			throw unbalanced(s, tokens);
+		Parser parser=new Parser(s, tokens);
+		SyntaxTree tree=parser.sum();
+		Token t=parser.peek();
+		if(t.kind!=Token.END)
+			throw new ParseException("unmatched bracket", t.position);
+		return tree;
+	}
+
+	//Grammar ---------------------------------------------------------------
+
+	private SyntaxTree sum()throws ParseException{
+		SyntaxTree tree;
+		if(peek().kind==Token.PLUS){
+			next++;
+			tree=new SyntaxTreeUnary(SyntaxTree.SUMTOKEN, difference());
+		}else
+			tree=difference();
+		while(peek().kind==Token.PLUS){
+			next++;
+			tree=new SyntaxTreeBinary(SyntaxTree.SUMTOKEN, tree, difference());
+		}
+		return tree;
+	}
+
+	private SyntaxTree difference()throws ParseException{
+		SyntaxTree tree;
+		if(peek().kind==Token.MINUS){
+			next++;
+			tree=new SyntaxTreeUnary(SyntaxTree.DIFFERENCETOKEN, product());
+		}else
+			tree=product();
+		while(peek().kind==Token.MINUS){
+			next++;
+			tree=new SyntaxTreeBinary(SyntaxTree.DIFFERENCETOKEN, tree, product());
+		}
+		return tree;
+	}
+
+	private SyntaxTree product()throws ParseException{
+		SyntaxTree tree=quotient();
+		while(peek().kind==Token.TIMES){
+			next++;
+			tree=new SyntaxTreeBinary(SyntaxTree.PRODUCTTOKEN, tree, quotient());
+		}
+		return tree;
+	}
+
+	private SyntaxTree quotient()throws ParseException{
+		SyntaxTree tree=factors();
+		while(peek().kind==Token.DIVIDE){
+			next++;
+			tree=new SyntaxTreeBinary(SyntaxTree.QUOTIENTTOKEN, tree, factors());
+		}
+		return tree;
+	}
+
+	/** Juxtaposed factors, like 2pi z. They must not be empty. */
+	private SyntaxTree factors()throws ParseException{
+		Token t=peek();
+		if(t.isTerminator())
+			throw new ParseException("SyntaxTree.parse(empty)", t.position);
+		SyntaxTree tree=factor();
+		while(!peek().isTerminator())
+			tree=new SyntaxTreeBinary(SyntaxTree.PRODUCTTOKEN, tree, factor());
+		return tree;
+	}
+
+	private SyntaxTree factor()throws ParseException{
+		SyntaxTree tree=primary();
+		while(peek().kind==Token.FACTORIAL){
+			next++;
+			tree=new SyntaxTreeUnary(SyntaxTree.FACTOKEN, tree);
+		}
+		if(peek().kind==Token.POWER){
+			next++;
+			tree=new SyntaxTreeBinary(SyntaxTree.POWERTOKEN, tree, factors());
+		}
+		return tree;
+	}
+
+	private SyntaxTree primary()throws ParseException{
+		Token t=tokens.get(next++);
+		switch(t.kind){
+		case Token.OPEN:
+			if(t.group!=null){
+				next+=t.groupTokens;
+				return t.group;
+			}
+			int open=next-1;
+			SyntaxTree tree=sum();
+			Token close=tokens.get(next++);
+			if(close.kind!=Token.CLOSE)
+				throw new ParseException("unmatched bracket", t.position);
+			t.group=tree;
+			t.groupTokens=next-open-1;
+			return tree;
+		case Token.FUNCTION:
+			return new SyntaxTreeUnary(t.function, factors());
+		case Token.NUMBER:
+		case Token.CONSTANT:
+			return new SyntaxTreeConstant(t.value);
+		case Token.VARIABLE:
+			return new SyntaxTreeVariable();
+		case Token.ERROR:
+			throw t.exception(source);
+		default:
+			//Like '!' or '^' where a factor should start.
+			throw new ParseException(source.toString(), t.position);
+		}
+	}
+
+	private Token peek(){return tokens.get(next);}
+
+	//Unbalanced brackets ---------------------------------------------------
+
+	/** Are the brackets balanced? */
+	private static boolean balanced(List<Token> tokens){
+		int depth=0;
+		for(int k=0; k<tokens.size(); k++){
+			int kind=tokens.get(k).kind;
+			if(kind==Token.OPEN)
+				depth++;
+			else if(kind==Token.CLOSE && --depth<0)
+				return false;
+		}
+		return depth==0;
+	}
+
+	/** The exception for tokens whose brackets are not balanced.
+	 * <p>
+	 * The recursive parser split a range of the expression at the last
+	 * operator that had as many '(' as ')' after it in the range, and
+	 * matched a '(' with the first ')' after it that had as many '(' as ')'
+	 * between them. With balanced brackets, this is the grammar above. With
+	 * unbalanced brackets, the ranges are others, and the parser threw the
+	 * first exception it met, scanning them depth first, left before right.
+	 * <p>
+	 * This scans the same ranges, in the same order, without recursion.
+	 * An operator has as many '(' as ')' after it in a range when the
+	 * bracket depth at the operator is the depth at the end of the range,
+	 * so for every index it keeps the last operator before it, and the
+	 * first ')' after it, at the same depth. Then each range takes
+	 * constant time. */
+	private static ParseException unbalanced(CharSequence s, List<Token> tokens){
+		int n=tokens.size()-1;//without END
+
+		//Bracket depth before each token, and after the last one.
+		int[] depth=new int[n+1];
+		for(int k=0; k<n; k++){
+			int kind=tokens.get(k).kind;
+			depth[k+1]=depth[k] + (kind==Token.OPEN ? 1 : kind==Token.CLOSE ? -1 : 0);
+		}
+
+		//The last operator before each index, at its depth, or -1.
+		int[] kinds={Token.PLUS, Token.MINUS, Token.TIMES, Token.DIVIDE};
+		int[][] last=new int[kinds.length][n+1];
+		int[] seen=new int[2*n+1];//by depth + n
+		for(int o=0; o<kinds.length; o++){
+			Arrays.fill(seen, -1);
+			for(int k=0; k<=n; k++){
+				last[o][k]=seen[depth[k]+n];
+				if(k<n && tokens.get(k).kind==kinds[o])
+					seen[depth[k]+n]=k;
+			}
+		}
+
+		//The first ')' from each index on, at its depth, or -1.
+		int[] close=new int[n+1];
+		Arrays.fill(seen, -1);
+		for(int k=n; 0<=k; k--){
+			if(k<n && tokens.get(k).kind==Token.CLOSE)
+				seen[depth[k]+n]=k;
+			close[k]=seen[depth[k]+n];
+		}
+
+		//The pending ranges, the next on top.
+		List<int[]> stack=new ArrayList<int[]>();
+		stack.add(new int[]{RANGE, 0, n});
+		while(!stack.isEmpty()){
+			int[] top=stack.remove(stack.size()-1);
+			int what=top[0], a=top[1], b=top[2];
+
+			if(what==RANGE){
+				if(b<=a)
+					return new ParseException("SyntaxTree.parse(empty)", tokens.get(a).position);
+				int o=0;
+				while(o<kinds.length && last[o][b]<a)
+					o++;
+				if(o<kinds.length){
+					int k=last[o][b];
+					stack.add(new int[]{RANGE, k+1, b});
+					if(k!=a || kinds[o]==Token.TIMES || kinds[o]==Token.DIVIDE)
+						stack.add(new int[]{RANGE, a, k});
+				}else
+					stack.add(new int[]{FACTORS, a, b});
+				continue;
+			}
+
+			if(what==AFTER){
+				while(a<b && tokens.get(a).kind==Token.FACTORIAL)
+					a++;
+				if(a<b && tokens.get(a).kind==Token.POWER)
+					stack.add(new int[]{RANGE, a+1, b});
+				else if(a<b)
+					stack.add(new int[]{FACTORS, a, b});
+				continue;
+			}
+
+			//FACTORS: the factor at a, then the rest.
+			Token t=tokens.get(a);
+			switch(t.kind){
+			case Token.OPEN:
+				int c=close[a+1];
+				if(c<0 || b<=c)
+					return new ParseException("unmatched bracket", t.position);
+				stack.add(new int[]{AFTER, c+1, b});
+				stack.add(new int[]{RANGE, a+1, c});
+				break;
+			case Token.FUNCTION:
+				stack.add(new int[]{RANGE, a+1, b});
+				break;
+			case Token.NUMBER:
+			case Token.CONSTANT:
+			case Token.VARIABLE:
+				stack.add(new int[]{AFTER, a+1, b});
+				break;
+			case Token.ERROR:
+				return t.exception(s);
+			default:
+				return new ParseException(s.toString(), t.position);
+			}
+		}
+		//Cannot be: a range parses only if its brackets are balanced.
+		throw new IllegalStateException("unbalanced brackets parsed: " + s);
+	}
+
+	/** What unbalanced() does with a range of tokens:
+	 * parse it, read its factors, or read what may follow a factor. */
+	private static final int RANGE=0, FACTORS=1, AFTER=2;
+}
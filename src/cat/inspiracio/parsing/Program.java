@@ -0,0 +1,535 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import cat.inspiracio.numbers.BugException;
+import cat.inspiracio.numbers.ComplexFunction;
+import cat.inspiracio.numbers.EC;
+import cat.inspiracio.numbers.ECArrays;
+import cat.inspiracio.numbers.ECMath;
+import cat.inspiracio.numbers.MutableEC;
+import cat.inspiracio.numbers.PartialException;
+
+/** A syntax tree compiled into a flat postfix program.
+ * <p>
+ * The program is an array of opcodes, some followed by an operand,
+ * and a pool of constants. It is run by a loop over a small stack of
+ * primitive doubles, without recursion, and without making an EC for every
+ * intermediate result. The operations are those of ECMath, so
+ * it gives exactly the same results as SyntaxTree.evaluate(EC).
+ * <p>
+ * To evaluate many points, like a grid for plotting, give them all at once
+ * to evaluate(EC[], EC[]), or, without making any EC at all, as arrays of
+ * real and imaginary parts to evaluate(double[], double[], double[], double[], int).
+ * Then every instruction runs as a loop of ECArrays over a block
+ * of points, so that the cost of interpreting an instruction is shared by
+ * the whole block.
+ * <p>
+ * ClassCompiler can translate a program further into a JVM class.
+ * <p>
+ * Make one with SyntaxTree.compile(). Once compiled, a program is immutable
+ * and may be evaluated by several threads at the same time. */
+public final class Program implements ComplexFunction{
+
+	//Opcodes ---------------------------------------------------------------
+
+	/** Pushes a constant. Operand: index into the constant pool. */
+	static final int CONSTANT=0;
+
+	/** Pushes the variable z. */
+	static final int VARIABLE=1;
+
+	//Binary operators: pop two, push one.
+	static final int ADD=2;
+	static final int SUBTRACT=3;
+	static final int MULTIPLY=4;
+	static final int DIVIDE=5;
+	static final int POWER=6;
+
+	//Unary operators: pop one, push one.
+	static final int NEGATE=7;
+	static final int CONJ=8;
+	static final int SINH=9;
+	static final int COSH=10;
+	static final int TANH=11;
+	static final int ARG=12;
+	static final int COS=13;
+	static final int EXP=14;
+	static final int MOD=15;
+	static final int OPP=16;
+	static final int SIN=17;
+	static final int TAN=18;
+	static final int IM=19;
+	static final int LN=20;
+	static final int RE=21;
+	static final int FAC=22;
+
+	/** Throws BugException. Operand: index into the messages. */
+	static final int BUG=23;
+
+	/** How many points the batch evaluations run through an instruction at a time. */
+	private static final int BLOCK=256;
+
+	//State -----------------------------------------------------------------
+
+	/** The opcodes and their operands. */
+	private int[] code=new int[16];
+
+	/** How much of code is used. */
+	private int length;
+
+	/** The constant pool. */
+	private EC[] constants=new EC[4];
+
+	/** How much of the constant pool is used. */
+	private int constantCount;
+
+	/** Real and imaginary parts of the constants. */
+	private double[] constantRe;
+	private double[] constantIm;
+
+	/** Messages for BUG instructions. */
+	private String[] bugs=new String[0];
+
+	/** Does the program use the variable? */
+	private boolean usesVariable;
+
+	/** Does the program use the argument function?
+	 * Then, if the argument is continuous, the order of evaluation matters. */
+	private boolean usesArg;
+
+	/** Every thread evaluates on its own stack. */
+	private final ThreadLocal<Stack> stacks=new ThreadLocal<Stack>(){
+		@Override protected Stack initialValue(){return new Stack(maxDepth);}
+	};
+
+	/** Every thread evaluates blocks on its own columns. */
+	private final ThreadLocal<Columns> columns=new ThreadLocal<Columns>(){
+		@Override protected Columns initialValue(){return new Columns(maxDepth);}
+	};
+
+	/** Stack depth during compilation. */
+	private int depth;
+
+	/** Maximal stack depth that evaluation needs. */
+	private int maxDepth;
+
+	//Constructors ----------------------------------------------------------
+
+	/** Use SyntaxTree.compile(). */
+	Program(){}
+
+	//Compilation -----------------------------------------------------------
+
+	/** Emits an instruction that pushes a constant. */
+	void constant(EC c){
+		if(constantCount==constants.length){
+			EC[] cs=new EC[2*constants.length];
+			System.arraycopy(constants, 0, cs, 0, constantCount);
+			constants=cs;
+		}
+		constants[constantCount]=c;
+		emit(CONSTANT);
+		emit(constantCount);
+		constantCount++;
+		push();
+	}
+
+	/** Emits an instruction that pushes the variable. */
+	void variable(){
+		emit(VARIABLE);
+		push();
+		usesVariable=true;
+	}
+
+	/** Emits a unary operator. */
+	void unary(int opcode){
+		emit(opcode);
+		if(opcode==ARG || opcode==LN || opcode==OPP)
+			usesArg=true;
+	}
+
+	/** Emits a binary operator. */
+	void binary(int opcode){
+		emit(opcode);
+		depth--;
+	}
+
+	/** Emits an instruction that throws a BugException when it is reached.
+	 * @param message for the exception */
+	void bug(String message){
+		String[] bs=new String[bugs.length+1];
+		System.arraycopy(bugs, 0, bs, 0, bugs.length);
+		bs[bugs.length]=message;
+		emit(BUG);
+		emit(bugs.length);
+		bugs=bs;
+	}
+
+	/** Trims the arrays after the last instruction has been emitted. */
+	Program finish(){
+		int[] c=new int[length];
+		System.arraycopy(code, 0, c, 0, length);
+		code=c;
+		EC[] cs=new EC[constantCount];
+		System.arraycopy(constants, 0, cs, 0, constantCount);
+		constants=cs;
+		constantRe=new double[constantCount];
+		constantIm=new double[constantCount];
+		for(int i=0; i<constantCount; i++){
+			constantRe[i]=constants[i].re();
+			constantIm[i]=constants[i].im();
+		}
+		return this;
+	}
+
+	private void emit(int i){
+		if(length==code.length){
+			int[] c=new int[2*code.length];
+			System.arraycopy(code, 0, c, 0, length);
+			code=c;
+		}
+		code[length++]=i;
+	}
+
+	private void push(){
+		depth++;
+		if(maxDepth<depth)
+			maxDepth=depth;
+	}
+
+	//Accessors for ClassCompiler -------------------------------------------
+
+	/** The opcodes and their operands. Do not change them. */
+	int[] code(){return code;}
+
+	double constantRe(int k){return constantRe[k];}
+	double constantIm(int k){return constantIm[k];}
+
+	int maxDepth(){return maxDepth;}
+
+	/** Does the program contain a BUG instruction? */
+	boolean hasBug(){return bugs.length!=0;}
+
+	/** Does the program use the variable z?
+	 * If not, evaluate(null) gives its value. */
+	public boolean usesVariable(){return usesVariable;}
+
+	//Evaluation ------------------------------------------------------------
+
+	/** Runs the program for a value of the variable z. */
+	public EC evaluate(EC z)throws BugException, PartialException{
+		if(z==null && usesVariable){
+			if(code.length==1)
+				return null;//like SyntaxTreeVariable.evaluate(null)
+			throw new NullPointerException();
+		}
+		Stack stack=stacks.get();
+		boolean defined= z==null ? run(0.0D, 0.0D, stack) : run(z.re(), z.im(), stack);
+		if(!defined)
+			throw stack.exception();
+		return EC.mkCartesian(stack.re[0], stack.im[0]);
+	}
+
+	/** Runs the program for a value of the variable z, and makes no objects.
+	 * Where the function is undefined, w becomes undefined, and there is
+	 * no PartialException.
+	 * @param z Value of the variable. Not changed.
+	 * @param w Receives the result. May be z. */
+	public void evaluate(MutableEC z, MutableEC w)throws BugException{
+		Stack stack=stacks.get();
+		if(z.isUndefined() || !run(z.re(), z.im(), stack))
+			w.setUndefined();
+		else
+			w.set(stack.re[0], stack.im[0]);
+	}
+
+	/** Runs the program for one value of the variable.
+	 * Where an instruction is undefined, it stops, and leaves the instruction
+	 * and its operands in the stack, so that the caller who wants the
+	 * PartialException can get it from Stack.exception().
+	 * @return Is the function defined? Then the result is at the bottom of the stack. */
+	private boolean run(double zr, double zi, Stack stack)throws BugException{
+		final int[] code=this.code;
+		final double[] re=stack.re;
+		final double[] im=stack.im;
+		int sp=0;
+		for(int pc=0; pc<code.length; pc++){
+			int op=code[pc];
+			switch(op){
+			case CONSTANT:
+				int c=code[++pc];
+				re[sp]=constantRe[c];
+				im[sp]=constantIm[c];
+				sp++;
+				break;
+			case VARIABLE:
+				re[sp]=zr;
+				im[sp]=zi;
+				sp++;
+				break;
+
+			case ADD:		sp--; if(!ECMath.tryAdd(re[sp-1], im[sp-1], re[sp], im[sp], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case SUBTRACT:	sp--; if(!ECMath.trySubtract(re[sp-1], im[sp-1], re[sp], im[sp], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case MULTIPLY:	sp--; if(!ECMath.tryMultiply(re[sp-1], im[sp-1], re[sp], im[sp], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case DIVIDE:	sp--; if(!ECMath.tryDivide(re[sp-1], im[sp-1], re[sp], im[sp], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case POWER:		sp--; if(!ECMath.tryPower(re[sp-1], im[sp-1], re[sp], im[sp], re, im, sp-1)) return stack.fail(op, sp-1); break;
+
+			case NEGATE:	ECMath.negate(re[sp-1], im[sp-1], re, im, sp-1); break;
+			case CONJ:		ECMath.conj(re[sp-1], im[sp-1], re, im, sp-1); break;
+			case SINH:		if(!ECMath.trySinh(re[sp-1], im[sp-1], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case COSH:		if(!ECMath.tryCosh(re[sp-1], im[sp-1], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case TANH:		if(!ECMath.tryTanh(re[sp-1], im[sp-1], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case ARG:		ECMath.argument(re[sp-1], im[sp-1], re, im, sp-1); break;
+			case COS:		if(!ECMath.tryCos(re[sp-1], im[sp-1], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case EXP:		ECMath.exp(re[sp-1], im[sp-1], re, im, sp-1); break;
+			case MOD:		ECMath.modulus(re[sp-1], im[sp-1], re, im, sp-1); break;
+			case OPP:		ECMath.opp(re[sp-1], im[sp-1], re, im, sp-1); break;
+			case SIN:		if(!ECMath.trySin(re[sp-1], im[sp-1], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case TAN:		if(!ECMath.tryTan(re[sp-1], im[sp-1], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case IM:		ECMath.imPart(re[sp-1], im[sp-1], re, im, sp-1); break;
+			case LN:		if(!ECMath.tryLn(re[sp-1], im[sp-1], re, im, sp-1)) return stack.fail(op, sp-1); break;
+			case RE:		ECMath.rePart(re[sp-1], im[sp-1], re, im, sp-1); break;
+			case FAC:		if(!ECMath.tryFac(re[sp-1], im[sp-1], re, im, sp-1)) return stack.fail(op, sp-1); break;
+
+			case BUG:		throw new BugException(bugs[code[++pc]]);
+			default:		throw new BugException("Program.evaluate: opcode " + op);
+			}
+		}
+		return true;
+	}
+
+	/** Runs the program for many values of the variable at once.
+	 * @param zs Values of the variable.
+	 * @param ws Receives the results: ws[i] is the value for zs[i],
+	 * 	or null if the function is undefined there. */
+	public void evaluate(EC[] zs, EC[] ws)throws BugException{
+		int n=zs.length;
+		int block=blockSize();
+		Columns c=columns.get();
+		for(int start=0; start<n; start+=block){
+			int m=Math.min(block, n-start);
+			if(usesVariable)
+				for(int i=0; i<m; i++){
+					c.zRe[i]=zs[start+i].re();
+					c.zIm[i]=zs[start+i].im();
+				}
+			run(c, m);
+			double[] re=c.re[0];
+			double[] im=c.im[0];
+			boolean[] undefined=c.undefined;
+			for(int i=0; i<m; i++){
+				ws[start+i]=undefined[i] ? null : EC.mkCartesian(re[i], im[i]);
+				undefined[i]=false;
+			}
+		}
+	}
+
+	/** Runs the program for many values of the variable at once,
+	 * given as arrays of real and imaginary parts. Makes no objects.
+	 * <p>
+	 * The numbers are encoded as EC.re() and EC.im() give them:
+	 * infinity is (Infinity, Infinity). Where the function is undefined,
+	 * the result is (NaN, NaN).
+	 * <p>
+	 * The output arrays may be the input arrays.
+	 *
+	 * @param re Real parts of the values of the variable.
+	 * @param im Imaginary parts of the values of the variable.
+	 * @param outRe Receives the real parts of the results.
+	 * @param outIm Receives the imaginary parts of the results.
+	 * @param n How many values, from index 0. */
+	public void evaluate(double[] re, double[] im, double[] outRe, double[] outIm, int n)throws BugException{
+		int block=blockSize();
+		Columns c=columns.get();
+		for(int start=0; start<n; start+=block){
+			int m=Math.min(block, n-start);
+			if(usesVariable){
+				System.arraycopy(re, start, c.zRe, 0, m);
+				System.arraycopy(im, start, c.zIm, 0, m);
+			}
+			run(c, m);
+			System.arraycopy(c.re[0], 0, outRe, start, m);
+			System.arraycopy(c.im[0], 0, outIm, start, m);
+			boolean[] undefined=c.undefined;
+			for(int i=0; i<m; i++)
+				if(undefined[i]){
+					outRe[start+i]=Double.NaN;
+					outIm[start+i]=Double.NaN;
+					undefined[i]=false;
+				}
+		}
+	}
+
+	/** How many points to run through an instruction at a time.
+	 * A continuous argument depends on the previous call, so then
+	 * a program that uses it goes point by point, in the order of the tree. */
+	private int blockSize(){
+		return usesArg && EC.isArgContinuous() ? 1 : BLOCK;
+	}
+
+	/** Runs the program for the first m points in the columns. */
+	private void run(Columns c, int m)throws BugException{
+		final int[] code=this.code;
+		final double[][] res=c.re;
+		final double[][] ims=c.im;
+		final boolean[] u=c.undefined;
+		int sp=0;
+		for(int pc=0; pc<code.length; pc++){
+			int op=code[pc];
+			if(op==CONSTANT){
+				int k=code[++pc];
+				double cr=constantRe[k], ci=constantIm[k];
+				double[] re=res[sp], im=ims[sp];
+				for(int i=0; i<m; i++){
+					re[i]=cr;
+					im[i]=ci;
+				}
+				sp++;
+			}
+			else if(op==VARIABLE){
+				System.arraycopy(c.zRe, 0, res[sp], 0, m);
+				System.arraycopy(c.zIm, 0, ims[sp], 0, m);
+				sp++;
+			}
+			else if(op<=POWER){
+				sp--;
+				double[] ar=res[sp-1], ai=ims[sp-1], br=res[sp], bi=ims[sp];
+				switch(op){
+				case ADD:		ECArrays.add(ar, ai, br, bi, u, m); break;
+				case SUBTRACT:	ECArrays.subtract(ar, ai, br, bi, u, m); break;
+				case MULTIPLY:	ECArrays.multiply(ar, ai, br, bi, u, m); break;
+				case DIVIDE:	ECArrays.divide(ar, ai, br, bi, u, m); break;
+				case POWER:		ECArrays.power(ar, ai, br, bi, u, m); break;
+				}
+			}
+			else{
+				double[] re=res[sp-1], im=ims[sp-1];
+				switch(op){
+				case NEGATE:	ECArrays.negate(re, im, m); break;
+				case CONJ:		ECArrays.conj(re, im, m); break;
+				case SINH:		ECArrays.sinh(re, im, u, m); break;
+				case COSH:		ECArrays.cosh(re, im, u, m); break;
+				case TANH:		ECArrays.tanh(re, im, u, m); break;
+				case ARG:		ECArrays.argument(re, im, m); break;
+				case COS:		ECArrays.cos(re, im, u, m); break;
+				case EXP:		ECArrays.exp(re, im, m); break;
+				case MOD:		ECArrays.modulus(re, im, m); break;
+				case OPP:		ECArrays.opp(re, im, m); break;
+				case SIN:		ECArrays.sin(re, im, u, m); break;
+				case TAN:		ECArrays.tan(re, im, u, m); break;
+				case IM:		ECArrays.imPart(re, im, m); break;
+				case LN:		ECArrays.ln(re, im, u, m); break;
+				case RE:		ECArrays.rePart(re, im, m); break;
+				case FAC:		ECArrays.fac(re, im, u, m); break;
+				case BUG:		throw new BugException(bugs[code[++pc]]);
+				default:		throw new BugException("Program.evaluate: opcode " + op);
+				}
+			}
+		}
+	}
+
+	/** For debugging: the instructions, one per line. */
+	@Override public String toString(){
+		StringBuilder b=new StringBuilder();
+		for(int pc=0; pc<length; pc++){
+			int op=code[pc];
+			b.append(NAMES[op]);
+			if(op==CONSTANT)
+				b.append(' ').append(constants[code[++pc]]);
+			else if(op==BUG)
+				b.append(' ').append(bugs[code[++pc]]);
+			b.append('\n');
+		}
+		return b.toString();
+	}
+
+	private static final String[] NAMES={
+		"CONSTANT", "VARIABLE",
+		"ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "POWER",
+		"NEGATE", "CONJ", "SINH", "COSH", "TANH", "ARG", "COS", "EXP", "MOD",
+		"OPP", "SIN", "TAN", "IM", "LN", "RE", "FAC",
+		"BUG"
+	};
+
+	/** The columns for block evaluation of one thread:
+	 * one column of real parts and one of imaginary parts for every stack slot. */
+	private static final class Columns{
+		final double[][] re;
+		final double[][] im;
+		final double[] zRe=new double[BLOCK];
+		final double[] zIm=new double[BLOCK];
+		/** Points where the function has turned out undefined. */
+		final boolean[] undefined=new boolean[BLOCK];
+		Columns(int depth){
+			re=new double[depth][BLOCK];
+			im=new double[depth][BLOCK];
+		}
+	}
+
+	/** The evaluation stack of one thread. */
+	private static final class Stack{
+		final double[] re;
+		final double[] im;
+
+		/** The instruction that was undefined, and the stack slot of its first operand. */
+		private int failed;
+		private int slot;
+
+		Stack(int depth){
+			re=new double[depth];
+			im=new double[depth];
+		}
+
+		/** Remembers where the program was undefined.
+		 * @return false */
+		boolean fail(int op, int slot){
+			this.failed=op;
+			this.slot=slot;
+			return false;
+		}
+
+		/** The PartialException that EC throws for the instruction that failed:
+		 * the throwing kernel, run again on the same operands, makes it. */
+		PartialException exception()throws BugException{
+			double ar=re[slot], ai=im[slot];
+			double br= failed<=POWER ? re[slot+1] : 0.0D;
+			double bi= failed<=POWER ? im[slot+1] : 0.0D;
+			try{
+				switch(failed){
+				case ADD:		ECMath.add(ar, ai, br, bi, re, im, slot); break;
+				case SUBTRACT:	ECMath.subtract(ar, ai, br, bi, re, im, slot); break;
+				case MULTIPLY:	ECMath.multiply(ar, ai, br, bi, re, im, slot); break;
+				case DIVIDE:	ECMath.divide(ar, ai, br, bi, re, im, slot); break;
+				case POWER:		ECMath.power(ar, ai, br, bi, re, im, slot); break;
+				case SINH:		ECMath.sinh(ar, ai, re, im, slot); break;
+				case COSH:		ECMath.cosh(ar, ai, re, im, slot); break;
+				case TANH:		ECMath.tanh(ar, ai, re, im, slot); break;
+				case COS:		ECMath.cos(ar, ai, re, im, slot); break;
+				case SIN:		ECMath.sin(ar, ai, re, im, slot); break;
+				case TAN:		ECMath.tan(ar, ai, re, im, slot); break;
+				case LN:		ECMath.ln(ar, ai, re, im, slot); break;
+				case FAC:		ECMath.fac(ar, ai, re, im, slot); break;
+				}
+			}catch(PartialException pe){
+				return pe;
+			}
+			throw new BugException("Program.evaluate: " + NAMES[failed] + " was undefined, but is not");
+		}
+	}
+}
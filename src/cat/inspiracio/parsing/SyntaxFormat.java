@@ -20,6 +20,7 @@ package cat.inspiracio.parsing;
 import java.text.Format;
 
 public abstract class SyntaxFormat extends Format{
+	private static final long serialVersionUID=1L;
 
     public SyntaxFormat(){}
 }
\ No newline at end of file
@@ -19,7 +19,6 @@ package cat.inspiracio.parsing;
 
 
 import java.text.ParseException;
-import java.text.ParsePosition;
 
 import cat.inspiracio.numbers.*;
 
@@ -29,301 +28,129 @@ import cat.inspiracio.numbers.*;
 public abstract class SyntaxTree
 {
 
-    private static int first(char c, String s, int i, int j)
-    {
-        int k = i;
-        for(int l = 0; k < j && (l != 0 || s.charAt(k) != c); k++)
-            if(s.charAt(k) == '(')
-                l++;
-            else
-            if(s.charAt(k) == ')')
-                l--;
-
-        if(k < j)
-            return k;
-        else
-            return -1;
-    }
-
-    private static SyntaxTree getFactor(String s, ParsePosition parseposition, ParsePosition parseposition1)
-        throws ParseException
-    {
-        Object obj = null;
-        int i;
-        if(s.charAt(parseposition.getIndex()) == '(')
-        {
-            int j = first(')', s, parseposition.getIndex() + 1, parseposition1.getIndex());
-            if(j == -1)
-                throw new ParseException("unmatched bracket", parseposition.getIndex());
-            obj = parse(s, parseposition.getIndex() + 1, j);
-            parseposition.setIndex(j + 1);
-        } else
-        if((i = recogniseFunction(s, parseposition, parseposition1)) != -1)
-        {
-            obj = new SyntaxTreeUnary(i, parse(s, parseposition.getIndex(), parseposition1.getIndex()));
-            parseposition.setIndex(parseposition1.getIndex());
-        } else
-        if(in(s.charAt(parseposition.getIndex()), "0123456789"))
-            obj = readDigits(s, parseposition, parseposition1);
-        else
-        if(in(s.charAt(parseposition.getIndex()), "iep\u03C0\u221E"))
-            obj = readConstant(s, parseposition, parseposition1);
-        else
-        if(in(s.charAt(parseposition.getIndex()), "zx"))
-            obj = readVariable(s, parseposition, parseposition1);
-        if(obj == null)
-            throw new ParseException(s, parseposition.getIndex());
-        for(; parseposition.getIndex() < parseposition1.getIndex() && s.charAt(parseposition.getIndex()) == '!'; parseposition.setIndex(parseposition.getIndex() + 1))
-            obj = new SyntaxTreeUnary(20, ((SyntaxTree) (obj)));
-
-        if(parseposition.getIndex() < parseposition1.getIndex() && s.charAt(parseposition.getIndex()) == '^')
-        {
-            obj = new SyntaxTreeBinary(4, ((SyntaxTree) (obj)), parse(s, parseposition.getIndex() + 1, parseposition1.getIndex()));
-            parseposition.setIndex(parseposition1.getIndex());
-        }
-        return ((SyntaxTree) (obj));
-    }
-
     /** Does the String contains this character? */
     public static boolean in(char c, String s){
         return s.indexOf(c) != -1;
     }
 
-    private static int last(char c, String s, int i, int j){
-        int k = j - 1;
-        for(int l = 0; i <= k && (l != 0 || s.charAt(k) != c); k--)
-            if(s.charAt(k) == '(')
-                l++;
-            else if(s.charAt(k) == ')')
-                l--;
-        if(i <= k)
-            return k;
-        else
-            return -1;
-    }
-
     public static void main(String args[])throws Exception{
     	parse("modz*e^iargz");
     }
 
+    /** Parses an expression, ignoring blanks.
+     * <p>
+     * Tokenizer and Parser do it in one pass. */
     public static SyntaxTree parse(String s)throws ParseException{
         s = stripBlanks(s);
-        return parse(s, 0, s.length());
+        return Parser.parse(s, Tokenizer.tokenize(s));
     }
 
-    private static SyntaxTree parse(String s, int i, int j)throws ParseException{
-        if(i >= j)
-            throw new ParseException("SyntaxTree.parse(empty)", i);
-        int k;
-        Object obj;
-        if((k = last('+', s, i, j)) > -1)
-            obj = bracketPlusMinus(s, i, k, j, 0);
-        else if((k = last('-', s, i, j)) > -1)
-            obj = bracketPlusMinus(s, i, k, j, 1);
-        else if((k = last('*', s, i, j)) > -1)
-            obj = bracketBin(s, i, k, j, 2);
-        else if((k = last('/', s, i, j)) > -1){
-            obj = bracketBin(s, i, k, j, 3);
-        } else{
-            ParsePosition parseposition = new ParsePosition(i);
-            ParsePosition parseposition1 = new ParsePosition(j);
-            for(obj = getFactor(s, parseposition, parseposition1); parseposition.getIndex() != parseposition1.getIndex(); obj = new SyntaxTreeBinary(2, ((SyntaxTree) (obj)), getFactor(s, parseposition, parseposition1)));
-        }
-        return ((SyntaxTree) (obj));
+    /** Adds another name for a function, like "log" for "ln".
+     * <p>
+     * The name must consist of letters. Like "exp" before the constant "e",
+     * the longest function name wins over constants and variables
+     * that start in the same place.
+     * @param name The new name.
+     * @param function An existing name of the function. */
+    public static void addFunctionName(String name, String function)
+    {
+        int token = FunctionNames.token(function);
+        if(token == NOTOKEN)
+            throw new IllegalArgumentException("unknown function " + function);
+        if(name.length() == 0)
+            throw new IllegalArgumentException("empty function name");
+        for(int i = 0; i < name.length(); i++)
+            if(!Character.isLetter(name.charAt(i)))
+                throw new IllegalArgumentException("function name " + name);
+        FunctionNames.add(name, token);
     }
 
-    private static SyntaxTree readConstant(String s, ParsePosition parseposition, ParsePosition parseposition1) throws ParseException{
-        EC ec = null;
-        int i = parseposition.getIndex();
-        if(s.startsWith("inf", i)){
-            ec = EC.INFINITY;
-            i += 3;
-        } else if(s.startsWith("i", i))
-        {
-            ec = EC.I;
-            i++;
-        } else
-        if(s.startsWith("e", i))
-        {
-            ec = EC.E;
-            i++;
-        } else
-        if(s.startsWith("\u03C0", i))
-        {
-            ec = EC.PI;
-            i++;
-        } else
-        if(s.startsWith("\u221E", i))
-        {
-            ec = EC.INFINITY;
-            i++;
-        } else
-        if(s.startsWith("pi", i))
-        {
-            ec = EC.PI;
-            i += 2;
-        } else
-        {
-            throw new ParseException("readConstant " + s, i);
-        }
-        parseposition.setIndex(i);
-        return new SyntaxTreeConstant(ec);
+    public static void say(String s)
+    {
     }
 
-    private static SyntaxTree readDigits(String s, ParsePosition parseposition, ParsePosition parseposition1)
-        throws ParseException
+    public static void say(boolean flag)
     {
-        int i;
-        for(i = parseposition.getIndex(); i < parseposition1.getIndex() && in(s.charAt(i), "0123456789"); i++);
-        EC ec;
-        if(parseposition1.getIndex() == i)
-            ec = EC.mkReal((new Double(s.substring(parseposition.getIndex(), i))).doubleValue());
-        else
-        if(s.charAt(i) == '.')
-        {
-            int j;
-            for(j = i + 1; j < parseposition1.getIndex() && in(s.charAt(j), "0123456789"); j++);
-            if(i + 1 <= j - 1)
-            {
-                i = j;
-                ec = EC.mkReal((new Double(s.substring(parseposition.getIndex(), i))).doubleValue());
-            } else
-            {
-                throw new ParseException("SyntaxTree.readDigits: decimal point followed by non-digit", i);
-            }
-        } else
-        {
-            ec = EC.mkReal((new Double(s.substring(parseposition.getIndex(), i))).doubleValue());
-        }
-        parseposition.setIndex(i);
-        return new SyntaxTreeConstant(ec);
+        say(String.valueOf(flag));
     }
 
-    private static SyntaxTree readVariable(String s, ParsePosition parseposition, ParsePosition parseposition1)
+    public abstract String unparse();
+
+    public String toString()
     {
-        parseposition.setIndex(parseposition.getIndex() + 1);
-        return new SyntaxTreeVariable();
+        return unparse();
     }
 
-    private static int recogniseFunction(String s, ParsePosition parseposition, ParsePosition parseposition1)
+    /** Simplifies this tree: folds subtrees without variable into constants,
+     * and applies identities like x*1 = x that hold for every value of z
+     * under the rules of EC, infinity included.
+     * This tree is not changed.
+     * @return A tree that evaluates like this one, maybe this tree itself. */
+    public abstract SyntaxTree partialEvaluate()
+        throws BugException;
+
+    /** Is this tree the constant real number d, exactly? */
+    boolean isConstant(double d)
     {
-        int i = parseposition.getIndex();
-        if(s.startsWith("acos", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 4);
-            return 22;
-        }
-        if(s.startsWith("arg", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 3);
-            return 8;
-        }
-        if(s.startsWith("asin", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 4);
-            return 21;
-        }
-        if(s.startsWith("atan", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 4);
-            return 23;
-        }
-        if(s.startsWith("conj", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 4);
-            return 5;
-        }
-        if(s.startsWith("cosh", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 4);
-            return 6;
-        }
-        if(s.startsWith("cos", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 3);
-            return 9;
-        }
-        if(s.startsWith("D", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 1);
-            return 18;
-        }
-        if(s.startsWith("exp", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 3);
-            return 10;
-        }
-        if(s.startsWith("Im", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 2);
-            return 15;
-        }
-        if(s.startsWith("ln", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 2);
-            return 16;
-        }
-        if(s.startsWith("mod", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 3);
-            return 11;
-        }
-        if(s.startsWith("opp", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 3);
-            return 12;
-        }
-        if(s.startsWith("Re", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 2);
-            return 17;
-        }
-        if(s.startsWith("sinh", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 4);
-            return 19;
-        }
-        if(s.startsWith("sin", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 3);
-            return 13;
-        }
-        if(s.startsWith("tanh", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 4);
-            return 7;
-        }
-        if(s.startsWith("tan", parseposition.getIndex()))
-        {
-            parseposition.setIndex(i + 3);
-            return 14;
-        } else
-        {
-            return -1;
-        }
+        return false;
     }
 
-    public static void say(String s)
+    /** Is this tree a constant that is finite and not zero? */
+    boolean isNonZeroFiniteConstant()
     {
+        return false;
     }
 
-    public static void say(boolean flag)
+    /** Evaluates a tree without variable to a constant.
+     * If it is undefined, it stays as it is, so that evaluating it
+     * still throws the same PartialException. */
+    static SyntaxTree fold(SyntaxTree syntaxtree)
+        throws BugException
     {
-        say((new Boolean(flag)).toString());
+        try
+        {
+            return new SyntaxTreeConstant(syntaxtree.evaluate(null));
+        }
+        catch(PartialException partialexception)
+        {
+            return syntaxtree;
+        }
     }
 
-    public abstract String unparse();
+    public abstract EC evaluate(EC ec)
+        throws BugException, PartialException;
 
-    public String toString()
+    /** Evaluates this tree for many values of the variable, given as arrays
+     * of real and imaginary parts, without making an EC for any of them.
+     * Undefined results are (NaN, NaN).
+     * To evaluate the same tree repeatedly, compile() it once and use
+     * Program.evaluate(double[], double[], double[], double[], int). */
+    public final void evaluate(double re[], double im[], double outRe[], double outIm[], int n)
+        throws BugException
     {
-        return unparse();
+        compile().evaluate(re, im, outRe, outIm, n);
     }
 
-    public abstract void partialEvaluate()
-        throws BugException, PartialException;
+    /** Compiles this tree into a flat postfix program that gives the same
+     * results as evaluate(EC), but faster when it is evaluated repeatedly.
+     * Trees do not change, so the program is made once and kept. */
+    public final Program compile(){
+        Program p=program;
+        if(p==null){
+            p=new Program();
+            compile(p);
+            p=p.finish();
+            program=p;
+        }
+        return p;
+    }
 
-    public abstract EC evaluate(EC ec)
-        throws BugException, PartialException;
+    /** The compiled program, once somebody asks for it.
+     * A race may compile twice, harmlessly. */
+    private volatile Program program;
+
+    /** Emits the instructions for this tree into the program. */
+    abstract void compile(Program program);
 
     public static String stripBlanks(String s)
     {
@@ -417,27 +244,6 @@ public abstract class SyntaxTree
         return "a token";
     }
 
-    private static SyntaxTree bracketBin(String s, int i, int j, int k, int l)
-        throws ParseException
-    {
-        SyntaxTree syntaxtree = parse(s, i, j);
-        SyntaxTree syntaxtree1 = parse(s, j + 1, k);
-        return new SyntaxTreeBinary(l, syntaxtree, syntaxtree1);
-    }
-
-    private static SyntaxTree bracketPlusMinus(String s, int i, int j, int k, int l)
-        throws ParseException
-    {
-        if(j == i)
-        {
-            SyntaxTree syntaxtree = parse(s, i + 1, k);
-            return new SyntaxTreeUnary(l, syntaxtree);
-        } else
-        {
-            return bracketBin(s, i, j, k, l);
-        }
-    }
-
     public SyntaxTree()
     {
     }
@@ -38,10 +38,89 @@ public class SyntaxTreeBinary extends SyntaxTree
         return "(" + left.unparse() + ")" + SyntaxTree.token2String(token) + "(" + right.unparse() + ")";
     }
 
-    public void partialEvaluate()
+    /** Folds constants, and simplifies x+0, 0+x, x-0, 0-x, x*1, 1*x, x/1 and x^1.
+     * Also gathers the constant factors of c1*(c2*x) and similar into one,
+     * if the product of the constants is finite and not zero. (Then the
+     * product is undefined for the same z, but its rounding may differ.) */
+    public SyntaxTree partialEvaluate()
         throws BugException
     {
-        throw new BugException("SyntaxTreeBinary.partialEvaluate() not implemented yet.");
+        SyntaxTree l = left.partialEvaluate();
+        SyntaxTree r = right.partialEvaluate();
+        if(l instanceof SyntaxTreeConstant && r instanceof SyntaxTreeConstant)
+            return SyntaxTree.fold(new SyntaxTreeBinary(token, l, r));
+        switch(token)
+        {
+        case SUMTOKEN:
+            if(r.isConstant(0.0D))
+                return l;
+            if(l.isConstant(0.0D))
+                return r;
+            break;
+
+        case DIFFERENCETOKEN:
+            if(r.isConstant(0.0D))
+                return l;
+            if(l.isConstant(0.0D))
+                return (new SyntaxTreeUnary(DIFFERENCETOKEN, r)).partialEvaluate();
+            break;
+
+        case PRODUCTTOKEN:
+            if(r.isConstant(1.0D))
+                return l;
+            if(l.isConstant(1.0D))
+                return r;
+            SyntaxTree gathered = null;
+            if(l.isNonZeroFiniteConstant() && isProductWithConstant(r))
+                gathered = gather(l, (SyntaxTreeBinary)r);
+            else
+            if(r.isNonZeroFiniteConstant() && isProductWithConstant(l))
+                gathered = gather(r, (SyntaxTreeBinary)l);
+            if(gathered != null)
+                return gathered;
+            break;
+
+        case QUOTIENTTOKEN:
+        case POWERTOKEN:
+            if(r.isConstant(1.0D))
+                return l;
+            break;
+        }
+        if(l == left && r == right)
+            return this;
+        else
+            return new SyntaxTreeBinary(token, l, r);
+    }
+
+    /** Is the tree a product of a finite non-zero constant and something else? */
+    private static boolean isProductWithConstant(SyntaxTree syntaxtree)
+    {
+        if(!(syntaxtree instanceof SyntaxTreeBinary))
+            return false;
+        SyntaxTreeBinary syntaxtreebinary = (SyntaxTreeBinary)syntaxtree;
+        return syntaxtreebinary.token == PRODUCTTOKEN && (syntaxtreebinary.left.isNonZeroFiniteConstant() || syntaxtreebinary.right.isNonZeroFiniteConstant());
+    }
+
+    /** c * (d*x) = (c*d) * x, if c*d is finite and not zero.
+     * @return The simplified product, or null. */
+    private static SyntaxTree gather(SyntaxTree c, SyntaxTreeBinary product)
+        throws BugException
+    {
+        SyntaxTree d;
+        SyntaxTree x;
+        if(product.left.isNonZeroFiniteConstant())
+        {
+            d = product.left;
+            x = product.right;
+        } else
+        {
+            d = product.right;
+            x = product.left;
+        }
+        SyntaxTree cd = SyntaxTree.fold(new SyntaxTreeBinary(PRODUCTTOKEN, c, d));
+        if(!cd.isNonZeroFiniteConstant())
+            return null;
+        return new SyntaxTreeBinary(PRODUCTTOKEN, cd, x);
     }
 
     public EC evaluate(EC ec)
@@ -94,6 +173,41 @@ public class SyntaxTreeBinary extends SyntaxTree
         return ec3;
     }
 
+    void compile(Program program)
+    {
+        left.compile(program);
+        right.compile(program);
+        switch(token)
+        {
+        case SUMTOKEN:
+            program.binary(Program.ADD);
+            break;
+
+        case DIFFERENCETOKEN:
+            program.binary(Program.SUBTRACT);
+            break;
+
+        case PRODUCTTOKEN:
+            program.binary(Program.MULTIPLY);
+            break;
+
+        case QUOTIENTTOKEN:
+            program.binary(Program.DIVIDE);
+            break;
+
+        case POWERTOKEN:
+            program.binary(Program.POWER);
+            break;
+
+        case NOTOKEN:
+            program.bug("SyntaxTreeBinary.evaluate(NOTOKEN)");
+            break;
+
+        default:
+            program.bug("SyntaxTreeBinary.evaluate with unary token " + SyntaxTree.token2String(token));
+        }
+    }
+
     private SyntaxTree left;
     private SyntaxTree right;
     private int token;
@@ -35,8 +35,19 @@ public class SyntaxTreeConstant extends SyntaxTree
         return constant.toString();
     }
 
-    public void partialEvaluate()
+    public SyntaxTree partialEvaluate()
     {
+        return this;
+    }
+
+    boolean isConstant(double d)
+    {
+        return constant.isFinite() && constant.re() == d && constant.im() == 0.0D;
+    }
+
+    boolean isNonZeroFiniteConstant()
+    {
+        return constant.isFinite() && (constant.re() != 0.0D || constant.im() != 0.0D);
     }
 
     public EC evaluate(EC ec)
@@ -44,5 +55,10 @@ public class SyntaxTreeConstant extends SyntaxTree
         return constant;
     }
 
+    void compile(Program program)
+    {
+        program.constant(constant);
+    }
+
     private final EC constant;
 }
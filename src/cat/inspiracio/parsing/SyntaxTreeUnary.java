@@ -40,10 +40,35 @@ public class SyntaxTreeUnary extends SyntaxTree
             return SyntaxTree.token2String(token) + "(" + argument.unparse() + ")";
     }
 
-    public void partialEvaluate()
+    /** Folds constants, and simplifies +x, -(-x) and conj(conj x).
+     * Not exp(ln x): ln 0 is undefined, and even x = e^y can be 0,
+     * when e^y underflows. */
+    public SyntaxTree partialEvaluate()
         throws BugException
     {
-        throw new BugException("SyntaxTreeUnary.partialEvaluate not implemented.");
+        SyntaxTree a = argument.partialEvaluate();
+        if(a instanceof SyntaxTreeConstant)
+            return SyntaxTree.fold(new SyntaxTreeUnary(token, a));
+        switch(token)
+        {
+        case SUMTOKEN:
+            return a;
+
+        case DIFFERENCETOKEN:
+        case CONJTOKEN:
+            if(isUnary(a, token))
+                return ((SyntaxTreeUnary)a).argument;
+            break;
+        }
+        if(a == argument)
+            return this;
+        else
+            return new SyntaxTreeUnary(token, a);
+    }
+
+    private static boolean isUnary(SyntaxTree syntaxtree, int i)
+    {
+        return (syntaxtree instanceof SyntaxTreeUnary) && ((SyntaxTreeUnary)syntaxtree).token == i;
     }
 
     public EC evaluate(EC ec)
@@ -140,6 +165,99 @@ public class SyntaxTreeUnary extends SyntaxTree
         return ec2;
     }
 
+    void compile(Program program)
+    {
+        argument.compile(program);
+        switch(token)
+        {
+        case SUMTOKEN:
+            break;
+
+        case DIFFERENCETOKEN:
+            program.unary(Program.NEGATE);
+            break;
+
+        case FACTOKEN:
+            program.unary(Program.FAC);
+            break;
+
+        case CONJTOKEN:
+            program.unary(Program.CONJ);
+            break;
+
+        case SINHTOKEN:
+            program.unary(Program.SINH);
+            break;
+
+        case COSHTOKEN:
+            program.unary(Program.COSH);
+            break;
+
+        case TANHTOKEN:
+            program.unary(Program.TANH);
+            break;
+
+        case ARGTOKEN:
+            program.unary(Program.ARG);
+            break;
+
+        case COSTOKEN:
+            program.unary(Program.COS);
+            break;
+
+        case EXPTOKEN:
+            program.unary(Program.EXP);
+            break;
+
+        case MODTOKEN:
+            program.unary(Program.MOD);
+            break;
+
+        case OPPTOKEN:
+            program.unary(Program.OPP);
+            break;
+
+        case SINTOKEN:
+            program.unary(Program.SIN);
+            break;
+
+        case TANTOKEN:
+            program.unary(Program.TAN);
+            break;
+
+        case IMTOKEN:
+            program.unary(Program.IM);
+            break;
+
+        case LNTOKEN:
+            program.unary(Program.LN);
+            break;
+
+        case RETOKEN:
+            program.unary(Program.RE);
+            break;
+
+        case NOTOKEN:
+            program.bug("SyntaxTreeUnary.evaluate(NOTOKEN)");
+            break;
+
+        case ASINTOKEN:
+        case ACOSTOKEN:
+        case ATANTOKEN:
+            program.bug("SyntaxTreeUnary.evaluate(acos,asin,atan)");
+            break;
+
+        case PRODUCTTOKEN:
+        case QUOTIENTTOKEN:
+        case POWERTOKEN:
+            program.bug("SyntaxTreeUnary.evaluate with binary token " + SyntaxTree.token2String(token));
+            break;
+
+        default:
+            program.bug("SyntaxTreeUnary.evaluate with unexpected token " + SyntaxTree.token2String(token));
+        }
+    }
+
     private SyntaxTree argument;
     private int token;
 }
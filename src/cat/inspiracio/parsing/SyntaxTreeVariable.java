@@ -30,8 +30,9 @@ public class SyntaxTreeVariable extends SyntaxTree
         return "z";
     }
 
-    public void partialEvaluate()
+    public SyntaxTree partialEvaluate()
     {
+        return this;
     }
 
     public EC evaluate(EC ec)
@@ -39,6 +40,11 @@ public class SyntaxTreeVariable extends SyntaxTree
         return ec;
     }
 
+    void compile(Program program)
+    {
+        program.variable();
+    }
+
     public SyntaxTreeVariable()
     {
     }
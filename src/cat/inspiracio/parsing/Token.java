@@ -0,0 +1,136 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.text.ParseException;
+
+import cat.inspiracio.numbers.EC;
+
+/** A token of an expression, as Tokenizer makes them. */
+final class Token{
+
+	//Kinds -----------------------------------------------------------------
+
+	static final int NUMBER=0;
+	static final int CONSTANT=1;
+	static final int VARIABLE=2;
+	static final int FUNCTION=3;
+	static final int OPEN=4;
+	static final int CLOSE=5;
+	static final int PLUS=6;
+	static final int MINUS=7;
+	static final int TIMES=8;
+	static final int DIVIDE=9;
+	static final int POWER=10;
+	static final int FACTORIAL=11;
+
+	/** Characters that do not make a token. The parser throws the exception
+	 * when it reaches them, so that the errors come in the same order as
+	 * with the recursive parser. */
+	static final int ERROR=12;
+
+	/** After the last token. */
+	static final int END=13;
+
+	//State -----------------------------------------------------------------
+
+	final int kind;
+
+	/** Index of the first character in the expression.
+	 * IncrementalParser moves it when text before it changes. */
+	int position;
+
+	/** How many characters. */
+	final int length;
+
+	/** The value of a NUMBER or CONSTANT. */
+	final EC value;
+
+	/** The SyntaxTree token of a FUNCTION, like SINTOKEN. */
+	final int function;
+
+	/** The message of an ERROR. */
+	final String message;
+
+	/** Does the message of an ERROR go on with the whole expression? */
+	final boolean quotes;
+
+	/** The error offset of an ERROR, relative to the position. */
+	final int errorOffset;
+
+	/** For an OPEN that has been parsed: the tree of the bracketed expression,
+	 * and how many tokens after this one it takes, including CLOSE.
+	 * The parser reuses it, as long as IncrementalParser does not
+	 * forget it because a token inside has changed. */
+	SyntaxTree group;
+	int groupTokens;
+
+	//Constructors ----------------------------------------------------------
+
+	private Token(int kind, int position, int length, EC value, int function, String message, boolean quotes, int errorOffset){
+		this.kind=kind;
+		this.position=position;
+		this.length=length;
+		this.value=value;
+		this.function=function;
+		this.message=message;
+		this.quotes=quotes;
+		this.errorOffset=errorOffset;
+	}
+
+	static Token symbol(int kind, int position, int length){
+		return new Token(kind, position, length, null, SyntaxTree.NOTOKEN, null, false, 0);
+	}
+
+	static Token value(int kind, int position, int length, EC value){
+		return new Token(kind, position, length, value, SyntaxTree.NOTOKEN, null, false, 0);
+	}
+
+	static Token function(int position, int length, int function){
+		return new Token(FUNCTION, position, length, null, function, null, false, 0);
+	}
+
+	/** An ERROR.
+	 * @param message Message of the exception.
+	 * @param quotes Should the message go on with the whole expression?
+	 * @param errorOffset Error offset of the exception. */
+	static Token error(int position, int length, String message, boolean quotes, int errorOffset){
+		return new Token(ERROR, position, length, null, SyntaxTree.NOTOKEN, message, quotes, errorOffset - position);
+	}
+
+	//Accessors -------------------------------------------------------------
+
+	/** Does this token end an operand? Then the operand before it must not be empty. */
+	boolean isTerminator(){
+		return kind==PLUS || kind==MINUS || kind==TIMES || kind==DIVIDE || kind==CLOSE || kind==END;
+	}
+
+	/** The exception for an ERROR.
+	 * @param expression The whole expression. */
+	ParseException exception(CharSequence expression){
+		String m= quotes ? message + expression : message;
+		return new ParseException(m, position + errorOffset);
+	}
+
+	/** Index after the last character. */
+	int end(){return position + length;}
+
+	@Override public String toString(){
+		return kind + "@" + position + "+" + length;
+	}
+}
@@ -0,0 +1,118 @@
+/*	Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+ *
+ * This file is part of Complex Calculator.
+ *
+ * Complex Calculator is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Complex Calculator is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Complex Calculator. If not, see <http://www.gnu.org/licenses/>.
+ * */
+package cat.inspiracio.parsing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cat.inspiracio.numbers.EC;
+
+/** Splits an expression into tokens, in one pass from left to right.
+ * <p>
+ * Recognises numbers, constants, variables and function names exactly
+ * where the recursive parser that SyntaxTree had recognised them. Where
+ * that parser threw a ParseException on reaching a factor, the tokenizer
+ * makes an ERROR token with that exception. */
+final class Tokenizer{
+
+	private Tokenizer(){}
+
+	/** Splits the expression into tokens.
+	 * @param s An expression without blanks.
+	 * @return The tokens, the last one END. */
+	static List<Token> tokenize(CharSequence s){
+		List<Token> tokens=new ArrayList<Token>(s.length()/2 + 2);
+		int i=0;
+		while(i<s.length()){
+			Token token=next(s, i);
+			tokens.add(token);
+			i=token.end();
+		}
+		tokens.add(Token.symbol(Token.END, s.length(), 0));
+		return tokens;
+	}
+
+	/** Reads the token that starts at i. */
+	static Token next(CharSequence s, int i){
+		char c=s.charAt(i);
+		switch(c){
+		case '(': return Token.symbol(Token.OPEN, i, 1);
+		case ')': return Token.symbol(Token.CLOSE, i, 1);
+		case '+': return Token.symbol(Token.PLUS, i, 1);
+		case '-': return Token.symbol(Token.MINUS, i, 1);
+		case '*': return Token.symbol(Token.TIMES, i, 1);
+		case '/': return Token.symbol(Token.DIVIDE, i, 1);
+		case '^': return Token.symbol(Token.POWER, i, 1);
+		case '!': return Token.symbol(Token.FACTORIAL, i, 1);
+		}
+		FunctionNames.Node name=FunctionNames.match(s, i);
+		if(name!=null)
+			return Token.function(i, name.depth, name.token);
+		if('0'<=c && c<='9')
+			return number(s, i);
+		if(SyntaxTree.in(c, "iep\u03C0\u221E"))
+			return constant(s, i);
+		if(c=='z' || c=='x')
+			return Token.symbol(Token.VARIABLE, i, 1);
+		return Token.error(i, 1, "", true, i);
+	}
+
+	/** Like readDigits of the recursive parser. */
+	private static Token number(CharSequence s, int start){
+		int n=s.length();
+		int i=start;
+		while(i<n && isDigit(s.charAt(i)))
+			i++;
+		if(i<n && s.charAt(i)=='.'){
+			int j=i+1;
+			while(j<n && isDigit(s.charAt(j)))
+				j++;
+			if(j==i+1)
+				return Token.error(start, j-start, "SyntaxTree.readDigits: decimal point followed by non-digit", false, i);
+			i=j;
+		}
+		return Token.value(Token.NUMBER, start, i-start, EC.mkReal(Double.parseDouble(s.subSequence(start, i).toString())));
+	}
+
+	private static boolean isDigit(char c){return '0'<=c && c<='9';}
+
+	/** Like readConstant of the recursive parser. */
+	private static Token constant(CharSequence s, int i){
+		if(startsWith(s, "inf", i))
+			return Token.value(Token.CONSTANT, i, 3, EC.INFINITY);
+		switch(s.charAt(i)){
+		case 'i': return Token.value(Token.CONSTANT, i, 1, EC.I);
+		case 'e': return Token.value(Token.CONSTANT, i, 1, EC.E);
+		case '\u03C0': return Token.value(Token.CONSTANT, i, 1, EC.PI);
+		case '\u221E': return Token.value(Token.CONSTANT, i, 1, EC.INFINITY);
+		}
+		if(startsWith(s, "pi", i))
+			return Token.value(Token.CONSTANT, i, 2, EC.PI);
+		return Token.error(i, 1, "readConstant ", true, i);
+	}
+
+	/** Like String.startsWith(String, int). */
+	static boolean startsWith(CharSequence s, String prefix, int i){
+		if(s.length() < i + prefix.length())
+			return false;
+		for(int k=0; k<prefix.length(); k++)
+			if(s.charAt(i+k)!=prefix.charAt(k))
+				return false;
+		return true;
+	}
+}
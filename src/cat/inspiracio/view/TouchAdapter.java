@@ -48,6 +48,11 @@ public class TouchAdapter implements TouchListener{
 	 * */
 	@Override public void onDrag(DragEvent e){}
 
+	/** User has lifted the last finger from the surface, after any gesture.
+	 * @param e Where the finger was lifted.
+	 * */
+	@Override public void onRelease(MouseEvent e){}
+
 	/** User moves two fingers over the surface without losing contact.
 	 * If the fingers approach each other, it's a pinch for zooming out.
 	 * If the fingers become further apart, it's a spread for zooming in.
@@ -62,6 +62,7 @@ import android.view.View.OnTouchListener;
  * 	<li>onClick
  * 	<li><strike>onDoubleClick</strike>
  * 	<li>onDrag
+ * 	<li>onRelease
  * 	<li><strike>onLongClick</strike>
  * 	<li>onZoom
  * 	<li><strike>onPressAndClick</strike>
@@ -115,6 +116,11 @@ public final class TouchDispatcher implements OnTouchListener{
 					t.onZoom(e);//I hope they are fast and none of them throws exception.
 			}
 			
+			@Override public void onRelease(MouseEvent e){
+				for(TouchListener t : listeners)
+					t.onRelease(e);//I hope they are fast and none of them throws exception.
+			}
+			
 			@Override public void onPressAndClick(EventObject e){throw new RuntimeException("not implemented");}
 			@Override public void onPressAndDrag(EventObject e){throw new RuntimeException("not implemented");}
 			@Override public void onRotate(EventObject e){throw new RuntimeException("not implemented");}
@@ -153,8 +159,11 @@ public final class TouchDispatcher implements OnTouchListener{
 		int action=e.getAction()&MotionEvent.ACTION_MASK;
 		switch(action){
 		
-		//Cancel: forget everything
+		//Cancel: forget everything, but the listeners must know that the gesture is over.
 		case MotionEvent.ACTION_CANCEL:	//3
+			MouseEvent ce=new MouseEvent(view);
+			ce.set(e.getX(), e.getY());
+			this.multiplexer.onRelease(ce);
 			mode=Mode.M_0;
 			gesture=Gesture.NONE;
 			break;
@@ -228,6 +237,11 @@ public final class TouchDispatcher implements OnTouchListener{
 				this.multiplexer.onClick(me);
 			}
 			
+			//In any case, the gesture is over.
+			MouseEvent re=new MouseEvent(view);
+			re.set(e.getX(), e.getY());
+			this.multiplexer.onRelease(re);
+			
 			mode=Mode.M_0;
 			gesture=Gesture.NONE;
 			break;
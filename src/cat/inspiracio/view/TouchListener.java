@@ -45,6 +45,11 @@ public interface TouchListener{
 	 * */
 	void onDrag(DragEvent e);
 
+	/** User has lifted the last finger from the surface, after any gesture.
+	 * @param e Where the finger was lifted.
+	 * */
+	void onRelease(MouseEvent e);
+
 	/** User moves two fingers over the surface without losing contact.
 	 * If the fingers approach each other, it's a pinch for zooming out.
 	 * If the fingers become further apart, it's a spread for zooming in.